@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a SubscriberIndex for each concrete class declaring or inheriting <b>onEvent</b>
+ * methods, so event buses call the methods directly rather than by reflection. The index of a
+ * class is generated into the same package, so a class can only be indexed when all its handlers
+ * and the event types they take are accessible from its package. Otherwise, e.g. when a handler
+ * is private, the class is skipped and the event bus falls back to reflection for it.
+ */
+@SupportedAnnotationTypes("*")
+public class SubscriberIndexProcessor extends AbstractProcessor {
+    //Keep in sync with SubscriberIndex.CLASS_NAME_SUFFIX in android-mvc-core
+    static final String INDEX_CLASS_NAME_SUFFIX = "$$SubscriberIndex";
+    static final String HANDLER_NAME = "onEvent";
+    static final String DELIVER_ON_ANNOTATION = "com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn";
+
+    private final Set<String> indexedClasses = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            processType(type);
+        }
+        //Subscribers are found by method names so no annotations are claimed
+        return false;
+    }
+
+    private void processType(TypeElement type) {
+        for (TypeElement member : ElementFilter.typesIn(type.getEnclosedElements())) {
+            processType(member);
+        }
+
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return;
+        }
+
+        String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        if (indexedClasses.contains(binaryName)) {
+            return;
+        }
+
+        Map<String, ExecutableElement> handlers = findHandlers(type);
+        if (handlers != null && !handlers.isEmpty()) {
+            indexedClasses.add(binaryName);
+            try {
+                writeIndex(type, binaryName, handlers);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Not able to generate subscriber index: " + e.getMessage(), type);
+            }
+        }
+    }
+
+    /**
+     * Find handlers of the class and its super classes the same way the event bus does by
+     * reflection
+     * @return Handlers by the erased names of their event types, or null if any handler can't be
+     * called from the generated index
+     */
+    private Map<String, ExecutableElement> findHandlers(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        boolean hasHandler = false;
+        boolean indexable = isAccessible(type, pkg);
+
+        Map<String, ExecutableElement> handlers = new LinkedHashMap<>();
+        TypeElement clazz = type;
+        while (clazz != null) {
+            String name = clazz.getQualifiedName().toString();
+            if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")) {
+                // Ignore system classes
+                break;
+            }
+
+            for (ExecutableElement method : ElementFilter.methodsIn(clazz.getEnclosedElements())) {
+                if (method.getSimpleName().contentEquals(HANDLER_NAME) && method.getParameters().size() == 1) {
+                    hasHandler = true;
+                    TypeMirror eventType = processingEnv.getTypeUtils().erasure(
+                            method.getParameters().get(0).asType());
+                    if (!isCallable(method, clazz, pkg) || !isAccessible(eventType, pkg)) {
+                        indexable = false;
+                    } else {
+                        handlers.put(eventType.toString(), method);
+                    }
+                }
+            }
+
+            TypeMirror superclass = clazz.getSuperclass();
+            if (superclass.getKind() == TypeKind.DECLARED) {
+                clazz = (TypeElement) ((DeclaredType) superclass).asElement();
+            } else {
+                clazz = null;
+            }
+        }
+
+        if (hasHandler && !indexable) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, type.getQualifiedName()
+                    + " is not indexed since some of its onEvent methods or event types are not "
+                    + "accessible from its package. Events to it will be delivered by reflection.",
+                    type);
+            return null;
+        }
+        return handlers;
+    }
+
+    private boolean isCallable(ExecutableElement method, TypeElement declaringClass, PackageElement pkg) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (!modifiers.contains(Modifier.PUBLIC)
+                && !processingEnv.getElementUtils().getPackageOf(declaringClass).equals(pkg)) {
+            return false;
+        }
+
+        TypeMirror exception = processingEnv.getElementUtils().getTypeElement("java.lang.Exception").asType();
+        TypeMirror error = processingEnv.getElementUtils().getTypeElement("java.lang.Error").asType();
+        for (TypeMirror thrown : method.getThrownTypes()) {
+            if (!processingEnv.getTypeUtils().isAssignable(thrown, exception)
+                    && !processingEnv.getTypeUtils().isAssignable(thrown, error)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeMirror type, PackageElement pkg) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) type).getComponentType(), pkg);
+        } else if (type.getKind() == TypeKind.DECLARED) {
+            return isAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+        } else {
+            //Primitive events can't be posted
+            return false;
+        }
+    }
+
+    private boolean isAccessible(TypeElement type, PackageElement pkg) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            TypeElement typeElement = (TypeElement) element;
+            if (typeElement.getNestingKind() == NestingKind.LOCAL
+                    || typeElement.getNestingKind() == NestingKind.ANONYMOUS) {
+                return false;
+            }
+            Set<Modifier> modifiers = typeElement.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            if (!modifiers.contains(Modifier.PUBLIC)
+                    && !processingEnv.getElementUtils().getPackageOf(typeElement).equals(pkg)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    /**
+     * @return The name of the thread mode declared by DeliverOn on the handler, or null if not
+     * annotated
+     */
+    private String findThreadMode(ExecutableElement handler) {
+        for (AnnotationMirror annotation : handler.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(DELIVER_ON_ANNOTATION)) {
+                for (AnnotationValue value : annotation.getElementValues().values()) {
+                    //The enum constant of the only element value
+                    return ((Element) value.getValue()).getSimpleName().toString();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void writeIndex(TypeElement type, String binaryName, Map<String, ExecutableElement> handlers)
+            throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String indexName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                + INDEX_CLASS_NAME_SUFFIX;
+        String subscriberName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+
+        List<String> lines = new ArrayList<>();
+        lines.add("// Generated by android-mvc-compiler. Do not modify!");
+        if (!packageName.isEmpty()) {
+            lines.add("package " + packageName + ";");
+            lines.add("");
+        }
+        lines.add("import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;");
+        lines.add("import com.shipdream.lib.android.mvc.event.bus.SubscriberIndex;");
+        lines.add("import com.shipdream.lib.android.mvc.event.bus.ThreadMode;");
+        lines.add("");
+        lines.add("import java.util.LinkedHashMap;");
+        lines.add("import java.util.Map;");
+        lines.add("");
+        lines.add("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+        lines.add("public final class " + indexName + " implements SubscriberIndex {");
+        lines.add("    @Override");
+        lines.add("    public Map<Class<?>, EventDispatcher> getDispatchers() {");
+        lines.add("        Map<Class<?>, EventDispatcher> dispatchers = new LinkedHashMap<>();");
+        for (String eventType : handlers.keySet()) {
+            lines.add("        dispatchers.put(" + eventType + ".class, new EventDispatcher() {");
+            lines.add("            @Override");
+            lines.add("            public void dispatch(Object subscriber, Object event) throws Exception {");
+            lines.add("                ((" + subscriberName + ") subscriber)." + HANDLER_NAME
+                    + "((" + eventType + ") event);");
+            lines.add("            }");
+            lines.add("        });");
+        }
+        lines.add("        return dispatchers;");
+        lines.add("    }");
+        lines.add("");
+        lines.add("    @Override");
+        lines.add("    public Map<Class<?>, ThreadMode> getThreadModes() {");
+        lines.add("        Map<Class<?>, ThreadMode> threadModes = new LinkedHashMap<>();");
+        for (Map.Entry<String, ExecutableElement> handler : handlers.entrySet()) {
+            String threadMode = findThreadMode(handler.getValue());
+            if (threadMode != null && !threadMode.equals("POSTING")) {
+                lines.add("        threadModes.put(" + handler.getKey() + ".class, ThreadMode." + threadMode + ");");
+            }
+        }
+        lines.add("        return threadModes;");
+        lines.add("    }");
+        lines.add("}");
+
+        String qualifiedName = packageName.isEmpty() ? indexName : packageName + "." + indexName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, type);
+        Writer writer = file.openWriter();
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.compiler;
+
+import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;
+import com.shipdream.lib.android.mvc.event.bus.SubscriberIndex;
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestSubscriberIndexProcessor {
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("subscriber-index", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private ClassLoader compile(String className, String source) throws IOException {
+        File file = new File(dir, className.replace('.', File.separatorChar) + ".java");
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        writer.write(source);
+        writer.close();
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        List<String> args = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                "-processor", SubscriberIndexProcessor.class.getName(),
+                "-d", dir.getPath(), "-s", dir.getPath(), file.getPath());
+        int result = compiler.run(null, null, null, args.toArray(new String[args.size()]));
+        assertEquals(0, result);
+
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @Test
+    public void should_generate_index_calling_handlers_directly() throws Exception {
+        ClassLoader classLoader = compile("sample.Subscriber",
+                "package sample;\n" +
+                "import java.util.ArrayList;\n" +
+                "import java.util.List;\n" +
+                "public class Subscriber extends Base {\n" +
+                "    public static class Event {}\n" +
+                "    public final List<Object> received = new ArrayList<>();\n" +
+                "    void onEvent(Event event) { received.add(event); }\n" +
+                "    public void onEvent(String event) { received.add(event); }\n" +
+                "}\n" +
+                "class Base {\n" +
+                "    protected void onEvent(Integer event) { throw new IllegalStateException(\"oops\"); }\n" +
+                "}\n");
+
+        Class<?> subscriberClass = classLoader.loadClass("sample.Subscriber");
+        Class<?> eventClass = classLoader.loadClass("sample.Subscriber$Event");
+        Class<?> indexClass = classLoader.loadClass("sample.Subscriber"
+                + SubscriberIndex.CLASS_NAME_SUFFIX);
+        Map<Class<?>, EventDispatcher> dispatchers = ((SubscriberIndex) indexClass.newInstance()).getDispatchers();
+        assertEquals(3, dispatchers.size());
+        assertTrue(dispatchers.containsKey(eventClass));
+        assertTrue(dispatchers.containsKey(String.class));
+        assertTrue(dispatchers.containsKey(Integer.class));
+
+        Object subscriber = subscriberClass.newInstance();
+        Object event = eventClass.newInstance();
+        EventBusImpl eventBus = new EventBusImpl();
+        eventBus.register(subscriber);
+        eventBus.post(event);
+        eventBus.post("text");
+
+        List<?> received = (List<?>) subscriberClass.getField("received").get(subscriber);
+        assertEquals(Arrays.asList(event, "text"), received);
+
+        try {
+            eventBus.post(1);
+            Assert.fail("Should rethrow the exception of the handler");
+        } catch (IllegalStateException e) {
+            //Not wrapped since the handler is called directly
+            assertEquals("oops", e.getMessage());
+        }
+    }
+
+    @Test
+    public void should_generate_thread_modes_declared_by_handlers() throws Exception {
+        ClassLoader classLoader = compile("sample.LaneSubscriber",
+                "package sample;\n" +
+                "import com.shipdream.lib.android.mvc.event.bus.ThreadMode;\n" +
+                "import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;\n" +
+                "public class LaneSubscriber {\n" +
+                "    public void onEvent(String event) {}\n" +
+                "    @DeliverOn(ThreadMode.POSTING)\n" +
+                "    public void onEvent(Long event) {}\n" +
+                "    @DeliverOn(ThreadMode.BACKGROUND)\n" +
+                "    public void onEvent(Integer event) {}\n" +
+                "}\n");
+
+        Class<?> indexClass = classLoader.loadClass("sample.LaneSubscriber"
+                + SubscriberIndex.CLASS_NAME_SUFFIX);
+        Map<Class<?>, ThreadMode> threadModes = ((SubscriberIndex) indexClass.newInstance()).getThreadModes();
+        assertEquals(1, threadModes.size());
+        assertEquals(ThreadMode.BACKGROUND, threadModes.get(Integer.class));
+    }
+
+    @Test
+    public void should_not_generate_index_for_class_with_private_handlers() throws Exception {
+        compile("sample.PrivateSubscriber",
+                "package sample;\n" +
+                "public class PrivateSubscriber {\n" +
+                "    void onEvent(String event) {}\n" +
+                "    private void onEvent(Integer event) {}\n" +
+                "}\n");
+
+        assertTrue(new File(dir, "sample/PrivateSubscriber.class").exists());
+        assertFalse(new File(dir, "sample/PrivateSubscriber" + SubscriberIndex.CLASS_NAME_SUFFIX
+                + ".class").exists());
+    }
+
+    @Test
+    public void should_not_generate_index_for_class_without_handlers() throws Exception {
+        compile("sample.Plain",
+                "package sample;\n" +
+                "public class Plain {\n" +
+                "    void handle(String event) {}\n" +
+                "}\n");
+
+        assertFalse(new File(dir, "sample/Plain" + SubscriberIndex.CLASS_NAME_SUFFIX
+                + ".class").exists());
+    }
+}
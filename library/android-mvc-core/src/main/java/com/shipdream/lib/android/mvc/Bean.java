@@ -18,6 +18,11 @@ package com.shipdream.lib.android.mvc;
 
 import com.shipdream.lib.poke.util.ReflectUtils;
 
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A bean in AndroidMvc is a basic unit has a model that can be automatically saved and
  * restored by the framework. Also, all beans have their life cycles. So when they are created on
@@ -26,7 +31,15 @@ import com.shipdream.lib.poke.util.ReflectUtils;
  * @param <MODEL>
  */
 public abstract class Bean<MODEL> {
+    /**
+     * The longest time {@link #runBetweenLaneTasks(Runnable)} waits for the task running on the
+     * lane before running the action anyway
+     */
+    static final long LANE_WAIT_MILLIS = 1000;
+
     private MODEL model;
+    //The serial lane of the bean in actor mode
+    private volatile Executor lane;
 
     /**
      * Bind model to Bean
@@ -74,6 +87,75 @@ public abstract class Bean<MODEL> {
     public void onDestroy() {
     }
 
+    /**
+     * Whether this Bean runs in actor mode. {@link Controller}s and {@link Manager}s in actor mode
+     * get a serial lane of their own on the shared background executor. Events to them through
+     * the event bus qualified by {@link com.shipdream.lib.android.mvc.event.bus.annotation.EventBusC}
+     * are delivered on the lane, one at a time, so their model can be mutated on the lane only
+     * without locking and without competing with rendering on the UI thread. Override it to
+     * return true to opt in.
+     *
+     * <p>Since the model is mutated off the UI thread, views must not read the live model in
+     * {@link UiView#update()}. Post an immutable copy of the model, or of the part to render, to
+     * the UI thread from the lane and bind views to the copy instead. The framework saves and
+     * restores the model on the UI thread between the tasks on the lane.</p>
+     * @return false by default
+     */
+    protected boolean isActor() {
+        return false;
+    }
+
+    void setLane(Executor lane) {
+        this.lane = lane;
+    }
+
+    Executor getLane() {
+        return lane;
+    }
+
+    /**
+     * Run the action on the lane of this Bean in actor mode, e.g. to mutate the model from
+     * lifecycle callbacks called on the UI thread. Runs the action straight away when not in actor
+     * mode or when the lane is not available, e.g. in unit tests with a plain event bus.
+     * @param action The action
+     */
+    protected void runOnLane(Runnable action) {
+        Executor lane = this.lane;
+        if (lane == null) {
+            action.run();
+        } else {
+            lane.execute(action);
+        }
+    }
+
+    /**
+     * Run the action on the calling thread between the tasks on the lane of this Bean in actor
+     * mode, e.g. to save or restore the model on the UI thread while it's mutated on the lane.
+     * Waits for the task running on the lane only, and for at most {@link #LANE_WAIT_MILLIS}, so
+     * the UI thread isn't held up by the work queued on the shared background executor. If the
+     * running task doesn't finish in time, the action runs anyway and may see a model half way
+     * through a mutation. Runs the action straight away when not in actor mode or when called
+     * on the lane.
+     * @param action The action
+     */
+    void runBetweenLaneTasks(Runnable action) {
+        Executor lane = this.lane;
+        if (lane instanceof SerialExecutor) {
+            try {
+                if (((SerialExecutor) lane).runBetweenCommands(action, LANE_WAIT_MILLIS,
+                        TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                LoggerFactory.getLogger(getClass()).warn("Task on the lane of {} didn't finish in "
+                        + "{}ms, running the action without waiting for it", getClass().getName(),
+                        LANE_WAIT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        action.run();
+    }
+
     /**
      * Model represents the state of this Bean.
      * @return Null if the Bean doesn't need to get its model saved and restored automatically.
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -60,7 +61,10 @@ import javax.inject.Inject;
  *     <li>a {@link EventBus} annotated by {@link EventBusC} to receive events from managers and other non ui components</li>
  *     <li>a {@link EventBus} annotated by {@link EventBusV} to send event to Android views</li>
  *     <li>a {@link ExecutorService} that runs {@link Task} via {@link #runTask(Task)} on non-UI thread.
- *     by default, it has a fixed thread tool at size 10. You can inject a mocked {@link ExecutorService}
+ *     by default, it's a {@link PriorityScheduler} of at least
+ *     {@link PriorityScheduler#DEFAULT_THREAD_COUNT} threads running tasks by
+ *     {@link Scheduler.Priority}, see {@link #runTask(Task, Task.Callback, Scheduler.Priority)}.
+ *     You can inject a mocked {@link ExecutorService}
  *     that runs everything on the main thread in your <b>Unit Tests</b> to avoid multi-thread complexity.</li>
  *     <li>a protected {@link UiThreadRunner} to post a {@link Runnable} onto UI thread. Make sure
  *     use it to {@link UiView#update()} view inside method block {@link Task#execute(Task.Monitor)}
@@ -70,6 +74,15 @@ import javax.inject.Inject;
  *     uiThreadRunner that runs everything on the same thread as the caller's.</li>
  * </ul>
  * </p>
+ *
+ * <p>
+ * Override {@link #isActor()} to run the controller in actor mode. Events through {@link EventBusC}
+ * are then delivered on a serial lane of the controller's own and the callbacks of
+ * {@link #runTask(Task, Task.Callback)} are called on the lane rather than the UI thread, so the
+ * model is only mutated on the lane. Use {@link #runOnLane(Runnable)} to mutate the model from
+ * methods called on the UI thread. Only view facing notifications hop to the UI thread, i.e.
+ * {@link #postEvent2V(Object)} or {@link UiView#update()} posted by {@link #uiThreadRunner}.
+ * </p>
  * @param <MODEL> The view model of the controller.
  */
 public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL> {
@@ -106,6 +119,9 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
             uiThreadRunner = Mvc.graph().uiThreadRunner;
         }
 
+        if (isActor() && eventBusC instanceof CoreEventBus) {
+            setLane(((CoreEventBus) eventBusC).laneOf(this));
+        }
         eventBusC.register(this);
     }
 
@@ -121,7 +137,9 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
 
     /**
      * Get the view model the controller is holding. Don't write but only read the model from view.
-     * Should only controller write the model.
+     * Should only controller write the model. In actor mode, see {@link #isActor()}, the model is
+     * written on the controller's lane, so views should read an immutable copy posted by the
+     * controller rather than the model itself.
      *
      * @return Null if the controller doesn't need to get its model saved and restored automatically
      * when {@link #modelType()} returns null.
@@ -190,6 +208,47 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
         return runTask(executorService, task, callback);
     }
 
+    /**
+     * Run a task without a callback at the given priority when the injected {@link ExecutorService}
+     * is a {@link Scheduler}. Otherwise the priority is ignored and it's the same as
+     * {@link #runTask(Task)}.
+     *
+     * @param task            The task
+     * @param priority        The priority of the task
+     * @return The monitor to track the state of the execution of the task. It also can cancel the
+     * task.
+     */
+    protected <RESULT> Task.Monitor<RESULT> runTask(final Task<RESULT> task,
+                                                    Scheduler.Priority priority) {
+        return runTask(executorServiceOf(priority), task, null);
+    }
+
+    /**
+     * Run a task at the given priority when the injected {@link ExecutorService} is a
+     * {@link Scheduler}, e.g. {@link Scheduler.Priority#USER_BLOCKING} for the content the user
+     * is waiting for and {@link Scheduler.Priority#PREFETCH} for the content the user may need
+     * next. Otherwise the priority is ignored and it's the same as
+     * {@link #runTask(Task, Task.Callback)}.
+     *
+     * @param task            The task
+     * @param callback        The callback
+     * @param priority        The priority of the task
+     * @return The monitor to track the state of the execution of the task. It also can cancel the
+     * task.
+     */
+    protected <RESULT> Task.Monitor<RESULT> runTask(final Task<RESULT> task,
+                                                    final Task.Callback<RESULT> callback,
+                                                    Scheduler.Priority priority) {
+        return runTask(executorServiceOf(priority), task, callback);
+    }
+
+    private ExecutorService executorServiceOf(Scheduler.Priority priority) {
+        if (executorService instanceof Scheduler) {
+            return ((Scheduler) executorService).lane(priority);
+        }
+        return executorService;
+    }
+
     /**
      * Run a task on the threads supplied by the given {@link ExecutorService}. The task could be
      * run either asynchronously or synchronously depending on the given executorService.
@@ -218,7 +277,8 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
      */
     protected <RESULT> Task.Monitor<RESULT> runTask(ExecutorService executorService,
                                    final Task<RESULT> task, final Task.Callback<RESULT> callback) {
-        final Task.Monitor<RESULT> monitor = new Task.Monitor(task, uiThreadRunner, callback);
+        final UiThreadRunner callbackRunner = getCallbackRunner();
+        final Task.Monitor<RESULT> monitor = new Task.Monitor(task, callbackRunner, callback);
 
         Future<Void> future = executorService.submit(new Callable<Void>() {
             @Override
@@ -230,7 +290,7 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
                 monitor.setState(Task.Monitor.State.STARTED);
 
                 if (callback != null) {
-                    uiThreadRunner.post(new Runnable() {
+                    callbackRunner.post(new Runnable() {
                         @Override
                         public void run() {
                             callback.onStarted(monitor);
@@ -245,7 +305,7 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
                         monitor.setState(Task.Monitor.State.DONE);
 
                         if (callback != null) {
-                            uiThreadRunner.post(new Runnable() {
+                            callbackRunner.post(new Runnable() {
                                 @Override
                                 public void run() {
                                     callback.onSuccess(result);
@@ -276,7 +336,7 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
                     if (!interruptedByCancel) {
                         monitor.setState(Task.Monitor.State.ERRED);
                         if (callback != null) {
-                            uiThreadRunner.post(new Runnable() {
+                            callbackRunner.post(new Runnable() {
                                 @Override
                                 public void run() {
                                     try {
@@ -308,6 +368,37 @@ public abstract class Controller<MODEL, VIEW extends UiView> extends Bean<MODEL>
         return monitor;
     }
 
+    /**
+     * @return Runs task callbacks on the lane in actor mode, otherwise on the UI thread
+     */
+    private UiThreadRunner getCallbackRunner() {
+        final Executor lane = getLane();
+        if (lane == null) {
+            return uiThreadRunner;
+        }
+        return new UiThreadRunner() {
+            @Override
+            public boolean isOnUiThread() {
+                return false;
+            }
+
+            @Override
+            public void post(Runnable runnable) {
+                lane.execute(runnable);
+            }
+
+            @Override
+            public void postDelayed(final Runnable runnable, long delayMs) {
+                uiThreadRunner.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        lane.execute(runnable);
+                    }
+                }, delayMs);
+            }
+        };
+    }
+
     /**
      * <p>
      * Post the event to views. It automatically guarantees the event will be received
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;
+import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusC;
+import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * The event bus qualified by {@link EventBusC}, delivering events to controllers, managers and
+ * services. Events are delivered on the posting thread unless the handler declares another
+ * thread by {@link DeliverOn}: {@link ThreadMode#UI} handlers are called on the UI thread by the
+ * graph's {@link UiThreadRunner}, {@link ThreadMode#BACKGROUND} handlers on the background
+ * executor and {@link ThreadMode#SERIAL} handlers one by one on a lane of the background executor.
+ *
+ * <p>{@link Bean}s in actor mode, see {@link Bean#isActor()}, get their own serial lanes. Events
+ * to their handlers in {@link ThreadMode#POSTING} or {@link ThreadMode#SERIAL} are delivered on
+ * their lanes.</p>
+ */
+public class CoreEventBus extends EventBusImpl {
+    private final MvcGraph graph;
+    private final Executor backgroundExecutor;
+    private final Executor serialExecutor;
+    //Lanes of actors, dropped once the actors are garbage collected
+    private final Map<Object, Executor> lanes = new WeakHashMap<>();
+
+    CoreEventBus(MvcGraph graph, Executor backgroundExecutor) {
+        this.graph = graph;
+        this.backgroundExecutor = backgroundExecutor;
+        this.serialExecutor = new SerialExecutor(backgroundExecutor);
+    }
+
+    /**
+     * Get the serial lane of the actor, created on the first call
+     * @param actor The actor
+     * @return The lane running on the background executor
+     */
+    Executor laneOf(Object actor) {
+        synchronized (lanes) {
+            Executor lane = lanes.get(actor);
+            if (lane == null) {
+                lane = new SerialExecutor(backgroundExecutor);
+                lanes.put(actor, lane);
+            }
+            return lane;
+        }
+    }
+
+    private static boolean isActor(Object subscriber) {
+        return subscriber instanceof Bean && ((Bean) subscriber).isActor();
+    }
+
+    @Override
+    protected ThreadMode threadModeOf(Object subscriber, Class<?> eventType, ThreadMode declared) {
+        if (declared == ThreadMode.POSTING && isActor(subscriber)) {
+            return ThreadMode.SERIAL;
+        }
+        return declared;
+    }
+
+    @Override
+    protected void execute(ThreadMode threadMode, Object subscriber, Runnable delivery) {
+        switch (threadMode) {
+            case UI:
+                if (graph.uiThreadRunner.isOnUiThread()) {
+                    delivery.run();
+                } else {
+                    graph.uiThreadRunner.post(delivery);
+                }
+                break;
+            case SERIAL:
+                if (isActor(subscriber)) {
+                    laneOf(subscriber).execute(delivery);
+                } else {
+                    serialExecutor.execute(delivery);
+                }
+                break;
+            case BACKGROUND:
+                backgroundExecutor.execute(delivery);
+                break;
+            default:
+                delivery.run();
+                break;
+        }
+    }
+}
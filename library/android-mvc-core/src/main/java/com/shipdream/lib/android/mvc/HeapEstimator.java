@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.poke.Component;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Walks instances cached by a component tree to estimate their heap usage. See {@link HeapReport}.
+ */
+class HeapEstimator {
+    static final int OBJECT_HEADER = 12;
+    static final int ARRAY_HEADER = 16;
+    static final int REFERENCE = 4;
+    static final int ALIGNMENT = 8;
+    //Stop walking from one instance after this many objects
+    static final int MAX_OBJECTS_PER_INSTANCE = 100000;
+
+    private static final int SHARED = -1;
+
+    private final Map<Class, Long> shallowSizes = new HashMap<>();
+    private final Map<Class, Field[]> referenceFields = new HashMap<>();
+
+    /**
+     * Estimate heap usage of the instances cached by the given component and its descendants
+     * @param root The root component
+     * @return The report
+     */
+    HeapReport estimate(Component root) {
+        List<HeapReport.Entry> entries = new ArrayList<>();
+        List<Object> instances = new ArrayList<>();
+        collect(root, entries, instances);
+
+        IdentityHashMap<Object, Integer> cached = new IdentityHashMap<>();
+        for (int i = 0; i < instances.size(); i++) {
+            cached.put(instances.get(i), i);
+        }
+
+        //Which instance each reachable object belongs to, or SHARED
+        IdentityHashMap<Object, Integer> owners = new IdentityHashMap<>();
+        for (int i = 0; i < instances.size(); i++) {
+            entries.get(i).truncated = !walk(instances.get(i), i, cached, owners);
+        }
+
+        long sharedSize = 0;
+        int sharedCount = 0;
+        for (Map.Entry<Object, Integer> e : owners.entrySet()) {
+            long size = shallowSizeOf(e.getKey());
+            int owner = e.getValue();
+            if (owner == SHARED) {
+                sharedSize += size;
+                sharedCount++;
+            } else {
+                HeapReport.Entry entry = entries.get(owner);
+                entry.retainedSize += size;
+                entry.objectCount++;
+            }
+        }
+        for (int i = 0; i < instances.size(); i++) {
+            HeapReport.Entry entry = entries.get(i);
+            entry.shallowSize = shallowSizeOf(instances.get(i));
+        }
+
+        Collections.sort(entries, new Comparator<HeapReport.Entry>() {
+            @Override
+            public int compare(HeapReport.Entry lhs, HeapReport.Entry rhs) {
+                return HeapReport.compareSizes(rhs.retainedSize, lhs.retainedSize);
+            }
+        });
+        return new HeapReport(entries, sharedSize, sharedCount);
+    }
+
+    private void collect(Component component, List<HeapReport.Entry> entries, List<Object> instances) {
+        Map<String, Object> cache = component.getCache();
+        if (cache != null) {
+            for (Map.Entry<String, Object> e : cache.entrySet()) {
+                if (e.getValue() != null) {
+                    entries.add(new HeapReport.Entry(component.getName(), e.getKey(),
+                            e.getValue().getClass().getName()));
+                    instances.add(e.getValue());
+                }
+            }
+        }
+        List<Component> children = component.getChildrenComponents();
+        if (children != null) {
+            for (Component child : children) {
+                collect(child, entries, instances);
+            }
+        }
+    }
+
+    /**
+     * Walk objects reachable from the cached instance without stepping into other cached instances
+     * @return false if the walk stopped early
+     */
+    private boolean walk(Object instance, int index, IdentityHashMap<Object, Integer> cached,
+                         IdentityHashMap<Object, Integer> owners) {
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<>();
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        queue.add(instance);
+        visited.put(instance, Boolean.TRUE);
+
+        while (!queue.isEmpty()) {
+            if (visited.size() > MAX_OBJECTS_PER_INSTANCE) {
+                return false;
+            }
+
+            Object obj = queue.poll();
+            Integer owner = owners.get(obj);
+            if (owner == null) {
+                owners.put(obj, index);
+            } else if (owner != index) {
+                owners.put(obj, SHARED);
+            }
+
+            Class<?> clazz = obj.getClass();
+            if (clazz.isArray()) {
+                if (!clazz.getComponentType().isPrimitive()) {
+                    int length = Array.getLength(obj);
+                    for (int i = 0; i < length; i++) {
+                        enqueue(Array.get(obj, i), cached, visited, queue);
+                    }
+                }
+            } else if (obj instanceof Map) {
+                //Walk maps and collections by their API since their internals may be inaccessible
+                boolean weakKeys = obj instanceof WeakHashMap;
+                try {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                        if (!weakKeys) {
+                            enqueue(entry.getKey(), cached, visited, queue);
+                        }
+                        enqueue(entry.getValue(), cached, visited, queue);
+                    }
+                } catch (ConcurrentModificationException e) {
+                    //Changed by another thread meanwhile, count what has been seen
+                }
+            } else if (obj instanceof Collection) {
+                try {
+                    for (Object element : (Collection<?>) obj) {
+                        enqueue(element, cached, visited, queue);
+                    }
+                } catch (ConcurrentModificationException e) {
+                    //Changed by another thread meanwhile, count what has been seen
+                }
+            } else {
+                for (Field field : referenceFieldsOf(clazz)) {
+                    try {
+                        enqueue(field.get(obj), cached, visited, queue);
+                    } catch (IllegalAccessException e) {
+                        //Treat it as a leaf
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void enqueue(Object value, IdentityHashMap<Object, Integer> cached,
+                                IdentityHashMap<Object, Boolean> visited, ArrayDeque<Object> queue) {
+        //Weakly or softly held objects aren't retained by the instance
+        if (value == null || visited.containsKey(value) || cached.containsKey(value)
+                || value instanceof Reference || value instanceof Class
+                || value instanceof ClassLoader || value instanceof Thread) {
+            return;
+        }
+        visited.put(value, Boolean.TRUE);
+        queue.add(value);
+    }
+
+    private Field[] referenceFieldsOf(Class<?> clazz) {
+        Field[] fields = referenceFields.get(clazz);
+        if (fields == null) {
+            List<Field> found = new ArrayList<>();
+            Class<?> c = clazz;
+            while (c != null) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            found.add(field);
+                        } catch (RuntimeException e) {
+                            //Fields of platform classes may be inaccessible
+                        }
+                    }
+                }
+                c = c.getSuperclass();
+            }
+            fields = found.toArray(new Field[found.size()]);
+            referenceFields.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    long shallowSizeOf(Object obj) {
+        Class<?> clazz = obj.getClass();
+        if (clazz.isArray()) {
+            Class<?> type = clazz.getComponentType();
+            int elementSize = type.isPrimitive() ? primitiveSize(type) : REFERENCE;
+            return align(ARRAY_HEADER + (long) Array.getLength(obj) * elementSize);
+        }
+
+        Long size = shallowSizes.get(clazz);
+        if (size == null) {
+            long sum = OBJECT_HEADER;
+            Class<?> c = clazz;
+            while (c != null) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        Class<?> type = field.getType();
+                        sum += type.isPrimitive() ? primitiveSize(type) : REFERENCE;
+                    }
+                }
+                c = c.getSuperclass();
+            }
+            size = align(sum);
+            shallowSizes.put(clazz, size);
+        }
+        return size;
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        } else if (type == int.class || type == float.class) {
+            return 4;
+        } else if (type == short.class || type == char.class) {
+            return 2;
+        } else {
+            return 1;
+        }
+    }
+
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimated heap usage of the instances cached by the components of a {@link MvcGraph}, created by
+ * {@link MvcGraph#estimateRetainedHeap()}. Sizes are estimates based on a typical VM layout with
+ * compressed references, so use them to compare beans with each other rather than as exact
+ * numbers.
+ *
+ * <p>An object reachable from exactly one cached instance is counted in the retained size of that
+ * instance. An object reachable from several cached instances is counted once in
+ * {@link #getSharedSize()}. The walk doesn't step into other cached instances, classes, class
+ * loaders, threads or static fields.</p>
+ */
+public class HeapReport {
+    /**
+     * Estimated heap usage of one cached instance
+     */
+    public static class Entry {
+        private final String componentName;
+        private final String key;
+        private final String typeName;
+        long shallowSize;
+        long retainedSize;
+        int objectCount;
+        boolean truncated;
+
+        Entry(String componentName, String key, String typeName) {
+            this.componentName = componentName;
+            this.key = key;
+            this.typeName = typeName;
+        }
+
+        /**
+         * @return The name of the component caching the instance
+         */
+        public String getComponentName() {
+            return componentName;
+        }
+
+        /**
+         * @return The key of the provider of the instance
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return The class name of the instance
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+        /**
+         * @return Estimated size of the instance itself in bytes
+         */
+        public long getShallowSize() {
+            return shallowSize;
+        }
+
+        /**
+         * @return Estimated size of the instance and the objects only reachable from it in bytes
+         */
+        public long getRetainedSize() {
+            return retainedSize;
+        }
+
+        /**
+         * @return Number of objects counted in the retained size
+         */
+        public int getObjectCount() {
+            return objectCount;
+        }
+
+        /**
+         * @return Whether the walk stopped early since too many objects are reachable, in which
+         * case the retained size is underestimated
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s - shallow: %d bytes, retained: %d bytes in %d objects%s",
+                    key, shallowSize, retainedSize, objectCount, truncated ? " (truncated)" : "");
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long sharedSize;
+    private final int sharedObjectCount;
+
+    HeapReport(List<Entry> entries, long sharedSize, int sharedObjectCount) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.sharedSize = sharedSize;
+        this.sharedObjectCount = sharedObjectCount;
+    }
+
+    /**
+     * @return Entries of all cached instances, sorted by retained size from largest
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return Retained sizes summed by component names, sorted from largest
+     */
+    public Map<String, Long> getComponentSizes() {
+        Map<String, Long> sums = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            Long sum = sums.get(entry.componentName);
+            sums.put(entry.componentName, (sum == null ? 0 : sum) + entry.retainedSize);
+        }
+        List<Map.Entry<String, Long>> sorted = new ArrayList<>(sums.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> lhs, Map.Entry<String, Long> rhs) {
+                return compareSizes(rhs.getValue(), lhs.getValue());
+            }
+        });
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> e : sorted) {
+            result.put(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    static int compareSizes(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+
+    /**
+     * @return Estimated size in bytes of the objects reachable from more than one cached instance
+     */
+    public long getSharedSize() {
+        return sharedSize;
+    }
+
+    /**
+     * @return Number of objects reachable from more than one cached instance
+     */
+    public int getSharedObjectCount() {
+        return sharedObjectCount;
+    }
+
+    /**
+     * @return Sum of retained sizes of all cached instances and the shared size in bytes
+     */
+    public long getTotalSize() {
+        long total = sharedSize;
+        for (Entry entry : entries) {
+            total += entry.retainedSize;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Cached instances retain about %d bytes, %d bytes shared by %d objects\n",
+                getTotalSize(), sharedSize, sharedObjectCount));
+        for (Map.Entry<String, Long> component : getComponentSizes().entrySet()) {
+            sb.append(String.format("  Component(%s): %d bytes\n", component.getKey(), component.getValue()));
+            for (Entry entry : entries) {
+                if (component.getKey() == null ? entry.componentName == null
+                        : component.getKey().equals(entry.componentName)) {
+                    sb.append("    ").append(entry).append("\n");
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
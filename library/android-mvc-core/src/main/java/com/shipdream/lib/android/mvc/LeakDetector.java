@@ -0,0 +1,468 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Tracks instances which are expected to become unreachable, i.e. targets released by
+ * {@link MvcGraph#release(Object)} and beans disposed by the graph, and reports the ones still
+ * reachable after a garbage collection. Set it by {@link MvcGraph#setLeakDetector(LeakDetector)}.
+ *
+ * <p>A watched instance is checked once it has been watched longer than the retain timeout. The
+ * graph schedules a check on the detector's {@link #setExecutor(Executor) executor} when it
+ * releases an object and the check interval has elapsed since the last check, or checks straight
+ * away when {@link MvcGraph#checkLeaks()} is called. A check forces garbage collections and walks
+ * the objects reachable from the graph by reflection without locking the graph, so only enable it
+ * in debug builds.</p>
+ */
+public class LeakDetector {
+    /**
+     * Listener to be notified when a leak is detected
+     */
+    public interface Listener {
+        /**
+         * Called when a watched instance is still reachable after the retain timeout
+         * @param leak The leak
+         */
+        void onLeakDetected(Leak leak);
+    }
+
+    /**
+     * An instance which is still reachable after it was released or disposed
+     */
+    public static class Leak {
+        private final String typeName;
+        private final String reason;
+        private final long retainedMs;
+        private final List<String> path;
+
+        Leak(String typeName, String reason, long retainedMs, List<String> path) {
+            this.typeName = typeName;
+            this.reason = reason;
+            this.retainedMs = retainedMs;
+            this.path = Collections.unmodifiableList(path);
+        }
+
+        /**
+         * @return The class name of the leaked instance
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+        /**
+         * @return Why the instance was watched, e.g. it was released or disposed
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        /**
+         * @return How long the instance has been reachable since it was watched in milliseconds
+         */
+        public long getRetainedMs() {
+            return retainedMs;
+        }
+
+        /**
+         * @return The shortest chain of references from the graph to the leaked instance. Empty
+         * when the instance is not reachable from the graph, e.g. held by a static field.
+         */
+        public List<String> getPath() {
+            return path;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(typeName).append(" (").append(reason).append(") still reachable after ")
+                    .append(retainedMs).append("ms");
+            if (path.isEmpty()) {
+                sb.append(", held outside of the graph");
+            } else {
+                sb.append(", held by ");
+                for (int i = 0; i < path.size(); i++) {
+                    if (i > 0) {
+                        sb.append(" -> ");
+                    }
+                    sb.append(path.get(i));
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class Watch extends WeakReference<Object> {
+        final String typeName;
+        final String reason;
+        final long watchedTime;
+
+        Watch(Object referent, ReferenceQueue<Object> queue, String reason, long watchedTime) {
+            super(referent, queue);
+            this.typeName = referent.getClass().getName();
+            this.reason = reason;
+            this.watchedTime = watchedTime;
+        }
+    }
+
+    //Stop looking for the path after visiting this many objects
+    static final int MAX_OBJECTS_TO_WALK = 200000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final long retainTimeoutMs;
+    private final long checkIntervalMs;
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+    private final List<Watch> watches = new ArrayList<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Class<?>, Field[]> referenceFields = new HashMap<>();
+    private long lastCheckTime;
+    private Executor executor;
+    private boolean checkScheduled;
+
+    /**
+     * Construct a leak detector
+     * @param retainTimeoutMs How long a watched instance is allowed to stay reachable, e.g. until
+     *                        pending animations and callbacks finish
+     * @param checkIntervalMs The minimum interval between checks run by the graph when it releases
+     *                        objects. 0 or negative to check only by {@link MvcGraph#checkLeaks()}.
+     */
+    public LeakDetector(long retainTimeoutMs, long checkIntervalMs) {
+        this.retainTimeoutMs = retainTimeoutMs;
+        this.checkIntervalMs = checkIntervalMs;
+        lastCheckTime = now();
+    }
+
+    /**
+     * Add a listener to be notified when a leak is detected. Leaks are logged as warnings either
+     * way.
+     * @param listener The listener
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove the listener
+     * @param listener The listener
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Set the executor running the checks scheduled by the graph when it releases objects. By
+     * default they run on a daemon thread of the detector.
+     * @param executor The executor
+     */
+    public synchronized void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return Number of instances watched and not collected yet
+     */
+    public synchronized int getWatchedCount() {
+        removeCollected();
+        return watches.size();
+    }
+
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    synchronized void watch(Object instance, String reason) {
+        removeCollected();
+        watches.add(new Watch(instance, queue, reason, now()));
+    }
+
+    /**
+     * Check if the check interval has elapsed since the last check
+     */
+    synchronized boolean isCheckDue() {
+        return !checkScheduled && checkIntervalMs > 0 && !watches.isEmpty()
+                && now() - lastCheckTime >= checkIntervalMs;
+    }
+
+    /**
+     * Schedule a check on the executor if it's due. Called when the graph releases an object so
+     * the releasing thread is not blocked by the garbage collections and the walk.
+     * @param root The object the paths to leaks are found from
+     */
+    void scheduleCheckIfDue(final Object root) {
+        Executor executor;
+        synchronized (this) {
+            if (!isCheckDue()) {
+                return;
+            }
+            checkScheduled = true;
+            if (this.executor == null) {
+                this.executor = newDefaultExecutor();
+            }
+            executor = this.executor;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    check(root);
+                } finally {
+                    synchronized (LeakDetector.this) {
+                        checkScheduled = false;
+                    }
+                }
+            }
+        });
+    }
+
+    private static ExecutorService newDefaultExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "LeakDetector");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Find watched instances retained longer than the timeout
+     * @param root The object the paths to leaks are found from
+     * @return The leaks found, each of which is reported only once
+     */
+    List<Leak> check(Object root) {
+        List<Watch> expired;
+        synchronized (this) {
+            lastCheckTime = now();
+            removeCollected();
+            if (!hasExpired()) {
+                return Collections.emptyList();
+            }
+        }
+
+        //Give unreachable instances a chance to be collected
+        Runtime.getRuntime().gc();
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        System.runFinalization();
+        Runtime.getRuntime().gc();
+
+        long now;
+        synchronized (this) {
+            removeCollected();
+            now = now();
+            expired = new ArrayList<>();
+            Iterator<Watch> iterator = watches.iterator();
+            while (iterator.hasNext()) {
+                Watch watch = iterator.next();
+                if (now - watch.watchedTime >= retainTimeoutMs) {
+                    iterator.remove();
+                    expired.add(watch);
+                }
+            }
+        }
+
+        List<Leak> leaks = new ArrayList<>();
+        for (Watch watch : expired) {
+            Object instance = watch.get();
+            if (instance != null) {
+                Leak leak = new Leak(watch.typeName, watch.reason, now - watch.watchedTime,
+                        findPath(root, instance));
+                leaks.add(leak);
+                logger.warn("Leak detected - {}", leak);
+                for (Listener listener : listeners) {
+                    listener.onLeakDetected(leak);
+                }
+            }
+        }
+        return leaks;
+    }
+
+    private boolean hasExpired() {
+        long now = now();
+        for (Watch watch : watches) {
+            if (now - watch.watchedTime >= retainTimeoutMs) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeCollected() {
+        Reference<?> ref;
+        while ((ref = queue.poll()) != null) {
+            watches.remove(ref);
+        }
+    }
+
+    /**
+     * Breadth first walk from the root so the shortest path is found
+     */
+    private List<String> findPath(Object root, Object target) {
+        IdentityHashMap<Object, Object> parents = new IdentityHashMap<>();
+        IdentityHashMap<Object, String> steps = new IdentityHashMap<>();
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        parents.put(root, root);
+        queue.add(root);
+
+        while (!queue.isEmpty() && parents.size() < MAX_OBJECTS_TO_WALK) {
+            Object obj = queue.poll();
+            if (obj == target) {
+                List<String> path = new ArrayList<>();
+                while (obj != root) {
+                    path.add(steps.get(obj));
+                    obj = parents.get(obj);
+                }
+                Collections.reverse(path);
+                return path;
+            }
+
+            try {
+                visitChildren(obj, parents, steps, queue);
+            } catch (ConcurrentModificationException e) {
+                //The graph isn't locked while walking, so skip containers changed meanwhile
+                logger.debug("Skipped {} modified while looking for leaks", nameOf(obj.getClass()));
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    private void visitChildren(Object obj, IdentityHashMap<Object, Object> parents,
+                               IdentityHashMap<Object, String> steps, ArrayDeque<Object> queue) {
+        Class<?> clazz = obj.getClass();
+        String owner = nameOf(clazz);
+        if (clazz.isArray()) {
+            if (!clazz.getComponentType().isPrimitive()) {
+                int length = Array.getLength(obj);
+                for (int i = 0; i < length; i++) {
+                    visit(obj, Array.get(obj, i), owner + "[" + i + "]", parents, steps, queue);
+                }
+            }
+        } else if (obj instanceof Map) {
+            //Walk maps and collections by their API since their internals may be inaccessible
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
+                String key = describe(entry.getKey());
+                visit(obj, entry.getKey(), owner + " key " + key, parents, steps, queue);
+                visit(obj, entry.getValue(), owner + "[" + key + "]", parents, steps, queue);
+            }
+        } else if (obj instanceof Collection) {
+            for (Object element : (Collection<?>) obj) {
+                visit(obj, element, owner + " element", parents, steps, queue);
+            }
+        } else {
+            for (Field field : referenceFieldsOf(clazz)) {
+                try {
+                    visit(obj, field.get(obj), owner + "." + field.getName(), parents, steps, queue);
+                } catch (IllegalAccessException e) {
+                    //Skip it
+                }
+            }
+        }
+    }
+
+    private static void visit(Object parent, Object child, String step, IdentityHashMap<Object, Object> parents,
+                              IdentityHashMap<Object, String> steps, ArrayDeque<Object> queue) {
+        if (child == null || parents.containsKey(child) || child instanceof Reference
+                || child instanceof Class || child instanceof ClassLoader || child instanceof Thread) {
+            return;
+        }
+        parents.put(child, parent);
+        steps.put(child, step);
+        queue.add(child);
+    }
+
+    private static String describe(Object key) {
+        if (key == null) {
+            return "null";
+        } else if (key instanceof String || key instanceof Number) {
+            return key.toString();
+        } else if (key instanceof Class) {
+            return nameOf((Class<?>) key);
+        } else {
+            return nameOf(key.getClass());
+        }
+    }
+
+    private static String nameOf(Class<?> clazz) {
+        String name = clazz.getSimpleName();
+        if (name.isEmpty()) {
+            //Anonymous class
+            name = clazz.getName();
+            return name.substring(name.lastIndexOf('.') + 1);
+        }
+        return name;
+    }
+
+    private Field[] referenceFieldsOf(Class<?> clazz) {
+        synchronized (referenceFields) {
+            return findReferenceFields(clazz);
+        }
+    }
+
+    private Field[] findReferenceFields(Class<?> clazz) {
+        Field[] fields = referenceFields.get(clazz);
+        if (fields == null) {
+            List<Field> found = new ArrayList<>();
+            Class<?> c = clazz;
+            while (c != null) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers()) && !field.getType().isPrimitive()) {
+                        try {
+                            field.setAccessible(true);
+                            found.add(field);
+                        } catch (RuntimeException e) {
+                            //Fields of platform classes may be inaccessible
+                        }
+                    }
+                }
+                c = c.getSuperclass();
+            }
+            fields = found.toArray(new Field[found.size()]);
+            referenceFields.put(clazz, fields);
+        }
+        return fields;
+    }
+}
@@ -27,7 +27,8 @@ import javax.inject.Inject;
 
 /**
  * Abstract manager to be extended to manage shared presenter logic and data. The manager will listen
- * to {@link EventBusC}
+ * to {@link EventBusC}. Override {@link #isActor()} to receive events on a serial lane of the
+ * manager's own.
  * @param <MODEL> The model the manager holds. On Android, models will be automatically
  *               serialized and deserialized by fragments when the manager is injected into a
  *               fragment as a class's field directly or indirectly(held by presenter's field).
@@ -50,6 +51,9 @@ public abstract class Manager<MODEL> extends Bean<MODEL> {
 
     public void onCreated() {
         super.onCreated();
+        if (isActor() && eventBus2C instanceof CoreEventBus) {
+            setLane(((CoreEventBus) eventBus2C).laneOf(this));
+        }
         eventBus2C.register(this);
     }
 
@@ -19,7 +19,6 @@ package com.shipdream.lib.android.mvc;
 import com.shipdream.lib.android.mvc.event.bus.EventBus;
 import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusC;
 import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
-import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
 import com.shipdream.lib.poke.Provides;
 import com.shipdream.lib.poke.exception.ProvideException;
 import com.shipdream.lib.poke.exception.ProviderConflictException;
@@ -27,6 +26,7 @@ import com.shipdream.lib.poke.exception.ProviderConflictException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Mvc {
     static MvcGraph graph;
@@ -40,52 +40,29 @@ public class Mvc {
         if (graph == null) {
             graph = new MvcGraph();
 
+            //One shared background scheduler for tasks
+            final PriorityScheduler executorService = new PriorityScheduler();
+            //Asynchronously injected instances are created on threads of their own, so tasks
+            //waiting for them can't hold up their creation by occupying all threads of the scheduler
+            graph.setAsyncExecutor(newAsyncInjectionExecutor());
+
             try {
                 graph.getRootComponent().register(new Object() {
                     @Provides
                     @EventBusC
                     public EventBus eventBusC() {
-                        return new EventBusImpl();
+                        return new CoreEventBus(graph, executorService);
                     }
 
                     @Provides
                     @EventBusV
                     public EventBus eventBusV() {
-                        return new EventBusImpl() {
-                            @Override
-                            public void post(final Object event) {
-                                if (graph.uiThreadRunner.isOnUiThread()) {
-                                    postEvent(event);
-                                } else {
-                                    graph.uiThreadRunner.post(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            postEvent(event);
-                                        }
-                                    });
-                                }
-                            }
-
-                            private void postEvent(Object event) {
-                                super.post(event);
-                            }
-                        };
+                        return new UiThreadEventBus(graph);
                     }
 
                     @Provides
                     public ExecutorService executorService() {
-                        return Executors.newFixedThreadPool(10, new ThreadFactory() {
-                            @Override
-                            public Thread newThread(final Runnable r) {
-                                return new Thread(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        Thread.currentThread().setPriority(Thread.NORM_PRIORITY - 1);
-                                        r.run();
-                                    }
-                                }, "MvcBackgroundThread");
-                            }
-                        });
+                        return executorService;
                     }
                 });
             } catch (ProvideException e) {
@@ -97,4 +74,17 @@ public class Mvc {
         return graph;
     }
 
+    private static ExecutorService newAsyncInjectionExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MvcAsyncInjectionThread-" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+    }
+
 }
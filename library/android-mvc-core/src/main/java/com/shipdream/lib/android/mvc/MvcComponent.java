@@ -28,6 +28,11 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * A component manages injectable objects. It is able to locate implementation class automatically by
@@ -39,9 +44,131 @@ import java.lang.reflect.Modifier;
  * a.b.c.Car and there is an concrete class at a.b.c.internal.CarImpl</ui>
  * <ui>The injecting class is registered by {@link #register(Object)} or {@link #register(Provider)}</ui>
  * </ul>
+ *
+ * <p>Providers registered automatically for located classes are tracked separately from the
+ * ones registered explicitly. By default they stay registered forever. Set
+ * {@link #setAutoProviderIdleTimeout(long)} or {@link #setMaxAutoProviders(int)} to unregister
+ * the ones not referenced by anything for a while or the least recently resolved ones, so the
+ * component doesn't keep growing in long sessions visiting many screens. Use {@link #getStats()}
+ * and {@link #getStatsHistory()} to watch how many providers are registered over time.</p>
+ *
+ * <p>Like registering and finding providers, evicting them and reading the stats are not thread
+ * safe. Call them on the UI thread while the component is attached to {@link Mvc#graph()}, or use
+ * {@link MvcGraph#evictIdleProviders()} from other threads.</p>
  */
 public class MvcComponent extends Component {
+    /**
+     * Snapshot of the providers registered to a {@link MvcComponent}
+     */
+    public static class Stats {
+        private final long time;
+        private final int providerCount;
+        private final int autoProviderCount;
+        private final int peakProviderCount;
+        private final long autoRegisteredCount;
+        private final long evictedCount;
+
+        Stats(long time, int providerCount, int autoProviderCount, int peakProviderCount,
+              long autoRegisteredCount, long evictedCount) {
+            this.time = time;
+            this.providerCount = providerCount;
+            this.autoProviderCount = autoProviderCount;
+            this.peakProviderCount = peakProviderCount;
+            this.autoRegisteredCount = autoRegisteredCount;
+            this.evictedCount = evictedCount;
+        }
+
+        /**
+         * @return When the snapshot was taken in milliseconds
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return How many providers are registered to the component including automatically
+         * registered ones
+         */
+        public int getProviderCount() {
+            return providerCount;
+        }
+
+        /**
+         * @return How many automatically registered providers are registered to the component
+         */
+        public int getAutoProviderCount() {
+            return autoProviderCount;
+        }
+
+        /**
+         * @return The maximum number of providers ever registered to the component at the same time
+         */
+        public int getPeakProviderCount() {
+            return peakProviderCount;
+        }
+
+        /**
+         * @return How many times providers have been registered automatically
+         */
+        public long getAutoRegisteredCount() {
+            return autoRegisteredCount;
+        }
+
+        /**
+         * @return How many automatically registered providers have been evicted
+         */
+        public long getEvictedCount() {
+            return evictedCount;
+        }
+    }
+
+    /**
+     * An automatically registered provider and since when it's been found unreferenced
+     */
+    private static class AutoProvider {
+        final Provider provider;
+        //-1 when it was referenced last time it was checked
+        long idleSince;
+
+        AutoProvider(Provider provider, long idleSince) {
+            this.provider = provider;
+            this.idleSince = idleSince;
+        }
+    }
+
+    static final int MAX_STATS_HISTORY = 64;
+
     private Logger logger = LoggerFactory.getLogger(getClass());
+    //Shared by all providers registered to this component
+    private final Provider.CreationListener beanCreationListener = new Provider.CreationListener() {
+        @Override
+        public void onCreated(Provider provider, Object instance) {
+            if (instance instanceof Bean) {
+                final Bean bean = (Bean) instance;
+
+                bean.onCreated();
+                logger.trace("+++Bean created - '{}'.",
+                        provider.type().getSimpleName());
+            }
+        }
+    };
+    //Marks automatically registered providers as recently resolved whenever they are referenced,
+    //including injections resolving them from the cached injection plans without finding them
+    private final Provider.ReferencedListener autoProviderReferencedListener = new Provider.ReferencedListener() {
+        @Override
+        public void onReferenced(Provider provider, Object instance) {
+            autoProviders.get(provider.type());
+        }
+    };
+    //Automatically registered providers in order of least recently resolved first
+    private final LinkedHashMap<Class, AutoProvider> autoProviders = new LinkedHashMap<>(16, 0.75f, true);
+    private long autoProviderIdleTimeout;
+    private int maxAutoProviders;
+    private long lastEvictionTime;
+    private int peakProviderCount;
+    private long autoRegisteredCount;
+    private long evictedCount;
+    private final LinkedList<Stats> statsHistory = new LinkedList<>();
 
     /**
      * Construct a MvcComponent with the give name with a cope cache so that providers registered
@@ -79,6 +206,10 @@ public class MvcComponent extends Component {
         } catch (ProviderMissingException e) {
             //ignore since we will try to auto locate the impl class
         }
+        if (provider != null && !autoProviders.isEmpty()) {
+            //Mark it as recently resolved
+            autoProviders.get(type);
+        }
         if (provider == null) {
             Class<? extends T> impClass;
             if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
@@ -112,6 +243,11 @@ public class MvcComponent extends Component {
 
             try {
                 register(provider);
+                autoProviders.put(type, new AutoProvider(provider, now()));
+                provider.registerOnReferencedListener(autoProviderReferencedListener);
+                autoRegisteredCount++;
+                recordPeak();
+                evictWhenNeeded();
             } catch (ProviderConflictException e) {
                 //Should not happen since otherwise it should have been found already
                 e.printStackTrace();
@@ -123,21 +259,153 @@ public class MvcComponent extends Component {
     @Override
     public Component register(@NotNull Provider provider) throws ProviderConflictException {
         super.register(provider);
-        provider.registerCreationListener(new Provider.CreationListener() {
-            @Override
-            public void onCreated(Provider provider, Object instance) {
-                if (instance instanceof Bean) {
-                    final Bean bean = (Bean) instance;
-
-                    bean.onCreated();
-                    logger.trace("+++Bean created - '{}'.",
-                            provider.type().getSimpleName());
-                }
+        provider.registerCreationListener(beanCreationListener);
+        recordPeak();
+        return this;
+    }
+
+    @Override
+    public <T> Component unregister(Class<T> type, Annotation qualifier) throws ProviderMissingException {
+        super.unregister(type, qualifier);
+        if (qualifier == null) {
+            AutoProvider autoProvider = autoProviders.remove(type);
+            if (autoProvider != null) {
+                autoProvider.provider.unregisterOnReferencedListener(autoProviderReferencedListener);
             }
-        });
+        }
         return this;
     }
 
+    /**
+     * Set how long an automatically registered provider can stay unreferenced before it's
+     * unregistered. Providers are checked when another provider is registered automatically and
+     * by {@link #evictIdleProviders()}, so the idle time is counted from the registration or the
+     * first check finding the provider unreferenced.
+     *
+     * @param idleTimeoutMs The timeout in milliseconds. 0, which is the default, to never evict
+     *                      idle providers
+     */
+    public void setAutoProviderIdleTimeout(long idleTimeoutMs) {
+        this.autoProviderIdleTimeout = idleTimeoutMs;
+        this.lastEvictionTime = now();
+    }
+
+    /**
+     * Set how many automatically registered providers can be kept. When exceeded, the least
+     * recently resolved or referenced ones not referenced by anything any more are unregistered.
+     * Call it on the UI thread, see {@link MvcComponent}.
+     *
+     * @param maxAutoProviders The maximum number. 0, which is the default, for no limit
+     */
+    public void setMaxAutoProviders(int maxAutoProviders) {
+        this.maxAutoProviders = maxAutoProviders;
+        evictOverflow();
+    }
+
+    /**
+     * Unregister automatically registered providers which have been unreferenced longer than the
+     * timeout set by {@link #setAutoProviderIdleTimeout(long)} and record a snapshot into
+     * {@link #getStatsHistory()}. Call it on the UI thread, or through
+     * {@link MvcGraph#evictIdleProviders()} from other threads.
+     *
+     * @return How many providers have been evicted
+     */
+    public int evictIdleProviders() {
+        long now = now();
+        lastEvictionTime = now;
+        int evicted = 0;
+        if (autoProviderIdleTimeout > 0) {
+            Iterator<AutoProvider> iterator = new ArrayList<>(autoProviders.values()).iterator();
+            while (iterator.hasNext()) {
+                AutoProvider autoProvider = iterator.next();
+                if (autoProvider.provider.getReferenceCount() > 0) {
+                    autoProvider.idleSince = -1;
+                } else if (autoProvider.idleSince < 0) {
+                    autoProvider.idleSince = now;
+                } else if (now - autoProvider.idleSince >= autoProviderIdleTimeout) {
+                    if (evict(autoProvider)) {
+                        evicted++;
+                    }
+                }
+            }
+        }
+
+        statsHistory.add(getStats());
+        if (statsHistory.size() > MAX_STATS_HISTORY) {
+            statsHistory.removeFirst();
+        }
+        return evicted;
+    }
+
+    /**
+     * @return The current snapshot of the providers registered to this component. Call it on the UI
+     * thread, see {@link MvcComponent}.
+     */
+    public Stats getStats() {
+        return new Stats(now(), providers.size(), autoProviders.size(), peakProviderCount,
+                autoRegisteredCount, evictedCount);
+    }
+
+    /**
+     * @return Snapshots taken by recent {@link #evictIdleProviders()}, oldest first. At most
+     * {@value #MAX_STATS_HISTORY} snapshots are kept.
+     */
+    public List<Stats> getStatsHistory() {
+        return new ArrayList<>(statsHistory);
+    }
+
+    /**
+     * @return Current time in milliseconds
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private void evictWhenNeeded() {
+        if (autoProviderIdleTimeout > 0 && now() - lastEvictionTime >= autoProviderIdleTimeout) {
+            evictIdleProviders();
+        }
+        evictOverflow();
+    }
+
+    private void evictOverflow() {
+        if (maxAutoProviders > 0 && autoProviders.size() > maxAutoProviders) {
+            Iterator<AutoProvider> iterator = new ArrayList<>(autoProviders.values()).iterator();
+            while (autoProviders.size() > maxAutoProviders && iterator.hasNext()) {
+                AutoProvider autoProvider = iterator.next();
+                if (autoProvider.provider.getReferenceCount() == 0) {
+                    evict(autoProvider);
+                }
+            }
+        }
+    }
+
+    private boolean evict(AutoProvider autoProvider) {
+        Provider provider = autoProvider.provider;
+        try {
+            if (super.findProvider(provider.type(), null) != provider) {
+                //Replaced by an explicitly registered provider
+                autoProviders.remove(provider.type());
+                return false;
+            }
+            unregister(provider.type(), null);
+            provider.unregisterCreationListener(beanCreationListener);
+            evictedCount++;
+            logger.trace("Evicted idle provider - '{}'.", provider.type().getSimpleName());
+            return true;
+        } catch (ProviderMissingException e) {
+            //Unregistered by others already
+            autoProviders.remove(provider.type());
+            return false;
+        }
+    }
+
+    private void recordPeak() {
+        if (providers.size() > peakProviderCount) {
+            peakProviderCount = providers.size();
+        }
+    }
+
     private static String getClassName(Class type) {
         String pkg = type.getPackage().getName();
         String implClassName = pkg + ".internal." + type.getSimpleName() + "Impl";
@@ -19,6 +19,8 @@ package com.shipdream.lib.android.mvc;
 import com.shipdream.lib.poke.Component;
 import com.shipdream.lib.poke.Consumer;
 import com.shipdream.lib.poke.Graph;
+import com.shipdream.lib.poke.GraphTemplate;
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.Provider;
 import com.shipdream.lib.poke.Provides;
 import com.shipdream.lib.poke.exception.CircularDependenciesException;
@@ -30,6 +32,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
 
@@ -38,6 +44,18 @@ public class MvcGraph {
 
     UiThreadRunner uiThreadRunner;
     Graph graph;
+    private volatile LeakDetector leakDetector;
+    //Runs the command straight away on the UI thread, otherwise posts it to the UI thread
+    private final Executor uiThreadExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            if (uiThreadRunner.isOnUiThread()) {
+                command.run();
+            } else {
+                uiThreadRunner.post(command);
+            }
+        }
+    };
 
     {
         uiThreadRunner = new UiThreadRunner() {
@@ -56,12 +74,54 @@ public class MvcGraph {
                 runnable.run();
             }
         };
+    }
 
+    public MvcGraph() {
         MvcComponent rootComponent = new MvcComponent("MvcRootComponent");
         graph = new Graph();
         prepareInternalGraph(graph, rootComponent);
     }
 
+    /**
+     * Construct a graph forked from the given template. Providers registered to the graph the
+     * template was created from are available straight away without registering them again while
+     * registering to or unregistering from this graph doesn't affect the template. Listeners and
+     * monitors are not inherited.
+     *
+     * @param template The template created by {@link #createTemplate()}
+     */
+    public MvcGraph(GraphTemplate template) {
+        MvcComponent rootComponent = new MvcComponent("MvcRootComponent");
+        try {
+            graph = template.newGraph(rootComponent);
+        } catch (Graph.IllegalRootComponentException e) {
+            throw new MvcGraphException(e.getMessage(), e);
+        }
+        try {
+            //Each graph provides its own UiThreadRunner
+            rootComponent.unregister(UiThreadRunner.class, null);
+        } catch (ProviderMissingException e) {
+            //The template wasn't created from a MvcGraph
+        }
+        prepareInternalGraph(graph, rootComponent);
+    }
+
+    /**
+     * Create an immutable template of this graph from the providers registered so far. Graphs
+     * constructed by {@link #MvcGraph(GraphTemplate)} are forked from the template in constant
+     * time. Only providers registered by {@link Provides} methods or by class types can be
+     * included, see {@link com.shipdream.lib.poke.Provider#copy()}.
+     *
+     * @return The template
+     */
+    public GraphTemplate createTemplate() {
+        try {
+            return new GraphTemplate(graph);
+        } catch (PokeException e) {
+            throw new MvcGraphException(e.getMessage(), e);
+        }
+    }
+
     Graph prepareInternalGraph(Graph graph, MvcComponent rootComponent) {
         try {
             graph.setRootComponent(rootComponent);
@@ -76,6 +136,13 @@ public class MvcGraph {
         } catch (PokeException e) {
             throw new MvcGraphException(e.getMessage(), e);
         }
+        //Async callbacks are delivered on the UI thread
+        graph.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                uiThreadRunner.post(command);
+            }
+        });
         graph.registerDisposeListener(new Provider.DisposeListener() {
             @Override
             public <T> void onDisposed(Provider<T> provider, T instance) {
@@ -87,6 +154,12 @@ public class MvcGraph {
                     logger.trace("---Bean destroyed - '{}'.",
                             provider.type().getSimpleName());
                 }
+
+                LeakDetector detector = leakDetector;
+                //Pooled instances are meant to be reused
+                if (instance != null && detector != null && provider.getInstancePool() == null) {
+                    detector.watch(instance, "disposed");
+                }
             }
         });
 
@@ -145,6 +218,46 @@ public class MvcGraph {
         }
     }
 
+    /**
+     * Register {@link Graph.Monitor} which will be called only when the graph is about to inject
+     * or release the given target. Unregister it by {@link #unregisterMonitor(Object, Graph.Monitor)}
+     * when the target is destroyed.
+     *
+     * @param target The object to watch
+     * @param monitor The monitor
+     */
+    public void registerMonitor(final Object target, final Graph.Monitor monitor) {
+        if (uiThreadRunner.isOnUiThread()) {
+            graph.registerMonitor(target, monitor);
+        } else {
+            uiThreadRunner.post(new Runnable() {
+                @Override
+                public void run() {
+                    graph.registerMonitor(target, monitor);
+                }
+            });
+        }
+    }
+
+    /**
+     * Unregister {@link Graph.Monitor} registered by {@link #registerMonitor(Object, Graph.Monitor)}
+     *
+     * @param target The object watched by the monitor
+     * @param monitor The monitor
+     */
+    public void unregisterMonitor(final Object target, final Graph.Monitor monitor) {
+        if (uiThreadRunner.isOnUiThread()) {
+            graph.unregisterMonitor(target, monitor);
+        } else {
+            uiThreadRunner.post(new Runnable() {
+                @Override
+                public void run() {
+                    graph.unregisterMonitor(target, monitor);
+                }
+            });
+        }
+    }
+
     /**
      * Reference an injectable object and retain it. Use
      * {@link #dereference(Object, Class, Annotation)} to dereference it when it's not used
@@ -161,6 +274,27 @@ public class MvcGraph {
         return graph.reference(type, qualifier, Inject.class);
     }
 
+    /**
+     * Reference an injectable object and retain it. Different from
+     * {@link #reference(Class, Annotation)}, the returned handle holds the resolved provider so
+     * {@link InstanceHandle#close()} dereferences the instance without looking up the provider
+     * again. Close the handle when the instance is not used any more.
+     *
+     * <p>Like referencing, dereferencing only happens on the UI thread. Referencing must be called
+     * on the UI thread while closing the handle from other threads posts the dereferencing to the
+     * UI thread.</p>
+     * @param type the type of the object
+     * @param qualifier the qualifier
+     * @return The handle of the referenced instance
+     */
+    public <T> InstanceHandle<T> referenceHandle(Class<T> type, Annotation qualifier)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        if (!uiThreadRunner.isOnUiThread()) {
+            throw new MvcGraphException("Cannot reference an instance from Non-UiThread");
+        }
+        return graph.referenceHandle(type, qualifier, Inject.class, uiThreadExecutor);
+    }
+
     /**
      * Dereference an injectable object. When it's not referenced by anything else after this
      * dereferencing, release its cached instance if possible.
@@ -378,25 +512,63 @@ public class MvcGraph {
      */
     public void release(final Object target) {
         if (uiThreadRunner.isOnUiThread()) {
-            try {
-                graph.release(target, Inject.class);
-            } catch (ProviderMissingException e) {
-                throw new MvcGraphException(e.getMessage(), e);
-            }
+            doRelease(target);
         } else {
             uiThreadRunner.post(new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        graph.release(target, Inject.class);
-                    } catch (ProviderMissingException e) {
-                        throw new MvcGraphException(e.getMessage(), e);
-                    }
+                    doRelease(target);
                 }
             });
         }
     }
 
+    private void doRelease(Object target) {
+        try {
+            graph.release(target, Inject.class);
+        } catch (ProviderMissingException e) {
+            throw new MvcGraphException(e.getMessage(), e);
+        }
+
+        LeakDetector detector = leakDetector;
+        if (detector != null) {
+            detector.scheduleCheckIfDue(this);
+            detector.watch(target, "released");
+        }
+    }
+
+    /**
+     * Set the detector to track released targets and disposed beans that are expected to become
+     * unreachable. Leak detection forces garbage collections and walks the graph by reflection,
+     * so only enable it in debug builds.
+     *
+     * @param leakDetector The detector. Null to disable leak detection.
+     */
+    public void setLeakDetector(LeakDetector leakDetector) {
+        this.leakDetector = leakDetector;
+    }
+
+    /**
+     * @return The leak detector or null if leak detection is disabled
+     */
+    public LeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
+    /**
+     * Check instances tracked by the {@link LeakDetector} straight away on the calling thread. The
+     * check forces garbage collections and waits for them, so don't call it on the UI thread.
+     *
+     * @return The leaks found since the last check, empty if none or leak detection is disabled
+     */
+    public List<LeakDetector.Leak> checkLeaks() {
+        LeakDetector detector = leakDetector;
+        if (detector == null) {
+            return Collections.emptyList();
+        }
+        return detector.check(this);
+    }
+
     /**
      * Add {@link Component} to the graph.
      *
@@ -427,6 +599,89 @@ public class MvcGraph {
         return (MvcComponent) graph.getRootComponent();
     }
 
+    /**
+     * Set the executor creating instances injected into {@link com.shipdream.lib.poke.Async}
+     * fields. Their callbacks are always delivered on the UI thread.
+     *
+     * @param executor The executor. Null to create them on the injecting thread.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        graph.setExecutor(executor);
+    }
+
+    /**
+     * Set whether beans released by the graph are destroyed in a batch. When batched,
+     * {@link Bean#onDestroy()} of released beans and dereference listeners are not called in the
+     * middle of releasing an object but after the release completes, or by the executor set by
+     * {@link #setDisposalExecutor(Executor)}. See {@link Graph#setDisposalBatched(boolean)} for
+     * the ordering of batched notifications.
+     *
+     * @param batched Whether to batch disposals
+     */
+    public void setDisposalBatched(boolean batched) {
+        graph.setDisposalBatched(batched);
+    }
+
+    /**
+     * Set the executor to destroy batched disposals, e.g. one running tasks when the UI thread is
+     * idle. Since beans are expected to be destroyed on the UI thread, the executor should run
+     * tasks on the UI thread.
+     *
+     * @param executor The executor. Null to destroy them once the release completes.
+     */
+    public void setDisposalExecutor(Executor executor) {
+        graph.setDisposalExecutor(executor);
+    }
+
+    /**
+     * Destroy beans whose disposals are batched and still pending straight away.
+     */
+    public void flushDisposals() {
+        if (!uiThreadRunner.isOnUiThread()) {
+            throw new MvcGraphException("Cannot flush disposals from Non-UiThread");
+        }
+        graph.flushDisposals();
+    }
+
+    /**
+     * Estimate the heap retained by each instance cached by the components of this graph. The
+     * walk visits every object reachable from the cached instances by reflection, so call it
+     * from debug tools rather than in production paths.
+     *
+     * @return The report sorted by retained size, largest first
+     */
+    public HeapReport estimateRetainedHeap() {
+        synchronized (graph) {
+            return new HeapEstimator().estimate(graph.getRootComponent());
+        }
+    }
+
+    /**
+     * Run {@link MvcComponent#evictIdleProviders()} on the {@link MvcComponent}s of this graph
+     * under the graph's lock, so it's safe to call from any thread, e.g. a periodic timer.
+     *
+     * @return How many providers have been evicted
+     */
+    public int evictIdleProviders() {
+        synchronized (graph) {
+            return evictIdleProviders(graph.getRootComponent());
+        }
+    }
+
+    private static int evictIdleProviders(Component component) {
+        int evicted = 0;
+        if (component instanceof MvcComponent) {
+            evicted += ((MvcComponent) component).evictIdleProviders();
+        }
+        List<Component> children = component.getChildrenComponents();
+        if (children != null) {
+            for (Component child : new ArrayList<>(children)) {
+                evicted += evictIdleProviders(child);
+            }
+        }
+        return evicted;
+    }
+
     /**
      * Register {@link Provider.DereferenceListener} which will be called when the provider
      *
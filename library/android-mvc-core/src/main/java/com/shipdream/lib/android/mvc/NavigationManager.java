@@ -65,6 +65,12 @@ public class NavigationManager extends Manager<NavigationManager.Model> {
                 this.navigator = navigator;
             }
 
+            @Override
+            protected ValueChangeEvent<NavLocation> copyWithLastValue(NavLocation lastValue) {
+                return new OnLocationForward(sender, lastValue, getCurrentValue(), clearHistory,
+                        locationWhereHistoryClearedUpTo, navigator);
+            }
+
             /**
              * Who causes this event.
              * @return
@@ -115,6 +121,11 @@ public class NavigationManager extends Manager<NavigationManager.Model> {
                 this.navigator = navigator;
             }
 
+            @Override
+            protected ValueChangeEvent<NavLocation> copyWithLastValue(NavLocation lastValue) {
+                return new OnLocationBack(sender, lastValue, getCurrentValue(), fastRewind, navigator);
+            }
+
             /**
              * Who causes this event.
              * @return
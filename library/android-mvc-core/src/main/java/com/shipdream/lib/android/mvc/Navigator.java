@@ -16,8 +16,8 @@
 
 package com.shipdream.lib.android.mvc;
 
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.exception.PokeException;
-import com.shipdream.lib.poke.exception.ProviderMissingException;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -39,17 +39,11 @@ public class Navigator {
         void run();
     }
 
-    private static class PendingReleaseInstance<T> {
-        private Class<T> type;
-        private Annotation qualifier;
-        private T instance;
-    }
-
     private final Object sender;
     private OnSettled onSettled;
     private NavigationManager navigationManager;
     private Object navigateEvent;
-    private List<PendingReleaseInstance> pendingReleaseInstances;
+    private List<InstanceHandle<?>> pendingReleaseInstances;
 
     /**
      * Construct a {@link Navigator}
@@ -167,25 +161,21 @@ public class Navigator {
      * @throws MvcGraphException Raised when the required injectable object cannot be injected
      */
     public <T> Navigator with(Class<T> type, Annotation qualifier, Preparer<T> preparer) throws MvcGraphException {
-        T instance;
+        InstanceHandle<T> handle;
         try {
-            instance = Mvc.graph().reference(type, qualifier);
+            handle = Mvc.graph().referenceHandle(type, qualifier);
         } catch (PokeException e) {
             throw new MvcGraphException(e.getMessage(), e);
         }
 
         if (preparer != null) {
-            preparer.prepare(instance);
+            preparer.prepare(handle.get());
         }
 
         if (pendingReleaseInstances == null) {
             pendingReleaseInstances = new ArrayList<>();
         }
-        PendingReleaseInstance pendingReleaseInstance = new PendingReleaseInstance();
-        pendingReleaseInstance.instance = instance;
-        pendingReleaseInstance.type = type;
-        pendingReleaseInstance.qualifier = qualifier;
-        pendingReleaseInstances.add(pendingReleaseInstance);
+        pendingReleaseInstances.add(handle);
 
         return this;
     }
@@ -442,13 +432,13 @@ public class Navigator {
         }
 
         if (pendingReleaseInstances != null) {
-            for (PendingReleaseInstance i : pendingReleaseInstances) {
+            for (InstanceHandle<?> handle : pendingReleaseInstances) {
                 try {
-                    Mvc.graph().dereference(i.instance, i.type, i.qualifier);
-                } catch (ProviderMissingException e) {
+                    handle.close();
+                } catch (IllegalStateException e) {
                     //should not happen
                     //in case this happens just logs it
-                    navigationManager.logger.warn("Failed to auto release {} after navigation settled", i.type.getName());
+                    navigationManager.logger.warn("Failed to auto release {} after navigation settled", handle.type().getName());
                 }
             }
         }
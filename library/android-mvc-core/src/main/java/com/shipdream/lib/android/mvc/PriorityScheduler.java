@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default {@link Scheduler}. A pool of at least {@link #DEFAULT_THREAD_COUNT} threads takes
+ * the work of the highest priority first, in submission order within a priority. Each lane has a bounded queue
+ * with a {@link RejectionPolicy} applied when it's full. Threads run the work of each lane at a
+ * thread priority matching the lane. Work submitted through this executor directly runs in
+ * {@link Priority#VISIBLE}.
+ */
+public class PriorityScheduler extends AbstractExecutorService implements Scheduler {
+    /**
+     * The minimum number of threads of the scheduler constructed by {@link #PriorityScheduler()}.
+     * Tasks often block on I/O, so the pool isn't limited to the number of cores.
+     */
+    public static final int DEFAULT_THREAD_COUNT = 10;
+
+    /**
+     * What to do with work submitted to a lane whose queue is full
+     */
+    public enum RejectionPolicy {
+        /**
+         * Throw {@link RejectedExecutionException}
+         */
+        ABORT,
+        /**
+         * Drop the submitted work. Dropped futures are cancelled.
+         */
+        DISCARD,
+        /**
+         * Drop the oldest work still queued in the lane to queue the submitted one. Dropped
+         * futures are cancelled.
+         */
+        DISCARD_OLDEST,
+        /**
+         * Run the submitted work on the submitting thread
+         */
+        CALLER_RUNS
+    }
+
+    private static final Priority DEFAULT_PRIORITY = Priority.VISIBLE;
+
+    private class Lane extends AbstractExecutorService {
+        final Priority priority;
+        volatile int capacity = Integer.MAX_VALUE;
+        volatile RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+        final AtomicInteger queuedCount = new AtomicInteger();
+        final AtomicLong submittedCount = new AtomicLong();
+        final AtomicLong rejectedCount = new AtomicLong();
+        final AtomicLong completedCount = new AtomicLong();
+        final AtomicLong totalQueueWaitNanos = new AtomicLong();
+        final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        final AtomicLong totalRunNanos = new AtomicLong();
+        final AtomicLong maxRunNanos = new AtomicLong();
+
+        Lane(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(this, command);
+        }
+
+        @Override
+        public void shutdown() {
+            throw new UnsupportedOperationException("Shut down the scheduler instead of its lanes");
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            throw new UnsupportedOperationException("Shut down the scheduler instead of its lanes");
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return PriorityScheduler.this.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return PriorityScheduler.this.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return PriorityScheduler.this.awaitTermination(timeout, unit);
+        }
+    }
+
+    private class Work implements Runnable, Comparable<Work> {
+        final Lane lane;
+        final Runnable command;
+        final long sequence;
+        final long queuedNanos;
+
+        Work(Lane lane, Runnable command) {
+            this.lane = lane;
+            this.command = command;
+            this.sequence = sequencer.getAndIncrement();
+            this.queuedNanos = System.nanoTime();
+        }
+
+        @Override
+        public int compareTo(Work another) {
+            int diff = lane.priority.ordinal() - another.lane.priority.ordinal();
+            if (diff != 0) {
+                return diff;
+            }
+            return sequence < another.sequence ? -1 : (sequence == another.sequence ? 0 : 1);
+        }
+
+        @Override
+        public void run() {
+            lane.queuedCount.decrementAndGet();
+            long start = System.nanoTime();
+            long wait = start - queuedNanos;
+
+            Thread thread = Thread.currentThread();
+            int threadPriority = thread.getPriority();
+            thread.setPriority(threadPriorityOf(lane.priority));
+            try {
+                command.run();
+            } finally {
+                thread.setPriority(threadPriority);
+                long run = System.nanoTime() - start;
+                lane.completedCount.incrementAndGet();
+                lane.totalQueueWaitNanos.addAndGet(wait);
+                updateMax(lane.maxQueueWaitNanos, wait);
+                lane.totalRunNanos.addAndGet(run);
+                updateMax(lane.maxRunNanos, run);
+            }
+        }
+    }
+
+    private final int threadCount;
+    private final ThreadPoolExecutor pool;
+    private final PriorityBlockingQueue<Runnable> queue = new PriorityBlockingQueue<>();
+    private final AtomicLong sequencer = new AtomicLong();
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+
+    /**
+     * Construct a scheduler with as many threads as the cores, at least
+     * {@link #DEFAULT_THREAD_COUNT}
+     */
+    public PriorityScheduler() {
+        this(Math.max(DEFAULT_THREAD_COUNT, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Construct a scheduler
+     * @param threadCount The number of threads of the pool. Idle threads are released after 30
+     *                    seconds.
+     */
+    public PriorityScheduler(int threadCount) {
+        this.threadCount = threadCount;
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new Lane(priority));
+        }
+        pool = new ThreadPoolExecutor(threadCount, threadCount, 30, TimeUnit.SECONDS, queue,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "MvcBackgroundThread-" + count.incrementAndGet());
+                        thread.setPriority(threadPriorityOf(DEFAULT_PRIORITY));
+                        return thread;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    private static int threadPriorityOf(Priority priority) {
+        switch (priority) {
+            case USER_BLOCKING:
+                return Thread.NORM_PRIORITY;
+            case PREFETCH:
+                return Thread.NORM_PRIORITY - 2;
+            case MAINTENANCE:
+                return Thread.MIN_PRIORITY;
+            case VISIBLE:
+            default:
+                return Thread.NORM_PRIORITY - 1;
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return The number of threads of the pool
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Set the capacity of the queue of the lane. Unbounded by default.
+     * @param priority The priority of the lane
+     * @param capacity The maximum number of commands waiting in the lane
+     */
+    public void setLaneCapacity(Priority priority, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of a lane must be positive");
+        }
+        lanes.get(priority).capacity = capacity;
+    }
+
+    /**
+     * Set what to do when the queue of the lane is full. {@link RejectionPolicy#ABORT} by default.
+     * @param priority The priority of the lane
+     * @param rejectionPolicy The rejection policy
+     */
+    public void setRejectionPolicy(Priority priority, RejectionPolicy rejectionPolicy) {
+        lanes.get(priority).rejectionPolicy = rejectionPolicy;
+    }
+
+    @Override
+    public ExecutorService lane(Priority priority) {
+        return lanes.get(priority);
+    }
+
+    @Override
+    public LaneMetrics getLaneMetrics(Priority priority) {
+        Lane lane = lanes.get(priority);
+        return new LaneMetrics(priority, lane.queuedCount.get(), lane.submittedCount.get(),
+                lane.rejectedCount.get(), lane.completedCount.get(),
+                lane.totalQueueWaitNanos.get(), lane.maxQueueWaitNanos.get(),
+                lane.totalRunNanos.get(), lane.maxRunNanos.get());
+    }
+
+    private void schedule(Lane lane, Runnable command) {
+        if (command == null) {
+            throw new NullPointerException("Can't schedule a NULL command");
+        }
+        lane.submittedCount.incrementAndGet();
+        if (lane.queuedCount.incrementAndGet() > lane.capacity) {
+            switch (lane.rejectionPolicy) {
+                case DISCARD_OLDEST:
+                    Work oldest = findOldest(lane);
+                    if (oldest != null && queue.remove(oldest)) {
+                        lane.queuedCount.decrementAndGet();
+                        discard(lane, oldest.command);
+                        break;
+                    }
+                    //Nothing older to drop, e.g. taken by the pool or not queued yet by other
+                    //submissions, so drop the new one to keep the lane bounded
+                    lane.queuedCount.decrementAndGet();
+                    discard(lane, command);
+                    return;
+                case DISCARD:
+                    lane.queuedCount.decrementAndGet();
+                    discard(lane, command);
+                    return;
+                case CALLER_RUNS:
+                    lane.queuedCount.decrementAndGet();
+                    lane.rejectedCount.incrementAndGet();
+                    if (!isShutdown()) {
+                        command.run();
+                    }
+                    return;
+                case ABORT:
+                default:
+                    lane.queuedCount.decrementAndGet();
+                    lane.rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException("The queue of lane " + lane.priority
+                            + " is full at " + lane.capacity);
+            }
+        }
+
+        try {
+            pool.execute(new Work(lane, command));
+        } catch (RejectedExecutionException e) {
+            //Shut down
+            lane.queuedCount.decrementAndGet();
+            lane.rejectedCount.incrementAndGet();
+            throw e;
+        }
+    }
+
+    private Work findOldest(Lane lane) {
+        Work oldest = null;
+        for (Runnable runnable : queue) {
+            Work work = (Work) runnable;
+            if (work.lane == lane && (oldest == null || work.sequence < oldest.sequence)) {
+                oldest = work;
+            }
+        }
+        return oldest;
+    }
+
+    private static void discard(Lane lane, Runnable command) {
+        lane.rejectedCount.incrementAndGet();
+        if (command instanceof Future) {
+            ((Future<?>) command).cancel(false);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(lanes.get(DEFAULT_PRIORITY), command);
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> commands = new ArrayList<>();
+        for (Runnable runnable : pool.shutdownNow()) {
+            Work work = (Work) runnable;
+            work.lane.queuedCount.decrementAndGet();
+            commands.add(work.command);
+        }
+        return commands;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return pool.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return pool.awaitTermination(timeout, unit);
+    }
+}
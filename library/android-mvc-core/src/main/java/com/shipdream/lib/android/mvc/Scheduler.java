@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Schedules background work by priorities. Each {@link Priority} has a lane of its own with a
+ * bounded queue and metrics. The {@link ExecutorService} provided by {@link Mvc#graph()} is a
+ * {@link PriorityScheduler}, which can be replaced by providing another {@link ExecutorService}.
+ */
+public interface Scheduler {
+    /**
+     * Priorities of background work from the highest to the lowest
+     */
+    enum Priority {
+        /**
+         * Work the user is waiting for, e.g. loading the content of the screen just opened
+         */
+        USER_BLOCKING,
+        /**
+         * Work affecting what's visible, the default
+         */
+        VISIBLE,
+        /**
+         * Work which may be needed soon, e.g. prefetching the next page
+         */
+        PREFETCH,
+        /**
+         * Work nobody waits for, e.g. cleaning caches
+         */
+        MAINTENANCE
+    }
+
+    /**
+     * Numbers of a lane
+     */
+    class LaneMetrics {
+        private final Priority priority;
+        private final int queuedCount;
+        private final long submittedCount;
+        private final long rejectedCount;
+        private final long completedCount;
+        private final long totalQueueWaitNanos;
+        private final long maxQueueWaitNanos;
+        private final long totalRunNanos;
+        private final long maxRunNanos;
+
+        public LaneMetrics(Priority priority, int queuedCount, long submittedCount,
+                           long rejectedCount, long completedCount, long totalQueueWaitNanos,
+                           long maxQueueWaitNanos, long totalRunNanos, long maxRunNanos) {
+            this.priority = priority;
+            this.queuedCount = queuedCount;
+            this.submittedCount = submittedCount;
+            this.rejectedCount = rejectedCount;
+            this.completedCount = completedCount;
+            this.totalQueueWaitNanos = totalQueueWaitNanos;
+            this.maxQueueWaitNanos = maxQueueWaitNanos;
+            this.totalRunNanos = totalRunNanos;
+            this.maxRunNanos = maxRunNanos;
+        }
+
+        /**
+         * @return The priority of the lane
+         */
+        public Priority getPriority() {
+            return priority;
+        }
+
+        /**
+         * @return Number of commands waiting in the queue of the lane
+         */
+        public int getQueuedCount() {
+            return queuedCount;
+        }
+
+        /**
+         * @return Number of commands submitted to the lane including rejected ones
+         */
+        public long getSubmittedCount() {
+            return submittedCount;
+        }
+
+        /**
+         * @return Number of commands rejected or discarded since the queue of the lane was full
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        /**
+         * @return Number of commands run to the end
+         */
+        public long getCompletedCount() {
+            return completedCount;
+        }
+
+        /**
+         * @return Time completed commands spent in the queue in nanoseconds
+         */
+        public long getTotalQueueWaitNanos() {
+            return totalQueueWaitNanos;
+        }
+
+        /**
+         * @return The longest time a command spent in the queue in nanoseconds
+         */
+        public long getMaxQueueWaitNanos() {
+            return maxQueueWaitNanos;
+        }
+
+        /**
+         * @return Time spent running completed commands in nanoseconds
+         */
+        public long getTotalRunNanos() {
+            return totalRunNanos;
+        }
+
+        /**
+         * @return The longest time spent running a command in nanoseconds
+         */
+        public long getMaxRunNanos() {
+            return maxRunNanos;
+        }
+
+        @Override
+        public String toString() {
+            return priority + " - queued: " + queuedCount + ", submitted: " + submittedCount
+                    + ", rejected: " + rejectedCount + ", completed: " + completedCount
+                    + ", avg wait: " + (completedCount == 0 ? 0 : totalQueueWaitNanos / completedCount / 1000)
+                    + "us, max wait: " + maxQueueWaitNanos / 1000
+                    + "us, avg run: " + (completedCount == 0 ? 0 : totalRunNanos / completedCount / 1000)
+                    + "us, max run: " + maxRunNanos / 1000 + "us";
+        }
+    }
+
+    /**
+     * Get the executor submitting work to the lane of the priority
+     * @param priority The priority
+     * @return The executor of the lane. It can't be shut down by itself.
+     */
+    ExecutorService lane(Priority priority);
+
+    /**
+     * @param priority The priority
+     * @return The current numbers of the lane of the priority
+     */
+    LaneMetrics getLaneMetrics(Priority priority);
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs commands one by one in submission order on the threads of another executor, so a lane
+ * of serial work borrows at most one thread of a shared pool at a time.
+ */
+class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final Queue<Runnable> commands = new ArrayDeque<>();
+    private Runnable active;
+    //Held while a command runs, so other threads can run actions between commands
+    private final ReentrantLock turn = new ReentrantLock();
+
+    SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(final Runnable command) {
+        commands.offer(new Runnable() {
+            @Override
+            public void run() {
+                turn.lock();
+                try {
+                    command.run();
+                } finally {
+                    turn.unlock();
+                    scheduleNext();
+                }
+            }
+        });
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    /**
+     * Run the action on the calling thread while no command of this executor is running. Waits
+     * for the running command only, not for the queued ones. Runs the action straight away when
+     * called from a command of this executor.
+     * @param action The action
+     * @param timeout How long to wait for the running command
+     * @param unit The unit of the timeout
+     * @return false if the running command didn't finish in time, in which case the action isn't run
+     * @throws InterruptedException when interrupted while waiting
+     */
+    boolean runBetweenCommands(Runnable action, long timeout, TimeUnit unit)
+            throws InterruptedException {
+        if (!turn.tryLock(timeout, unit)) {
+            return false;
+        }
+        try {
+            action.run();
+            return true;
+        } finally {
+            turn.unlock();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        active = commands.poll();
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.android.mvc.event.ValueChangeEvent;
+import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
+import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The event bus qualified by {@link EventBusV}, delivering events to views on the UI thread.
+ * Events posted on the UI thread are delivered straight away. Events posted from other threads
+ * are posted to the UI thread one by one by default.
+ *
+ * <p>In batched mode, events posted from other threads are put into a lock free queue which is
+ * drained in order by a single callback on the UI thread, so a burst of events from background
+ * threads doesn't flood the main looper with one message per event. Set a batch interval, e.g.
+ * a frame, to collect more events into each drain.</p>
+ *
+ * <p>Events of types registered by {@link #conflate(Class)} are always queued when posted from
+ * other threads. While an event of the same kind is still queued, a newer one replaces it in
+ * place rather than being queued again, so only the latest is delivered. Events of the
+ * same kind can be further distinguished by a {@link KeyExtractor}, e.g. by the id of a
+ * counter.</p>
+ *
+ * <p>Views off screen are paused by {@link #pause(Object)}. Events to them are held by the same
+ * rules, or by event type for types without rules and for events which can't be conflated, and
+ * only the latest of each kind is replayed by {@link #resume(Object)}, so off screen views don't
+ * render states nobody sees nor hold more events the longer they stay on the back stack.</p>
+ */
+public class UiThreadEventBus extends EventBusImpl {
+    /**
+     * Tells which events of the same type are of the same kind to be conflated
+     * @param <T> The type of the events
+     */
+    public interface KeyExtractor<T> {
+        /**
+         * @param event The event
+         * @return The key of the event. Events with equal keys are conflated.
+         */
+        Object keyOf(T event);
+    }
+
+    /**
+     * Merges events of the same kind
+     * @param <T> The type of the events
+     */
+    public interface Conflater<T> {
+        /**
+         * @param earliest The earliest event still queued
+         * @param latest The latest event
+         * @return The event to deliver in place of all of them
+         */
+        T conflate(T earliest, T latest);
+    }
+
+    private static class Rule {
+        final Class<?> type;
+        final KeyExtractor keyExtractor;
+        final Conflater conflater;
+
+        Rule(Class<?> type, KeyExtractor keyExtractor, Conflater conflater) {
+            this.type = type;
+            this.keyExtractor = keyExtractor;
+            this.conflater = conflater;
+        }
+    }
+
+    private static class ConflationKey {
+        final Rule rule;
+        final Object key;
+
+        ConflationKey(Rule rule, Object key) {
+            this.rule = rule;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ConflationKey)) {
+                return false;
+            }
+            ConflationKey that = (ConflationKey) o;
+            return rule == that.rule && (key == null ? that.key == null : key.equals(that.key));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * rule.hashCode() + (key == null ? 0 : key.hashCode());
+        }
+    }
+
+    /**
+     * Holds the events of the same kind queued at the position of the earliest one
+     */
+    private static class Slot {
+        private final ConflationKey key;
+        private final Object earliest;
+        private Object latest;
+        private boolean closed;
+
+        Slot(ConflationKey key, Object event) {
+            this.key = key;
+            this.earliest = event;
+        }
+
+        synchronized boolean merge(Object event) {
+            if (closed) {
+                return false;
+            }
+            latest = event;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized Object close() {
+            closed = true;
+            return latest == null ? earliest : key.rule.conflater.conflate(earliest, latest);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static final Conflater<Object> DEFAULT_CONFLATER = new Conflater<Object>() {
+        @Override
+        public Object conflate(Object earliest, Object latest) {
+            if (latest instanceof ValueChangeEvent && earliest instanceof ValueChangeEvent) {
+                return ((ValueChangeEvent) latest).conflate((ValueChangeEvent) earliest);
+            }
+            return latest;
+        }
+    };
+
+    private static final Rule NO_RULE = new Rule(Object.class, null, DEFAULT_CONFLATER);
+
+    private final MvcGraph graph;
+    private volatile boolean batched;
+    private volatile long batchIntervalMs;
+
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final AtomicInteger maxQueuedCount = new AtomicInteger();
+    private final AtomicLong drainCount = new AtomicLong();
+    private final AtomicLong drainedEventCount = new AtomicLong();
+    private final AtomicLong totalDrainNanos = new AtomicLong();
+    private volatile long lastDrainNanos;
+
+    private final Map<Class<?>, Rule> rules = new ConcurrentHashMap<>();
+    //Rules by posted event classes including the ones inherited from super types
+    private final Map<Class<?>, Rule> resolvedRules = new ConcurrentHashMap<>();
+    private final ConcurrentMap<ConflationKey, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong conflatedEventCount = new AtomicLong();
+
+    private final Runnable drainer = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    UiThreadEventBus(MvcGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Set whether events posted from non-UI threads are queued and delivered in batches
+     * @param batched true to batch events
+     */
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
+    /**
+     * @return Whether events posted from non-UI threads are queued and delivered in batches
+     */
+    public boolean isBatched() {
+        return batched;
+    }
+
+    /**
+     * Set how long to wait before draining the queue after the first event is queued in batched
+     * mode, e.g. 16ms to drain once per frame.
+     * @param batchIntervalMs The interval in milliseconds. 0 to drain in the next main loop.
+     */
+    public void setBatchIntervalMs(long batchIntervalMs) {
+        this.batchIntervalMs = batchIntervalMs;
+    }
+
+    /**
+     * @return How long to wait before draining the queue after the first event is queued
+     */
+    public long getBatchIntervalMs() {
+        return batchIntervalMs;
+    }
+
+    /**
+     * Conflate queued events of the given type and its sub types. {@link ValueChangeEvent}s are
+     * merged by {@link ValueChangeEvent#conflate(ValueChangeEvent)}, other events are replaced by
+     * the latest one. {@link ValueChangeEvent}s which are not
+     * {@link ValueChangeEvent#isConflatable() conflatable} are delivered as they are.
+     * @param eventType The type of events
+     */
+    public void conflate(Class<?> eventType) {
+        conflate(eventType, null, null);
+    }
+
+    /**
+     * Conflate queued events of the given type and its sub types which have equal keys
+     * @param eventType The type of events
+     * @param keyExtractor Extracts the keys of events. Null to conflate all events of the type.
+     * @param conflater Merges the events. Null to use the default, see {@link #conflate(Class)}.
+     */
+    public <T> void conflate(Class<T> eventType, KeyExtractor<? super T> keyExtractor,
+                             Conflater<T> conflater) {
+        rules.put(eventType, new Rule(eventType, keyExtractor,
+                conflater == null ? DEFAULT_CONFLATER : conflater));
+        resolvedRules.clear();
+    }
+
+    /**
+     * Stop conflating events of the given type. Events already queued are delivered as they are.
+     * @param eventType The type of events
+     */
+    public void unconflate(Class<?> eventType) {
+        rules.remove(eventType);
+        resolvedRules.clear();
+    }
+
+    private Rule findRule(Class<?> eventClass) {
+        Rule rule = resolvedRules.get(eventClass);
+        if (rule == null) {
+            rule = NO_RULE;
+            Class<?> clazz = eventClass;
+            while (clazz != null && rule == NO_RULE) {
+                Rule found = rules.get(clazz);
+                if (found != null) {
+                    rule = found;
+                } else {
+                    for (Class<?> type : clazz.getInterfaces()) {
+                        found = rules.get(type);
+                        if (found != null) {
+                            rule = found;
+                            break;
+                        }
+                    }
+                }
+                clazz = clazz.getSuperclass();
+            }
+            resolvedRules.put(eventClass, rule);
+        }
+        return rule;
+    }
+
+    @Override
+    public void post(final Object event) {
+        if (graph.uiThreadRunner.isOnUiThread()) {
+            super.post(event);
+            return;
+        }
+
+        Rule rule = event == null || rules.isEmpty() ? NO_RULE : findRule(event.getClass());
+        if (rule != NO_RULE) {
+            if (isConflatable(rule, event)) {
+                enqueueConflated(rule, event);
+            } else {
+                //Keep its order with the queued events of the rule
+                enqueue(event);
+            }
+        } else if (batched) {
+            if (event == null) {
+                //Fail on the caller thread rather than on the UI thread
+                throw new IllegalArgumentException("Event2V bus can't post a NULL event");
+            }
+            enqueue(event);
+        } else {
+            graph.uiThreadRunner.post(new Runnable() {
+                @Override
+                public void run() {
+                    UiThreadEventBus.super.post(event);
+                }
+            });
+        }
+    }
+
+    @Override
+    protected Object heldEventKeyOf(Object event) {
+        Rule rule = rules.isEmpty() ? NO_RULE : findRule(event.getClass());
+        if (rule == NO_RULE || !isConflatable(rule, event)) {
+            //By type, so views paused on the back stack hold one event of each type at most
+            return super.heldEventKeyOf(event);
+        }
+        return newConflationKey(rule, event);
+    }
+
+    /**
+     * The default conflater can't merge {@link ValueChangeEvent}s whose class doesn't declare
+     * how to copy itself, see {@link ValueChangeEvent#isConflatable()}
+     */
+    private static boolean isConflatable(Rule rule, Object event) {
+        return rule.conflater != DEFAULT_CONFLATER || !(event instanceof ValueChangeEvent)
+                || ((ValueChangeEvent) event).isConflatable();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected Object mergeHeldEvents(Object key, Object earliest, Object latest) {
+        if (key instanceof ConflationKey) {
+            return ((ConflationKey) key).rule.conflater.conflate(earliest, latest);
+        }
+        //The latest wins for events which can't be merged
+        return isConflatable(NO_RULE, latest) ? DEFAULT_CONFLATER.conflate(earliest, latest) : latest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ConflationKey newConflationKey(Rule rule, Object event) {
+        return new ConflationKey(rule, rule.keyExtractor == null ? null : rule.keyExtractor.keyOf(event));
+    }
+
+    private void enqueueConflated(Rule rule, Object event) {
+        ConflationKey key = newConflationKey(rule, event);
+        while (true) {
+            Slot slot = slots.get(key);
+            if (slot == null) {
+                slot = new Slot(key, event);
+                if (slots.putIfAbsent(key, slot) == null) {
+                    enqueue(slot);
+                    return;
+                }
+            } else if (slot.merge(event)) {
+                conflatedEventCount.incrementAndGet();
+                return;
+            } else {
+                //Being drained
+                slots.remove(key, slot);
+            }
+        }
+    }
+
+    private void enqueue(Object item) {
+        queue.offer(item);
+        int count = queuedCount.incrementAndGet();
+        int max = maxQueuedCount.get();
+        while (count > max && !maxQueuedCount.compareAndSet(max, count)) {
+            max = maxQueuedCount.get();
+        }
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            long interval = batchIntervalMs;
+            if (interval > 0) {
+                graph.uiThreadRunner.postDelayed(drainer, interval);
+            } else {
+                graph.uiThreadRunner.post(drainer);
+            }
+        }
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        //Allow following events to schedule another drain before draining so none is left behind
+        drainScheduled.set(false);
+        int drained = 0;
+        try {
+            Object item;
+            while ((item = queue.poll()) != null) {
+                queuedCount.decrementAndGet();
+                drained++;
+                if (item instanceof Slot) {
+                    Slot slot = (Slot) item;
+                    Object event = slot.close();
+                    slots.remove(slot.key, slot);
+                    super.post(event);
+                } else {
+                    super.post(item);
+                }
+            }
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            lastDrainNanos = elapsed;
+            totalDrainNanos.addAndGet(elapsed);
+            drainCount.incrementAndGet();
+            drainedEventCount.addAndGet(drained);
+            if (!queue.isEmpty()) {
+                //A handler threw, deliver the rest in the next drain
+                scheduleDrain();
+            }
+        }
+    }
+
+    /**
+     * @return Number of events replaced by later events of the same kind before delivery
+     */
+    public long getConflatedEventCount() {
+        return conflatedEventCount.get();
+    }
+
+    /**
+     * @return Number of events queued and not delivered yet
+     */
+    public int getQueuedEventCount() {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return The largest number of events queued at the same time
+     */
+    public int getMaxQueuedEventCount() {
+        return maxQueuedCount.get();
+    }
+
+    /**
+     * @return Number of times the queue has been drained
+     */
+    public long getDrainCount() {
+        return drainCount.get();
+    }
+
+    /**
+     * @return Number of events delivered by draining the queue
+     */
+    public long getDrainedEventCount() {
+        return drainedEventCount.get();
+    }
+
+    /**
+     * @return Time spent by the last drain in nanoseconds
+     */
+    public long getLastDrainTimeNanos() {
+        return lastDrainNanos;
+    }
+
+    /**
+     * @return Time spent by all drains in nanoseconds
+     */
+    public long getTotalDrainTimeNanos() {
+        return totalDrainNanos.get();
+    }
+}
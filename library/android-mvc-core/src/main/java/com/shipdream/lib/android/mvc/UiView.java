@@ -57,6 +57,10 @@ public interface UiView {
      * method when they updated their model.</p>
      *
      * <p><b>Do NOT change values of model from view but only from controllers.</b></p>
+     *
+     * <p>Controllers in actor mode, see {@link Bean#isActor()}, write their model off the UI
+     * thread, so views of them should bind an immutable copy of the model posted to the UI thread
+     * by the controller instead of reading {@link Controller#getModel()}.</p>
      */
     void update();
 }
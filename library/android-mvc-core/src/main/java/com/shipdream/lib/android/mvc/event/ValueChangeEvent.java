@@ -16,11 +16,16 @@
 
 package com.shipdream.lib.android.mvc.event;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Value change c2c event.
  * @param <T> The type fo the value
  */
 public class ValueChangeEvent<T> {
+    private static final ConcurrentMap<Class<?>, Boolean> conflatableTypes = new ConcurrentHashMap<>();
+
     private final T lastValue;
     private final T currentValue;
 
@@ -36,4 +41,58 @@ public class ValueChangeEvent<T> {
     public T getCurrentValue(){
         return currentValue;
     }
+
+    /**
+     * Create the event delivered in place of this event and the earlier events of the same kind
+     * when they are conflated by an event bus, see
+     * {@link com.shipdream.lib.android.mvc.UiThreadEventBus#conflate(Class)}. The result takes the
+     * last value from the earliest event and the current value and other fields from this event,
+     * see {@link #copyWithLastValue(Object)}.
+     * @param earliest The earliest event conflated
+     * @return The conflated event
+     * @throws UnsupportedOperationException Thrown when the event is not {@link #isConflatable()}
+     */
+    public ValueChangeEvent<T> conflate(ValueChangeEvent<T> earliest) {
+        if (!isConflatable()) {
+            throw new UnsupportedOperationException(String.format("%s must override " +
+                    "copyWithLastValue to be conflated", getClass().getName()));
+        }
+        return copyWithLastValue(earliest.getLastValue());
+    }
+
+    /**
+     * Copy this event with the given last value, used by {@link #conflate(ValueChangeEvent)}.
+     * Subclasses with more fields override it to create an instance of their own class. Event
+     * buses don't conflate events of subclasses which don't declare the override themselves
+     * unless a conflater is registered for them.
+     * @param lastValue The last value of the copy
+     * @return The copy
+     */
+    protected ValueChangeEvent<T> copyWithLastValue(T lastValue) {
+        return new ValueChangeEvent<>(lastValue, currentValue);
+    }
+
+    /**
+     * @return Whether the event can be merged by {@link #conflate(ValueChangeEvent)}, i.e. its
+     * class is {@link ValueChangeEvent} or declares {@link #copyWithLastValue(Object)}
+     */
+    public final boolean isConflatable() {
+        Class<?> type = getClass();
+        Boolean conflatable = conflatableTypes.get(type);
+        if (conflatable == null) {
+            conflatable = type == ValueChangeEvent.class || declaresCopy(type);
+            conflatableTypes.put(type, conflatable);
+        }
+        return conflatable;
+    }
+
+    private static boolean declaresCopy(Class<?> type) {
+        try {
+            //Found as the bridge method if the type argument is bound by the class
+            type.getDeclaredMethod("copyWithLastValue", Object.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
 }
@@ -28,6 +28,9 @@ import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
  * <p>Event2C will be posted on the <b>SAME</b> thread the caller is running on by calling
  * {@link #post(Object)}</p>
  *
+ * <p>Subscribers of the super classes and interfaces of the event class receive the event as
+ * well, e.g. <b>onEvent(Object event)</b> handles all events posted to the bus.</p>
+ *
  * <p>Example:</p>
  * <pre>
 {@code
@@ -0,0 +1,419 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records how events are dispatched by an event bus, set by
+ * {@link com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl#setMetrics(EventBusMetrics)}.
+ * For each posted event class it counts posts and deliveries and keeps a histogram of the time
+ * spent delivering each post. Each handler taking longer than the slow threshold to handle an
+ * event is flagged and reported to {@link SlowSubscriberListener}s.
+ *
+ * <p>Recording is lock free so it can stay enabled in production builds. Take a
+ * {@link #snapshot()} to log the numbers.</p>
+ */
+public class EventBusMetrics {
+    /**
+     * Upper bounds in microseconds of the buckets of dispatch latency histograms. The last bucket
+     * counts the rest.
+     */
+    public static final long[] HISTOGRAM_BOUNDS_MICROS = {100, 500, 1000, 4000, 16000, 50000, 100000};
+
+    /**
+     * Listener called when a handler is slower than the threshold
+     */
+    public interface SlowSubscriberListener {
+        /**
+         * Called on the thread the event is delivered on, after the handler returns
+         * @param subscriberClass The class of the subscriber
+         * @param eventType The event type the handler takes
+         * @param elapsedNanos Time spent by the handler in nanoseconds
+         */
+        void onSlowSubscriber(Class<?> subscriberClass, Class<?> eventType, long elapsedNanos);
+    }
+
+    /**
+     * Numbers of one posted event class
+     */
+    public static class EventStats {
+        private final Class<?> eventClass;
+        private final long postCount;
+        private final long deliveryCount;
+        private final int lastSubscriberCount;
+        private final long totalNanos;
+        private final long maxNanos;
+        private final long[] histogram;
+
+        EventStats(Class<?> eventClass, long postCount, long deliveryCount, int lastSubscriberCount,
+                   long totalNanos, long maxNanos, long[] histogram) {
+            this.eventClass = eventClass;
+            this.postCount = postCount;
+            this.deliveryCount = deliveryCount;
+            this.lastSubscriberCount = lastSubscriberCount;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.histogram = histogram;
+        }
+
+        /**
+         * @return The posted event class
+         */
+        public Class<?> getEventClass() {
+            return eventClass;
+        }
+
+        /**
+         * @return How many times events of the class have been posted
+         */
+        public long getPostCount() {
+            return postCount;
+        }
+
+        /**
+         * @return How many times events of the class have been delivered to subscribers
+         */
+        public long getDeliveryCount() {
+            return deliveryCount;
+        }
+
+        /**
+         * @return Number of subscribers the last event of the class was delivered to
+         */
+        public int getLastSubscriberCount() {
+            return lastSubscriberCount;
+        }
+
+        /**
+         * @return Time spent delivering all events of the class in nanoseconds
+         */
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @return The longest time spent delivering an event of the class in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /**
+         * @return Counts of posts by the time spent delivering them, bucketed by
+         * {@link #HISTOGRAM_BOUNDS_MICROS}
+         */
+        public long[] getHistogram() {
+            return histogram.clone();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(eventClass.getName()).append(" - posts: ").append(postCount)
+                    .append(", deliveries: ").append(deliveryCount)
+                    .append(", subscribers: ").append(lastSubscriberCount)
+                    .append(", avg: ").append(postCount == 0 ? 0 : totalNanos / postCount / 1000)
+                    .append("us, max: ").append(maxNanos / 1000).append("us, histogram:");
+            for (int i = 0; i < histogram.length; i++) {
+                sb.append(i < HISTOGRAM_BOUNDS_MICROS.length ? " <" + HISTOGRAM_BOUNDS_MICROS[i] + "us=" : " more=")
+                        .append(histogram[i]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A handler which has been slower than the threshold
+     */
+    public static class SlowSubscriber {
+        private final Class<?> subscriberClass;
+        private final Class<?> eventType;
+        private final long slowCount;
+        private final long maxNanos;
+
+        SlowSubscriber(Class<?> subscriberClass, Class<?> eventType, long slowCount, long maxNanos) {
+            this.subscriberClass = subscriberClass;
+            this.eventType = eventType;
+            this.slowCount = slowCount;
+            this.maxNanos = maxNanos;
+        }
+
+        /**
+         * @return The class of the subscriber
+         */
+        public Class<?> getSubscriberClass() {
+            return subscriberClass;
+        }
+
+        /**
+         * @return The event type the handler takes
+         */
+        public Class<?> getEventType() {
+            return eventType;
+        }
+
+        /**
+         * @return How many times the handler has been slower than the threshold
+         */
+        public long getSlowCount() {
+            return slowCount;
+        }
+
+        /**
+         * @return The longest time spent by the handler in nanoseconds
+         */
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return subscriberClass.getName() + ".onEvent(" + eventType.getName() + ") - slow: "
+                    + slowCount + " times, max: " + maxNanos / 1000 + "us";
+        }
+    }
+
+    /**
+     * Immutable copy of the metrics
+     */
+    public static class Snapshot {
+        private final List<EventStats> eventStats;
+        private final List<SlowSubscriber> slowSubscribers;
+
+        Snapshot(List<EventStats> eventStats, List<SlowSubscriber> slowSubscribers) {
+            this.eventStats = Collections.unmodifiableList(eventStats);
+            this.slowSubscribers = Collections.unmodifiableList(slowSubscribers);
+        }
+
+        /**
+         * @return Numbers of each posted event class sorted by total dispatch time from the longest
+         */
+        public List<EventStats> getEventStats() {
+            return eventStats;
+        }
+
+        /**
+         * @return Handlers slower than the threshold sorted by their longest time from the longest
+         */
+        public List<SlowSubscriber> getSlowSubscribers() {
+            return slowSubscribers;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("EventBus metrics:");
+            for (EventStats stats : eventStats) {
+                sb.append("\n  ").append(stats);
+            }
+            for (SlowSubscriber slow : slowSubscribers) {
+                sb.append("\n  Slow ").append(slow);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static class EventRecord {
+        final AtomicLong postCount = new AtomicLong();
+        final AtomicLong deliveryCount = new AtomicLong();
+        volatile int lastSubscriberCount;
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BOUNDS_MICROS.length + 1);
+    }
+
+    private static class HandlerKey {
+        final Class<?> subscriberClass;
+        final Class<?> eventType;
+
+        HandlerKey(Class<?> subscriberClass, Class<?> eventType) {
+            this.subscriberClass = subscriberClass;
+            this.eventType = eventType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HandlerKey)) {
+                return false;
+            }
+            HandlerKey that = (HandlerKey) o;
+            return subscriberClass == that.subscriberClass && eventType == that.eventType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * subscriberClass.hashCode() + eventType.hashCode();
+        }
+    }
+
+    private static class SlowRecord {
+        final AtomicLong slowCount = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+    }
+
+    private final long slowThresholdNanos;
+    private final ConcurrentMap<Class<?>, EventRecord> eventRecords = new ConcurrentHashMap<>();
+    private final ConcurrentMap<HandlerKey, SlowRecord> slowRecords = new ConcurrentHashMap<>();
+    private final List<SlowSubscriberListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Construct metrics
+     * @param slowThresholdMs Handlers taking longer than this to handle an event are flagged as
+     *                        slow, e.g. 16ms for handlers on the UI thread
+     */
+    public EventBusMetrics(long slowThresholdMs) {
+        this.slowThresholdNanos = slowThresholdMs * 1000000;
+    }
+
+    /**
+     * Add a listener called when a handler is slower than the threshold
+     * @param listener The listener
+     */
+    public void addSlowSubscriberListener(SlowSubscriberListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove the listener
+     * @param listener The listener
+     */
+    public void removeSlowSubscriberListener(SlowSubscriberListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Record the time spent by a handler. Called by event buses.
+     * @param subscriberClass The class of the subscriber
+     * @param eventType The event type the handler takes
+     * @param elapsedNanos Time spent by the handler in nanoseconds
+     */
+    public void recordDelivery(Class<?> subscriberClass, Class<?> eventType, long elapsedNanos) {
+        if (elapsedNanos < slowThresholdNanos) {
+            return;
+        }
+
+        HandlerKey key = new HandlerKey(subscriberClass, eventType);
+        SlowRecord record = slowRecords.get(key);
+        if (record == null) {
+            SlowRecord newRecord = new SlowRecord();
+            record = slowRecords.putIfAbsent(key, newRecord);
+            if (record == null) {
+                record = newRecord;
+            }
+        }
+        record.slowCount.incrementAndGet();
+        updateMax(record.maxNanos, elapsedNanos);
+
+        for (SlowSubscriberListener listener : listeners) {
+            listener.onSlowSubscriber(subscriberClass, eventType, elapsedNanos);
+        }
+    }
+
+    /**
+     * Record a post. Called by event buses.
+     * @param eventClass The class of the posted event
+     * @param subscriberCount Number of subscribers the event was delivered to
+     * @param elapsedNanos Time spent delivering the event to all subscribers in nanoseconds
+     */
+    public void recordPost(Class<?> eventClass, int subscriberCount, long elapsedNanos) {
+        EventRecord record = eventRecords.get(eventClass);
+        if (record == null) {
+            EventRecord newRecord = new EventRecord();
+            record = eventRecords.putIfAbsent(eventClass, newRecord);
+            if (record == null) {
+                record = newRecord;
+            }
+        }
+        record.postCount.incrementAndGet();
+        record.deliveryCount.addAndGet(subscriberCount);
+        record.lastSubscriberCount = subscriberCount;
+        record.totalNanos.addAndGet(elapsedNanos);
+        updateMax(record.maxNanos, elapsedNanos);
+
+        long micros = elapsedNanos / 1000;
+        int bucket = 0;
+        while (bucket < HISTOGRAM_BOUNDS_MICROS.length && micros >= HISTOGRAM_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        record.histogram.incrementAndGet(bucket);
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Clear all recorded numbers
+     */
+    public void reset() {
+        eventRecords.clear();
+        slowRecords.clear();
+    }
+
+    /**
+     * @return A copy of the numbers recorded so far
+     */
+    public Snapshot snapshot() {
+        List<EventStats> eventStats = new ArrayList<>();
+        for (Map.Entry<Class<?>, EventRecord> entry : eventRecords.entrySet()) {
+            EventRecord record = entry.getValue();
+            long[] histogram = new long[record.histogram.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = record.histogram.get(i);
+            }
+            eventStats.add(new EventStats(entry.getKey(), record.postCount.get(),
+                    record.deliveryCount.get(), record.lastSubscriberCount, record.totalNanos.get(),
+                    record.maxNanos.get(), histogram));
+        }
+        Collections.sort(eventStats, new Comparator<EventStats>() {
+            @Override
+            public int compare(EventStats lhs, EventStats rhs) {
+                return compareLongs(rhs.totalNanos, lhs.totalNanos);
+            }
+        });
+
+        List<SlowSubscriber> slowSubscribers = new ArrayList<>();
+        for (Map.Entry<HandlerKey, SlowRecord> entry : slowRecords.entrySet()) {
+            slowSubscribers.add(new SlowSubscriber(entry.getKey().subscriberClass,
+                    entry.getKey().eventType, entry.getValue().slowCount.get(),
+                    entry.getValue().maxNanos.get()));
+        }
+        Collections.sort(slowSubscribers, new Comparator<SlowSubscriber>() {
+            @Override
+            public int compare(SlowSubscriber lhs, SlowSubscriber rhs) {
+                return compareLongs(rhs.maxNanos, lhs.maxNanos);
+            }
+        });
+        return new Snapshot(eventStats, slowSubscribers);
+    }
+
+    private static int compareLongs(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus;
+
+/**
+ * Delivers events of one type to the handler method of subscribers
+ */
+public interface EventDispatcher {
+    /**
+     * Deliver the event to the subscriber
+     * @param subscriber The subscriber
+     * @param event The event
+     * @throws Exception Exception thrown by the handler method of the subscriber
+     */
+    void dispatch(Object subscriber, Object event) throws Exception;
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus;
+
+import java.util.Map;
+
+/**
+ * Dispatchers of all <b>onEvent</b> methods of a subscriber class calling the methods directly
+ * rather than by reflection. Indexes are generated by the android-mvc-compiler annotation
+ * processor into the same package as the subscriber class, named by the binary name of the class
+ * followed by {@link #CLASS_NAME_SUFFIX}. The event bus finds the index of a subscriber class by
+ * the name and falls back to reflection when the class is not indexed, e.g. when any of its
+ * handlers is private.
+ */
+public interface SubscriberIndex {
+    /**
+     * The suffix of the name of generated index classes
+     */
+    String CLASS_NAME_SUFFIX = "$$SubscriberIndex";
+
+    /**
+     * @return Dispatchers by the event types they handle
+     */
+    Map<Class<?>, EventDispatcher> getDispatchers();
+
+    /**
+     * @return Thread modes declared by {@link com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn}
+     * by the event types their handlers handle. Handlers not in the map are in
+     * {@link ThreadMode#POSTING}.
+     */
+    Map<Class<?>, ThreadMode> getThreadModes();
+}
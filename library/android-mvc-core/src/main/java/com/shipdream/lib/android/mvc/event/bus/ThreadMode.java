@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus;
+
+import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;
+
+/**
+ * Threads events are delivered on to a handler, declared by {@link DeliverOn} on its
+ * <b>onEvent</b> method
+ */
+public enum ThreadMode {
+    /**
+     * The thread posting the event. The default for handlers without {@link DeliverOn}.
+     */
+    POSTING,
+    /**
+     * The UI thread. Delivered straight away when posted on the UI thread.
+     */
+    UI,
+    /**
+     * A background lane shared by the handlers of the event bus in this mode. Events are delivered
+     * one by one in the order they are posted.
+     */
+    SERIAL,
+    /**
+     * Any thread of the background pool. Events may be delivered concurrently.
+     */
+    BACKGROUND
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus.annotation;
+
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the thread an <b>onEvent</b> method receives events on. Events to handlers without it
+ * are delivered on the thread posting them. Honored by the event bus qualified by
+ * {@link EventBusC}, so heavy handlers of controllers and managers don't block the posting
+ * thread, e.g.
+ * <pre>
+ * {@literal @}DeliverOn(ThreadMode.BACKGROUND)
+ * public void onEvent(SyncRequested event) {
+ *     ...
+ * }
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface DeliverOn {
+    /**
+     * @return The thread mode of the handler
+     */
+    ThreadMode value();
+}
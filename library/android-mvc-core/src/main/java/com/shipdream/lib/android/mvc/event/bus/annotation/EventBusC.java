@@ -28,7 +28,8 @@ import javax.inject.Qualifier;
  * Indicates the annotated event bus is for events to core components such as controllers, managers
  * or core services. To receive or send events to Android views use {@link EventBusV} to qualify the
  * injecting {@link EventBus}. Events through the event bus annotated by this annotation will be
- * received on the same thread as the caller who posts them.
+ * received on the same thread as the caller who posts them, unless the handler declares another
+ * thread by {@link DeliverOn}.
  */
 @Qualifier
 @Documented
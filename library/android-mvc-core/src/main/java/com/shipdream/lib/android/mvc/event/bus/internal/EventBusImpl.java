@@ -17,78 +17,313 @@
 package com.shipdream.lib.android.mvc.event.bus.internal;
 
 import com.shipdream.lib.android.mvc.event.bus.EventBus;
+import com.shipdream.lib.android.mvc.event.bus.EventBusMetrics;
+import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;
+import com.shipdream.lib.android.mvc.event.bus.SubscriberIndex;
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/**
+ * Event bus whose registrations are copied on write. {@link #register(Object)} and
+ * {@link #unregister(Object)} are safe to call from any thread, including from handlers while an
+ * event is being posted. {@link #post(Object)} reads an immutable snapshot of subscribers without
+ * locking, so a subscriber unregistered while an event is being delivered doesn't receive it
+ * unless it has already been delivered to it, and a subscriber registered meanwhile receives
+ * the events posted after the registration.
+ *
+ * <p>In weak subscriber mode, see {@link #setWeakSubscribers(boolean)}, subscribers are held by
+ * weak references so the ones not unregistered can still be garbage collected. Collected
+ * subscribers are purged on the next post or registration with a debug message logged.</p>
+ *
+ * <p>Events to handlers annotated by {@link DeliverOn} are handed to
+ * {@link #execute(ThreadMode, Object, Runnable)}, which delivers them on the posting thread unless
+ * overridden by subclasses owning threads.</p>
+ *
+ * <p>A subscriber can be paused by {@link #pause(Object)}, e.g. while its view is off screen.
+ * Events to a paused subscriber are held rather than delivered, conflated by
+ * {@link #heldEventKeyOf(Object)} so only the latest event of each kind is kept, and replayed
+ * once by {@link #resume(Object)}.</p>
+ */
 public class EventBusImpl implements EventBus {
-    Map<Class<?>, Map<Object, Method>> subscribers = new LinkedHashMap<>();
+    private static final Subscription[] NO_SUBSCRIPTIONS = new Subscription[0];
+
+    //Immutable snapshot of subscriptions by event types, replaced on every change
+    volatile Map<Class<?>, Map<Object, Subscription>> subscribers = Collections.emptyMap();
+    //Subscriptions of each posted event class and its super types built from the current
+    //snapshot. Always replaced after the snapshot so it is never older than the snapshot.
+    private volatile ConcurrentMap<Class<?>, Subscription[]> dispatchTable = new ConcurrentHashMap<>();
+    private final Object registrationLock = new Object();
+    private volatile EventBusMetrics metrics;
+    private volatile boolean weakSubscribers;
+    private final ReferenceQueue<Object> collectedSubscribers = new ReferenceQueue<>();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    //Dispatchers by event types of each subscriber class, shared by all event buses
+    private static final Map<Class<?>, Map<Class<?>, EventDispatcher>> dispatchersCache =
+            new ConcurrentHashMap<>();
+    //Thread modes other than POSTING by event types of each subscriber class
+    private static final Map<Class<?>, Map<Class<?>, ThreadMode>> threadModesCache =
+            new ConcurrentHashMap<>();
+    //Flattened type hierarchy of each event class, shared by all event buses
+    private static final Map<Class<?>, Class<?>[]> eventTypesCache = new ConcurrentHashMap<>();
+
+    /**
+     * Set the metrics recording posts of this event bus. Posts are not timed when no metrics is
+     * set, which is the default.
+     * @param metrics The metrics or null to stop recording
+     */
+    public void setMetrics(EventBusMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @return The metrics recording posts of this event bus or null if not recording
+     */
+    public EventBusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set whether subscribers registered afterwards are held by weak references. Subscribers
+     * registered already are not affected.
+     * @param weakSubscribers true to hold subscribers weakly
+     */
+    public void setWeakSubscribers(boolean weakSubscribers) {
+        this.weakSubscribers = weakSubscribers;
+    }
+
+    /**
+     * @return Whether subscribers registered afterwards are held by weak references
+     */
+    public boolean isWeakSubscribers() {
+        return weakSubscribers;
+    }
 
     public void register(Object subscriber) {
         if(subscriber == null) {
             throw new IllegalArgumentException("Subscriber registering to an event bus must not be NULL");
         }
 
-        Class<?> subscriberClass = subscriber.getClass();
+        purgeCollectedSubscribers();
+        Map<Class<?>, EventDispatcher> dispatchers = findDispatchers(subscriber.getClass());
+        Map<Class<?>, ThreadMode> threadModes = findThreadModes(subscriber.getClass());
+        WeakSubscriber weakSubscriber = new WeakSubscriber(subscriber,
+                weakSubscribers ? collectedSubscribers : null);
+        synchronized (registrationLock) {
+            Map<Class<?>, Map<Object, Subscription>> snapshot = null;
+            for (Map.Entry<Class<?>, EventDispatcher> entry : dispatchers.entrySet()) {
+                Map<Object, Subscription> subs = subscribers.get(entry.getKey());
+                if (subs != null && (subs.containsKey(subscriber) || subs.containsKey(weakSubscriber))) {
+                    //Already registered
+                    continue;
+                }
 
-        while (subscriberClass != null) {
-            String name = subscriberClass.getName();
-            if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")) {
-                // Ignore system classes
-                break;
+                if (snapshot == null) {
+                    snapshot = new LinkedHashMap<>(subscribers);
+                }
+                Map<Object, Subscription> newSubs = subs == null
+                        ? new LinkedHashMap<Object, Subscription>() : new LinkedHashMap<>(subs);
+                ThreadMode declared = threadModes.get(entry.getKey());
+                ThreadMode threadMode = threadModeOf(subscriber, entry.getKey(),
+                        declared == null ? ThreadMode.POSTING : declared);
+                if (weakSubscribers) {
+                    newSubs.put(weakSubscriber, new Subscription(weakSubscriber, entry.getKey(),
+                            entry.getValue(), threadMode));
+                } else {
+                    newSubs.put(subscriber, new Subscription(subscriber, entry.getKey(),
+                            entry.getValue(), threadMode));
+                }
+                snapshot.put(entry.getKey(), Collections.unmodifiableMap(newSubs));
+            }
+            if (snapshot != null) {
+                publish(snapshot);
             }
+        }
+    }
 
-            Method[] methods = subscriberClass.getDeclaredMethods();
-            for (Method method : methods) {
-                if (method.getName().equals("onEvent") && method.getParameterTypes().length == 1) {
-                    Class<?> eventType = method.getParameterTypes()[0];
+    public void unregister(Object subscriber) {
+        if(subscriber == null) {
+            throw new IllegalArgumentException("Subscriber unregistering to an event bus must not be NULL");
+        }
+
+        Map<Class<?>, EventDispatcher> dispatchers = findDispatchers(subscriber.getClass());
+        //Finds the subscriber if it's held weakly
+        WeakSubscriber weakSubscriber = new WeakSubscriber(subscriber, null);
+        synchronized (registrationLock) {
+            Map<Class<?>, Map<Object, Subscription>> snapshot = null;
+            for (Class<?> eventType : dispatchers.keySet()) {
+                Map<Object, Subscription> subs = subscribers.get(eventType);
 
-                    Map<Object, Method> subs = subscribers.get(eventType);
-                    if (subs == null) {
-                        subs = new LinkedHashMap<>();
-                        subscribers.put(eventType, subs);
+                Object key = null;
+                if (subs != null) {
+                    if (subs.containsKey(subscriber)) {
+                        key = subscriber;
+                    } else if (subs.containsKey(weakSubscriber)) {
+                        key = weakSubscriber;
+                    }
+                }
+                if(key != null) {
+                    if (snapshot == null) {
+                        snapshot = new LinkedHashMap<>(subscribers);
+                    }
+                    Map<Object, Subscription> newSubs = new LinkedHashMap<>(subs);
+                    newSubs.remove(key).cancel();
+                    if (newSubs.isEmpty()) {
+                        snapshot.remove(eventType);
+                    } else {
+                        snapshot.put(eventType, Collections.unmodifiableMap(newSubs));
                     }
+                }
+            }
+            if (snapshot != null) {
+                publish(snapshot);
+            }
+        }
+    }
+
+    /**
+     * Remove the subscriptions of weakly held subscribers which have been garbage collected
+     * without being unregistered. Cheap when none has been collected.
+     */
+    private void purgeCollectedSubscribers() {
+        Reference<?> collected = collectedSubscribers.poll();
+        if (collected == null) {
+            return;
+        }
+
+        synchronized (registrationLock) {
+            while (collected != null) {
+                logger.debug("Subscriber {} was garbage collected while still registered to the event bus. " +
+                        "Unregister it when it's no longer used.", ((WeakSubscriber) collected).subscriberClass.getName());
+                collected = collectedSubscribers.poll();
+            }
 
-                    subs.put(subscriber, method);
+            Map<Class<?>, Map<Object, Subscription>> snapshot = new LinkedHashMap<>();
+            for (Map.Entry<Class<?>, Map<Object, Subscription>> entry : subscribers.entrySet()) {
+                Map<Object, Subscription> newSubs = new LinkedHashMap<>();
+                for (Map.Entry<Object, Subscription> sub : entry.getValue().entrySet()) {
+                    if (sub.getValue().getSubscriber() == null) {
+                        sub.getValue().active = false;
+                    } else {
+                        newSubs.put(sub.getKey(), sub.getValue());
+                    }
+                }
+                if (!newSubs.isEmpty()) {
+                    snapshot.put(entry.getKey(), Collections.unmodifiableMap(newSubs));
                 }
             }
+            publish(snapshot);
+        }
+    }
 
-            subscriberClass = subscriberClass.getSuperclass();
+    private void publish(Map<Class<?>, Map<Object, Subscription>> snapshot) {
+        subscribers = Collections.unmodifiableMap(snapshot);
+        dispatchTable = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Find the dispatchers of the onEvent methods of the subscriber class. The generated
+     * {@link SubscriberIndex} of the class is used when present, otherwise the methods are found
+     * by reflection. The result of each class is only computed once.
+     * @param subscriberClass The class of subscribers
+     * @return Dispatchers by the event types they handle
+     */
+    static Map<Class<?>, EventDispatcher> findDispatchers(Class<?> subscriberClass) {
+        Map<Class<?>, EventDispatcher> dispatchers = dispatchersCache.get(subscriberClass);
+        if (dispatchers == null) {
+            Map<Class<?>, ThreadMode> threadModes;
+            SubscriberIndex index = findIndex(subscriberClass);
+            if (index != null) {
+                dispatchers = index.getDispatchers();
+                threadModes = index.getThreadModes();
+            } else {
+                dispatchers = new LinkedHashMap<>();
+                threadModes = new LinkedHashMap<>();
+                for (Map.Entry<Class<?>, Method> entry : findSubscriberMethods(subscriberClass).entrySet()) {
+                    dispatchers.put(entry.getKey(), new MethodDispatcher(entry.getValue()));
+                    DeliverOn deliverOn = entry.getValue().getAnnotation(DeliverOn.class);
+                    if (deliverOn != null && deliverOn.value() != ThreadMode.POSTING) {
+                        threadModes.put(entry.getKey(), deliverOn.value());
+                    }
+                }
+            }
+            //Thread modes are cached first so they are always found once dispatchers are cached
+            threadModesCache.put(subscriberClass, Collections.unmodifiableMap(threadModes));
+            dispatchers = Collections.unmodifiableMap(dispatchers);
+            dispatchersCache.put(subscriberClass, dispatchers);
         }
+        return dispatchers;
     }
 
-    public void unregister(Object subscriber) {
-        if(subscriber == null) {
-            throw new IllegalArgumentException("Subscriber unregistering to an event bus must not be NULL");
+    /**
+     * Find the thread modes declared by {@link DeliverOn} on the onEvent methods of the subscriber
+     * class. Found along with the dispatchers by {@link #findDispatchers(Class)}.
+     * @param subscriberClass The class of subscribers
+     * @return Thread modes other than {@link ThreadMode#POSTING} by the event types their
+     * handlers handle
+     */
+    static Map<Class<?>, ThreadMode> findThreadModes(Class<?> subscriberClass) {
+        findDispatchers(subscriberClass);
+        return threadModesCache.get(subscriberClass);
+    }
+
+    private static SubscriberIndex findIndex(Class<?> subscriberClass) {
+        try {
+            Class<?> indexClass = Class.forName(subscriberClass.getName()
+                    + SubscriberIndex.CLASS_NAME_SUFFIX, true, subscriberClass.getClassLoader());
+            return (SubscriberIndex) indexClass.newInstance();
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (InstantiationException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
         }
+    }
 
-        Class<?> subscriberClass = subscriber.getClass();
-        while (subscriberClass != null) {
-            String name = subscriberClass.getName();
+    /**
+     * Find the onEvent methods declared by the class and its super classes excluding system
+     * classes.
+     * @param subscriberClass The class of subscribers
+     * @return Methods by the event types they handle
+     */
+    static Map<Class<?>, Method> findSubscriberMethods(Class<?> subscriberClass) {
+        Map<Class<?>, Method> methods = new LinkedHashMap<>();
+        Class<?> clazz = subscriberClass;
+        while (clazz != null) {
+            String name = clazz.getName();
             if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.")) {
                 // Ignore system classes
                 break;
             }
 
-            Method[] methods = subscriberClass.getDeclaredMethods();
-            for (Method method : methods) {
+            for (Method method : clazz.getDeclaredMethods()) {
                 if (method.getName().equals("onEvent") && method.getParameterTypes().length == 1) {
-                    Class eventType = method.getParameterTypes()[0];
-                    Map<Object, Method> subs = subscribers.get(eventType);
-
-                    if(subs != null) {
-                        subs.remove(subscriber);
-                        if (subs.isEmpty()) {
-                            subscribers.remove(eventType);
-                        }
-                    }
+                    methods.put(method.getParameterTypes()[0], method);
                 }
             }
 
-            subscriberClass = subscriberClass.getSuperclass();
+            clazz = clazz.getSuperclass();
         }
+        return methods;
     }
 
     public void post(Object event) {
@@ -96,25 +331,337 @@ public class EventBusImpl implements EventBus {
             throw new IllegalArgumentException("Event2C bus can't post a NULL event");
         }
 
-        Map<Object, Method> subs = subscribers.get(event.getClass());
-        if(subs != null) {
-            for (Map.Entry<Object, Method> entry : subs.entrySet()) {
-                entry.getValue().setAccessible(true);
-                try {
-                    entry.getValue().invoke(entry.getKey(), event);
-                } catch (IllegalAccessException e) {
-                    //This should never happen since setAccessible has already opened the access
-                    throw new RuntimeException("Not able to post event - "
-                            + event.getClass().getName() + " due to IllegalAccessException: " + e.getMessage(), e);
-                } catch (InvocationTargetException e) {
-                    String msg = e.getMessage();
-                    if (msg == null || msg.isEmpty() && e.getCause() != null) {
-                        msg = e.getCause().getMessage();
-                    }
-                    throw new RuntimeException("Not able to post event - "
-                            + event.getClass().getName() + " due to error: " + msg, e);
+        purgeCollectedSubscribers();
+
+        //Read the table before the snapshot so the table is never newer than the snapshot
+        ConcurrentMap<Class<?>, Subscription[]> table = dispatchTable;
+        Subscription[] subscriptions = table.get(event.getClass());
+        if (subscriptions == null) {
+            subscriptions = findSubscriptions(event.getClass());
+            table.put(event.getClass(), subscriptions);
+        }
+
+        EventBusMetrics metrics = this.metrics;
+        long postStart = metrics == null ? 0 : System.nanoTime();
+        int delivered = 0;
+        for (Subscription subscription : subscriptions) {
+            Object subscriber = subscription.getSubscriber();
+            if (subscription.active && subscriber != null) {
+                dispatch(metrics, subscriber, subscription, event);
+                delivered++;
+            }
+        }
+        if (metrics != null) {
+            metrics.recordPost(event.getClass(), delivered, System.nanoTime() - postStart);
+        }
+    }
+
+    private void dispatch(EventBusMetrics metrics, Object subscriber, Subscription subscription,
+                          Object event) {
+        PausedDeliveries pausedDeliveries = subscription.pausedDeliveries;
+        if (pausedDeliveries != null && pausedDeliveries.hold(subscription, event)) {
+            return;
+        }
+
+        if (subscription.threadMode != ThreadMode.POSTING) {
+            execute(subscription.threadMode, subscriber, new Delivery(subscription, event));
+        } else if (metrics == null) {
+            deliver(subscriber, subscription, event);
+        } else {
+            deliverTimed(metrics, subscriber, subscription, event);
+        }
+    }
+
+    /**
+     * Pause the delivery of events to the subscriber. Events posted to it afterwards are held and
+     * conflated until {@link #resume(Object)} is called. Does nothing if the subscriber is not
+     * registered or already paused.
+     * @param subscriber The registered subscriber
+     */
+    public void pause(Object subscriber) {
+        synchronized (registrationLock) {
+            List<Subscription> subscriptions = findSubscriptionsOf(subscriber);
+            if (subscriptions.isEmpty() || subscriptions.get(0).pausedDeliveries != null) {
+                return;
+            }
+            PausedDeliveries pausedDeliveries = new PausedDeliveries();
+            for (Subscription subscription : subscriptions) {
+                subscription.pausedDeliveries = pausedDeliveries;
+            }
+        }
+    }
+
+    /**
+     * Resume the delivery of events to the subscriber paused by {@link #pause(Object)}. The latest
+     * event of each kind held while paused is delivered once, in the order the earliest event of
+     * each kind was posted.
+     * @param subscriber The paused subscriber
+     */
+    public void resume(Object subscriber) {
+        PausedDeliveries pausedDeliveries = null;
+        synchronized (registrationLock) {
+            for (Subscription subscription : findSubscriptionsOf(subscriber)) {
+                if (subscription.pausedDeliveries != null) {
+                    pausedDeliveries = subscription.pausedDeliveries;
+                    subscription.pausedDeliveries = null;
                 }
             }
         }
+        if (pausedDeliveries == null) {
+            return;
+        }
+
+        EventBusMetrics metrics = this.metrics;
+        for (HeldEvent held : pausedDeliveries.close()) {
+            Object heldSubscriber = held.subscription.getSubscriber();
+            if (held.subscription.active && heldSubscriber != null) {
+                Object event = held.latest == null
+                        ? held.earliest : mergeHeldEvents(held.key, held.earliest, held.latest);
+                dispatch(metrics, heldSubscriber, held.subscription, event);
+            }
+        }
+    }
+
+    /**
+     * @param subscriber The subscriber
+     * @return Whether the subscriber is paused by {@link #pause(Object)}
+     */
+    public boolean isPaused(Object subscriber) {
+        synchronized (registrationLock) {
+            List<Subscription> subscriptions = findSubscriptionsOf(subscriber);
+            return !subscriptions.isEmpty() && subscriptions.get(0).pausedDeliveries != null;
+        }
+    }
+
+    private List<Subscription> findSubscriptionsOf(Object subscriber) {
+        List<Subscription> found = new ArrayList<>();
+        WeakSubscriber weakSubscriber = new WeakSubscriber(subscriber, null);
+        for (Map<Object, Subscription> subs : subscribers.values()) {
+            Subscription subscription = subs.get(subscriber);
+            if (subscription == null) {
+                subscription = subs.get(weakSubscriber);
+            }
+            if (subscription != null) {
+                found.add(subscription);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Key of the kind of events held for a paused subscriber. Only the latest event of each
+     * kind is replayed on resume.
+     * @param event The event posted while the subscriber is paused
+     * @return The class of the event by default
+     */
+    protected Object heldEventKeyOf(Object event) {
+        return event.getClass();
+    }
+
+    /**
+     * Merge the events of the same kind held for a paused subscriber
+     * @param key The key of the kind by {@link #heldEventKeyOf(Object)}
+     * @param earliest The earliest event held
+     * @param latest The latest event held
+     * @return The event to replay. The latest by default.
+     */
+    protected Object mergeHeldEvents(Object key, Object earliest, Object latest) {
+        return latest;
+    }
+
+    private static class HeldEvent {
+        final Subscription subscription;
+        final Object key;
+        final Object earliest;
+        Object latest;
+
+        HeldEvent(Subscription subscription, Object key, Object earliest) {
+            this.subscription = subscription;
+            this.key = key;
+            this.earliest = earliest;
+        }
+    }
+
+    private static class HeldEventKey {
+        final Subscription subscription;
+        final Object key;
+
+        HeldEventKey(Subscription subscription, Object key) {
+            this.subscription = subscription;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof HeldEventKey)) {
+                return false;
+            }
+            HeldEventKey that = (HeldEventKey) o;
+            return subscription == that.subscription && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * subscription.hashCode() + key.hashCode();
+        }
+    }
+
+    /**
+     * Events held for a paused subscriber, shared by all its subscriptions
+     */
+    class PausedDeliveries {
+        private final Map<HeldEventKey, HeldEvent> heldEvents = new LinkedHashMap<>();
+        private boolean closed;
+
+        /**
+         * @return false if the subscriber has been resumed so the event should be delivered
+         */
+        synchronized boolean hold(Subscription subscription, Object event) {
+            if (closed) {
+                return false;
+            }
+            Object key = heldEventKeyOf(event);
+            HeldEventKey heldEventKey = new HeldEventKey(subscription, key);
+            HeldEvent held = heldEvents.get(heldEventKey);
+            if (held == null) {
+                heldEvents.put(heldEventKey, new HeldEvent(subscription, key, event));
+            } else {
+                held.latest = event;
+            }
+            return true;
+        }
+
+        synchronized List<HeldEvent> close() {
+            closed = true;
+            return new ArrayList<>(heldEvents.values());
+        }
+    }
+
+    /**
+     * Decide the thread mode of a handler on registration. Subclasses override it to deliver
+     * events to some subscribers on other threads than they declare.
+     * @param subscriber The subscriber being registered
+     * @param eventType The event type the handler handles
+     * @param declared The thread mode declared by {@link DeliverOn}, {@link ThreadMode#POSTING}
+     *                 when not declared
+     * @return The declared thread mode by default
+     */
+    protected ThreadMode threadModeOf(Object subscriber, Class<?> eventType, ThreadMode declared) {
+        return declared;
+    }
+
+    /**
+     * Run the delivery of an event to a handler whose thread mode is not
+     * {@link ThreadMode#POSTING}. This event bus owns no threads so it runs the delivery on the
+     * posting thread straight away. Subclasses override it to run deliveries on the threads of
+     * the modes.
+     * @param threadMode The thread mode of the handler
+     * @param subscriber The subscriber of the handler
+     * @param delivery The delivery, skipping the handler if it's unregistered by the time it runs
+     */
+    protected void execute(ThreadMode threadMode, Object subscriber, Runnable delivery) {
+        delivery.run();
+    }
+
+    private class Delivery implements Runnable {
+        private final Subscription subscription;
+        private final Object event;
+
+        Delivery(Subscription subscription, Object event) {
+            this.subscription = subscription;
+            this.event = event;
+        }
+
+        @Override
+        public void run() {
+            Object subscriber = subscription.getSubscriber();
+            if (!subscription.active || subscriber == null) {
+                return;
+            }
+            EventBusMetrics metrics = EventBusImpl.this.metrics;
+            if (metrics == null) {
+                deliver(subscriber, subscription, event);
+            } else {
+                deliverTimed(metrics, subscriber, subscription, event);
+            }
+        }
+    }
+
+    private static void deliverTimed(EventBusMetrics metrics, Object subscriber,
+                                     Subscription subscription, Object event) {
+        long start = System.nanoTime();
+        deliver(subscriber, subscription, event);
+        metrics.recordDelivery(subscriber.getClass(), subscription.eventType, System.nanoTime() - start);
+    }
+
+    private static void deliver(Object subscriber, Subscription subscription, Object event) {
+        try {
+            subscription.dispatcher.dispatch(subscriber, event);
+        } catch (IllegalAccessException e) {
+            //This should never happen since setAccessible has already opened the access
+            throw new RuntimeException("Not able to post event - "
+                    + event.getClass().getName() + " due to IllegalAccessException: " + e.getMessage(), e);
+        } catch (InvocationTargetException e) {
+            String msg = e.getMessage();
+            if (msg == null || msg.isEmpty() && e.getCause() != null) {
+                msg = e.getCause().getMessage();
+            }
+            throw new RuntimeException("Not able to post event - "
+                    + event.getClass().getName() + " due to error: " + msg, e);
+        } catch (RuntimeException e) {
+            //Thrown by handlers called directly by generated indexes
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Not able to post event - "
+                    + event.getClass().getName() + " due to error: " + e.getMessage(), e);
+        }
+    }
+
+    private Subscription[] findSubscriptions(Class<?> eventClass) {
+        Map<Class<?>, Map<Object, Subscription>> snapshot = subscribers;
+        List<Subscription> found = null;
+        for (Class<?> eventType : findEventTypes(eventClass)) {
+            Map<Object, Subscription> subs = snapshot.get(eventType);
+            if (subs != null) {
+                if (found == null) {
+                    found = new ArrayList<>();
+                }
+                found.addAll(subs.values());
+            }
+        }
+        return found == null ? NO_SUBSCRIPTIONS : found.toArray(new Subscription[found.size()]);
+    }
+
+    /**
+     * Flatten the type hierarchy of the event class. The result of each class is only computed
+     * once.
+     * @param eventClass The class of events
+     * @return The event class followed by its super classes and then all interfaces it implements
+     */
+    static Class<?>[] findEventTypes(Class<?> eventClass) {
+        Class<?>[] types = eventTypesCache.get(eventClass);
+        if (types == null) {
+            Set<Class<?>> found = new LinkedHashSet<>();
+            Class<?> clazz = eventClass;
+            while (clazz != null) {
+                found.add(clazz);
+                clazz = clazz.getSuperclass();
+            }
+
+            List<Class<?>> interfaces = new ArrayList<>();
+            for (Class<?> type : found) {
+                interfaces.addAll(Arrays.asList(type.getInterfaces()));
+            }
+            for (int i = 0; i < interfaces.size(); i++) {
+                Class<?> type = interfaces.get(i);
+                if (found.add(type)) {
+                    interfaces.addAll(Arrays.asList(type.getInterfaces()));
+                }
+            }
+
+            types = found.toArray(new Class<?>[found.size()]);
+            eventTypesCache.put(eventClass, types);
+        }
+        return types;
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus.internal;
+
+import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;
+
+import java.lang.reflect.Method;
+
+/**
+ * Delivers events by reflection to subscribers whose classes are not indexed
+ */
+class MethodDispatcher implements EventDispatcher {
+    //Argument arrays reused by each thread instead of allocating one per invocation. Reentrant
+    //posts are safe since the arguments are read before the handler is entered.
+    private static final ThreadLocal<Object[]> arguments = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return new Object[1];
+        }
+    };
+
+    private final Method method;
+
+    MethodDispatcher(Method method) {
+        this.method = method;
+        method.setAccessible(true);
+    }
+
+    Method getMethod() {
+        return method;
+    }
+
+    @Override
+    public void dispatch(Object subscriber, Object event) throws Exception {
+        Object[] args = arguments.get();
+        args[0] = event;
+        try {
+            method.invoke(subscriber, args);
+        } finally {
+            //Don't hold the event after delivery
+            args[0] = null;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus.internal;
+
+import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+
+/**
+ * A subscriber registered to an event bus for one event type
+ */
+class Subscription {
+    //Null when the subscriber is held weakly
+    private final Object subscriber;
+    private final WeakSubscriber weakSubscriber;
+    final Class<?> eventType;
+    final EventDispatcher dispatcher;
+    final ThreadMode threadMode;
+    //Cleared on unregistration so posts iterating older snapshots skip it
+    volatile boolean active = true;
+    //Set while the subscriber is paused to hold the events to it
+    volatile EventBusImpl.PausedDeliveries pausedDeliveries;
+
+    Subscription(Object subscriber, Class<?> eventType, EventDispatcher dispatcher,
+                 ThreadMode threadMode) {
+        this.subscriber = subscriber;
+        this.weakSubscriber = null;
+        this.eventType = eventType;
+        this.dispatcher = dispatcher;
+        this.threadMode = threadMode;
+    }
+
+    Subscription(WeakSubscriber weakSubscriber, Class<?> eventType, EventDispatcher dispatcher,
+                 ThreadMode threadMode) {
+        this.subscriber = null;
+        this.weakSubscriber = weakSubscriber;
+        this.eventType = eventType;
+        this.dispatcher = dispatcher;
+        this.threadMode = threadMode;
+    }
+
+    /**
+     * Deactivate the subscription on unregistration. The weak reference is cleared as well so the
+     * subscriber isn't reported as collected while registered.
+     */
+    void cancel() {
+        active = false;
+        if (weakSubscriber != null) {
+            weakSubscriber.clear();
+        }
+    }
+
+    /**
+     * @return The subscriber or null if it's held weakly and has been garbage collected
+     */
+    Object getSubscriber() {
+        return weakSubscriber == null ? subscriber : weakSubscriber.get();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus.internal;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Weak reference to a subscriber registered to an event bus in weak subscriber mode. It's also
+ * the key of the subscriber in the subscription maps so it equals to the reference of any
+ * subscriber equal to the referent.
+ */
+class WeakSubscriber extends WeakReference<Object> {
+    final Class<?> subscriberClass;
+    private final int hash;
+
+    WeakSubscriber(Object subscriber, ReferenceQueue<Object> queue) {
+        super(subscriber, queue);
+        this.subscriberClass = subscriber.getClass();
+        this.hash = subscriber.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof WeakSubscriber)) {
+            return false;
+        }
+        Object subscriber = get();
+        return subscriber != null && subscriber.equals(((WeakSubscriber) o).get());
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestCoreEventBus {
+    private boolean onUiThread;
+    private List<Runnable> uiPosted;
+    private List<Runnable> backgroundPosted;
+    private CoreEventBus eventBus;
+
+    static class Subscriber {
+        List<String> events = new ArrayList<>();
+
+        public void onEvent(String event) {
+            events.add("posting:" + event);
+        }
+
+        @DeliverOn(ThreadMode.UI)
+        public void onEvent(Integer event) {
+            events.add("ui:" + event);
+        }
+
+        @DeliverOn(ThreadMode.BACKGROUND)
+        public void onEvent(Long event) {
+            events.add("background:" + event);
+        }
+
+        @DeliverOn(ThreadMode.SERIAL)
+        public void onEvent(Double event) {
+            events.add("serial:" + event);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        uiPosted = new ArrayList<>();
+        backgroundPosted = new ArrayList<>();
+        MvcGraph graph = new MvcGraph();
+        graph.uiThreadRunner = new UiThreadRunner() {
+            @Override
+            public boolean isOnUiThread() {
+                return onUiThread;
+            }
+
+            @Override
+            public void post(Runnable runnable) {
+                uiPosted.add(runnable);
+            }
+
+            @Override
+            public void postDelayed(Runnable runnable, long delayMs) {
+                uiPosted.add(runnable);
+            }
+        };
+        eventBus = new CoreEventBus(graph, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                backgroundPosted.add(command);
+            }
+        });
+    }
+
+    private static void runAll(List<Runnable> runnables) {
+        while (!runnables.isEmpty()) {
+            runnables.remove(0).run();
+        }
+    }
+
+    @Test
+    public void should_deliver_on_posting_thread_without_declared_thread_mode() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post("a");
+
+        assertEquals(Arrays.asList("posting:a"), subscriber.events);
+        assertEquals(0, uiPosted.size());
+        assertEquals(0, backgroundPosted.size());
+    }
+
+    @Test
+    public void should_post_ui_handlers_to_ui_thread_from_other_threads() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post(1);
+        assertEquals(0, subscriber.events.size());
+        assertEquals(1, uiPosted.size());
+
+        runAll(uiPosted);
+        assertEquals(Arrays.asList("ui:1"), subscriber.events);
+    }
+
+    @Test
+    public void should_deliver_ui_handlers_straight_away_on_ui_thread() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        onUiThread = true;
+        eventBus.post(1);
+
+        assertEquals(Arrays.asList("ui:1"), subscriber.events);
+        assertEquals(0, uiPosted.size());
+    }
+
+    @Test
+    public void should_run_background_handlers_on_background_executor() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        onUiThread = true;
+        eventBus.post(1L);
+        eventBus.post(2L);
+        assertEquals(0, subscriber.events.size());
+        assertEquals(2, backgroundPosted.size());
+
+        runAll(backgroundPosted);
+        assertEquals(Arrays.asList("background:1", "background:2"), subscriber.events);
+    }
+
+    @Test
+    public void should_run_serial_handlers_one_by_one_in_order() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post(1.0);
+        eventBus.post(2.0);
+        eventBus.post(3.0);
+        //Only one delivery of the serial lane is handed to the pool at a time
+        assertEquals(1, backgroundPosted.size());
+
+        runAll(backgroundPosted);
+        assertEquals(Arrays.asList("serial:1.0", "serial:2.0", "serial:3.0"), subscriber.events);
+    }
+
+    @Test
+    public void should_skip_pending_deliveries_to_unregistered_subscribers() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post(1L);
+        eventBus.unregister(subscriber);
+        runAll(backgroundPosted);
+
+        assertEquals(0, subscriber.events.size());
+    }
+
+    static class ActorManager extends Manager {
+        List<String> events = new ArrayList<>();
+
+        @Override
+        protected boolean isActor() {
+            return true;
+        }
+
+        @Override
+        public Class modelType() {
+            return null;
+        }
+
+        public void onEvent(String event) {
+            events.add("lane:" + event);
+        }
+
+        @DeliverOn(ThreadMode.UI)
+        public void onEvent(Integer event) {
+            events.add("ui:" + event);
+        }
+    }
+
+    @Test
+    public void should_deliver_events_to_actors_on_their_own_lanes() {
+        ActorManager actor1 = new ActorManager();
+        ActorManager actor2 = new ActorManager();
+        eventBus.register(actor1);
+        eventBus.register(actor2);
+
+        onUiThread = true;
+        eventBus.post("a");
+        eventBus.post("b");
+        assertEquals(0, actor1.events.size());
+        //One delivery in flight per lane
+        assertEquals(2, backgroundPosted.size());
+
+        runAll(backgroundPosted);
+        assertEquals(Arrays.asList("lane:a", "lane:b"), actor1.events);
+        assertEquals(Arrays.asList("lane:a", "lane:b"), actor2.events);
+
+        //Declared thread modes are still honored
+        eventBus.post(1);
+        assertEquals(Arrays.asList("lane:a", "lane:b", "ui:1"), actor1.events);
+    }
+
+    @Test
+    public void should_run_actions_on_lane_of_actor() {
+        ActorManager actor = new ActorManager();
+        final List<String> actions = new ArrayList<>();
+        Runnable action = new Runnable() {
+            @Override
+            public void run() {
+                actions.add("run");
+            }
+        };
+
+        //Runs straight away without a lane
+        actor.runOnLane(action);
+        assertEquals(1, actions.size());
+
+        actor.setLane(eventBus.laneOf(actor));
+        actor.runOnLane(action);
+        assertEquals(1, actions.size());
+        eventBus.register(actor);
+        eventBus.post("a");
+        //Queued behind the action on the same lane
+        assertEquals(1, backgroundPosted.size());
+
+        runAll(backgroundPosted);
+        assertEquals(2, actions.size());
+        assertEquals(Arrays.asList("lane:a"), actor.events);
+    }
+
+    public static class Range {
+        int from;
+        int to;
+    }
+
+    static class RangeController extends Controller<Range, UiView> {
+        @Override
+        protected boolean isActor() {
+            return true;
+        }
+
+        @Override
+        public Class<Range> modelType() {
+            return Range.class;
+        }
+    }
+
+    @Test
+    public void should_save_and_restore_model_of_actor_after_mutation_in_flight() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final RangeController controller = new RangeController();
+            controller.bindModel(new Range());
+            controller.setLane(new SerialExecutor(executor));
+
+            final CountDownLatch mutating = new CountDownLatch(1);
+            final CountDownLatch mutationMayFinish = new CountDownLatch(1);
+            controller.runOnLane(new Runnable() {
+                @Override
+                public void run() {
+                    controller.getModel().from = 1;
+                    mutating.countDown();
+                    try {
+                        mutationMayFinish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    controller.getModel().to = 1;
+                }
+            });
+            assertTrue(mutating.await(5, TimeUnit.SECONDS));
+
+            final Range[] saved = new Range[1];
+            final Range restored = new Range();
+            restored.from = 5;
+            restored.to = 5;
+            Thread ui = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    controller.runBetweenLaneTasks(new Runnable() {
+                        @Override
+                        public void run() {
+                            Range copy = new Range();
+                            copy.from = controller.getModel().from;
+                            copy.to = controller.getModel().to;
+                            saved[0] = copy;
+                        }
+                    });
+                    controller.runBetweenLaneTasks(new Runnable() {
+                        @Override
+                        public void run() {
+                            controller.restoreModel(restored);
+                        }
+                    });
+                }
+            });
+            ui.start();
+
+            //Saving waits for the mutation in flight
+            ui.join(100);
+            assertTrue(ui.isAlive());
+            assertNull(saved[0]);
+
+            mutationMayFinish.countDown();
+            ui.join(5000);
+            assertFalse(ui.isAlive());
+
+            assertEquals(1, saved[0].from);
+            assertEquals(1, saved[0].to);
+            assertTrue(controller.getModel() == restored);
+            assertEquals(5, controller.getModel().to);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_run_between_lane_tasks_straight_away_on_lane_of_actor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final ActorManager actor = new ActorManager();
+            actor.setLane(new SerialExecutor(executor));
+            final CountDownLatch done = new CountDownLatch(1);
+            actor.runOnLane(new Runnable() {
+                @Override
+                public void run() {
+                    //Would deadlock if queued behind itself
+                    actor.runBetweenLaneTasks(new Runnable() {
+                        @Override
+                        public void run() {
+                            done.countDown();
+                        }
+                    });
+                }
+            });
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void should_not_wait_for_running_lane_task_longer_than_the_limit() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch mayFinish = new CountDownLatch(1);
+        try {
+            final ActorManager actor = new ActorManager();
+            actor.setLane(new SerialExecutor(executor));
+            final CountDownLatch running = new CountDownLatch(1);
+            actor.runOnLane(new Runnable() {
+                @Override
+                public void run() {
+                    running.countDown();
+                    try {
+                        mayFinish.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+
+            //The running task outlives the limit, so the action runs without waiting further
+            final boolean[] ran = new boolean[1];
+            long start = System.currentTimeMillis();
+            actor.runBetweenLaneTasks(new Runnable() {
+                @Override
+                public void run() {
+                    ran[0] = true;
+                }
+            });
+            long elapsed = System.currentTimeMillis() - start;
+            assertTrue(ran[0]);
+            assertTrue(elapsed >= Bean.LANE_WAIT_MILLIS - 50);
+            assertTrue(elapsed < Bean.LANE_WAIT_MILLIS + 2000);
+        } finally {
+            mayFinish.countDown();
+            executor.shutdownNow();
+        }
+    }
+}
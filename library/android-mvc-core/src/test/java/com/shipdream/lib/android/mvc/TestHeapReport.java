@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.poke.Provides;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TestHeapReport extends BaseTest {
+    static class Shared {
+        byte[] data = new byte[512];
+    }
+
+    static class Big {
+        byte[] data = new byte[10000];
+        Shared shared;
+        Small small;
+    }
+
+    static class Small {
+        byte[] data = new byte[100];
+        Shared shared;
+    }
+
+    static class View {
+        @Inject
+        Big big;
+
+        @Inject
+        Small small;
+    }
+
+    @Test
+    public void should_estimate_retained_heap_of_cached_instances() throws Exception {
+        final Shared shared = new Shared();
+        MvcComponent component = new MvcComponent("HeapComponent");
+        component.register(new Object() {
+            @Provides
+            public Big big() {
+                Big big = new Big();
+                big.shared = shared;
+                return big;
+            }
+
+            @Provides
+            public Small small() {
+                Small small = new Small();
+                small.shared = shared;
+                return small;
+            }
+        });
+        graph.getRootComponent().attach(component);
+
+        View view = new View();
+        graph.inject(view);
+        //Big holds Small which is a cached instance of its own
+        view.big.small = view.small;
+
+        HeapReport report = graph.estimateRetainedHeap();
+
+        HeapReport.Entry big = find(report.getEntries(), Big.class);
+        HeapReport.Entry small = find(report.getEntries(), Small.class);
+        assertEquals("HeapComponent", big.getComponentName());
+        assertFalse(big.isTruncated());
+
+        //24 bytes of Big plus 10016 of its array, not counting Small or Shared
+        assertEquals(24, big.getShallowSize());
+        assertEquals(24 + 10016, big.getRetainedSize());
+        assertEquals(2, big.getObjectCount());
+        assertEquals(24 + 120, small.getRetainedSize());
+
+        //Shared and its array are counted once
+        assertEquals(16 + 528, report.getSharedSize());
+        assertEquals(2, report.getSharedObjectCount());
+
+        List<HeapReport.Entry> entries = report.getEntries();
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i - 1).getRetainedSize() >= entries.get(i).getRetainedSize());
+        }
+        assertEquals(big, entries.get(0));
+
+        assertEquals("HeapComponent", report.getComponentSizes().keySet().iterator().next());
+        assertEquals(big.getRetainedSize() + small.getRetainedSize(),
+                (long) report.getComponentSizes().get("HeapComponent"));
+    }
+
+    static class Cache {
+        Map<String, byte[]> entries = new HashMap<>();
+        List<byte[]> history = new ArrayList<>();
+        WeakReference<byte[]> weak;
+    }
+
+    static class CacheView {
+        @Inject
+        Cache cache;
+    }
+
+    @Test
+    public void should_count_heap_held_by_collections_and_skip_weakly_held_objects() throws Exception {
+        //Held strongly by the provider so the weak reference isn't cleared during the test
+        final byte[] weaklyHeld = new byte[200000];
+        MvcComponent component = new MvcComponent("CacheComponent");
+        component.register(new Object() {
+            @Provides
+            public Cache cache() {
+                Cache cache = new Cache();
+                cache.entries.put("a", new byte[100000]);
+                cache.history.add(new byte[50000]);
+                cache.weak = new WeakReference<>(weaklyHeld);
+                return cache;
+            }
+        });
+        graph.getRootComponent().attach(component);
+
+        CacheView view = new CacheView();
+        graph.inject(view);
+
+        HeapReport report = graph.estimateRetainedHeap();
+
+        long retained = find(report.getEntries(), Cache.class).getRetainedSize();
+        assertTrue(retained >= 100016 + 50016);
+        assertTrue(retained < 200000);
+    }
+
+    private static HeapReport.Entry find(List<HeapReport.Entry> entries, Class type) {
+        for (HeapReport.Entry entry : entries) {
+            if (entry.getTypeName().equals(type.getName())) {
+                return entry;
+            }
+        }
+        throw new AssertionError("No entry of " + type.getName());
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.android.mvc.event.bus.EventBus;
+import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
+import com.shipdream.lib.poke.Provides;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.inject.Inject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestLeakDetector extends BaseTest {
+    static class Event {
+    }
+
+    static class View {
+        @Inject
+        @EventBusV
+        EventBus eventBus;
+
+        void onEvent(Event event) {
+        }
+    }
+
+    static class Service extends Bean {
+        @Override
+        public Class modelType() {
+            return null;
+        }
+    }
+
+    //Static fields are not walked to find the path
+    private static final List<Service> heldServices = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        heldServices.clear();
+    }
+
+    private void injectAndRelease(boolean leaveRegistered) {
+        View view = new View();
+        graph.inject(view);
+        view.eventBus.register(view);
+        if (!leaveRegistered) {
+            view.eventBus.unregister(view);
+        }
+        graph.release(view);
+    }
+
+    @Test
+    public void should_not_report_released_target_collected() throws Exception {
+        LeakDetector detector = new LeakDetector(0, 0);
+        graph.setLeakDetector(detector);
+
+        injectAndRelease(false);
+
+        assertTrue(leaksOf(View.class, graph.checkLeaks()).isEmpty());
+    }
+
+    @Test
+    public void should_report_released_target_still_subscribed_to_event_bus() throws Exception {
+        LeakDetector detector = new LeakDetector(0, 0);
+        LeakDetector.Listener listener = mock(LeakDetector.Listener.class);
+        detector.addListener(listener);
+        graph.setLeakDetector(detector);
+
+        injectAndRelease(true);
+
+        List<LeakDetector.Leak> leaks = leaksOf(View.class, graph.checkLeaks());
+        assertEquals(1, leaks.size());
+        LeakDetector.Leak leak = leaks.get(0);
+        assertEquals(View.class.getName(), leak.getTypeName());
+        assertEquals("released", leak.getReason());
+        assertTrue(leak.getPath().contains("EventBusImpl.subscribers"));
+        verify(listener, times(1)).onLeakDetected(leak);
+
+        //Reported only once
+        assertTrue(leaksOf(View.class, graph.checkLeaks()).isEmpty());
+    }
+
+    @Test
+    public void should_not_report_before_retain_timeout() throws Exception {
+        LeakDetector detector = new LeakDetector(60000, 0);
+        graph.setLeakDetector(detector);
+
+        injectAndRelease(true);
+
+        assertTrue(graph.checkLeaks().isEmpty());
+        assertTrue(detector.getWatchedCount() > 0);
+    }
+
+    @Test
+    public void should_report_disposed_bean_held_outside_of_graph() throws Exception {
+        graph.getRootComponent().register(new Object() {
+            @Provides
+            public Service service() {
+                Service service = new Service();
+                heldServices.add(service);
+                return service;
+            }
+        });
+        graph.setLeakDetector(new LeakDetector(0, 0));
+
+        class Consumer {
+            @Inject
+            Service service;
+        }
+        Consumer consumer = new Consumer();
+        graph.inject(consumer);
+        graph.release(consumer);
+        consumer = null;
+
+        List<LeakDetector.Leak> leaks = leaksOf(Service.class, graph.checkLeaks());
+        assertEquals(1, leaks.size());
+        assertEquals("disposed", leaks.get(0).getReason());
+        assertTrue(leaks.get(0).getPath().isEmpty());
+    }
+
+    @Test
+    public void should_check_on_executor_when_releasing_once_interval_elapsed() throws Exception {
+        final List<Runnable> scheduled = new ArrayList<>();
+        LeakDetector detector = new LeakDetector(0, 1);
+        detector.setExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                scheduled.add(command);
+            }
+        });
+        LeakDetector.Listener listener = mock(LeakDetector.Listener.class);
+        detector.addListener(listener);
+        graph.setLeakDetector(detector);
+
+        injectAndRelease(true);
+        Thread.sleep(5);
+        injectAndRelease(false);
+        Thread.sleep(5);
+        injectAndRelease(false);
+
+        //Not checked on the releasing thread and only one check is scheduled at a time
+        assertEquals(1, scheduled.size());
+        verify(listener, never()).onLeakDetected(any(LeakDetector.Leak.class));
+
+        scheduled.get(0).run();
+
+        ArgumentCaptor<LeakDetector.Leak> leak = ArgumentCaptor.forClass(LeakDetector.Leak.class);
+        verify(listener, atLeastOnce()).onLeakDetected(leak.capture());
+        assertEquals(1, leaksOf(View.class, leak.getAllValues()).size());
+    }
+
+    private static List<LeakDetector.Leak> leaksOf(Class type, List<LeakDetector.Leak> leaks) {
+        List<LeakDetector.Leak> found = new ArrayList<>();
+        for (LeakDetector.Leak leak : leaks) {
+            if (leak.getTypeName().equals(type.getName())) {
+                found.add(leak);
+            }
+        }
+        return found;
+    }
+}
@@ -18,6 +18,7 @@ package com.shipdream.lib.android.mvc;
 
 import com.shipdream.lib.android.mvc.event.bus.EventBus;
 import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
+import com.shipdream.lib.poke.Async;
 
 import org.junit.After;
 import org.junit.Before;
@@ -25,10 +26,18 @@ import org.junit.Test;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -105,5 +114,43 @@ public class TestMvc extends BaseTest{
             }
         });
     }
-}
 
+    public static class Database {
+    }
+
+    static class DatabaseHolder {
+        @Inject
+        Async<Database> database;
+    }
+
+    @Test
+    public void tasks_waiting_for_async_instances_should_not_starve_their_creation() throws Exception {
+        Mvc.graph().inject(this);
+        assertTrue(executorService instanceof PriorityScheduler);
+        int threadCount = ((PriorityScheduler) executorService).getThreadCount();
+
+        //Occupy all threads of the scheduler with tasks waiting for async instances
+        final CountDownLatch allRunning = new CountDownLatch(threadCount);
+        List<Future<Database>> futures = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            futures.add(executorService.submit(new Callable<Database>() {
+                @Override
+                public Database call() throws Exception {
+                    allRunning.countDown();
+                    allRunning.await();
+                    DatabaseHolder holder = new DatabaseHolder();
+                    Mvc.graph().inject(holder);
+                    try {
+                        return holder.database.get(5, TimeUnit.SECONDS);
+                    } finally {
+                        Mvc.graph().release(holder);
+                    }
+                }
+            }));
+        }
+
+        for (Future<Database> future : futures) {
+            assertNotNull(future.get(10, TimeUnit.SECONDS));
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.shipdream.lib.android.mvc;
 import com.shipdream.lib.android.mvc.inject.test.Phone;
 import com.shipdream.lib.android.mvc.inject.test.Robot;
 import com.shipdream.lib.android.mvc.inject.test.Smart;
+import com.shipdream.lib.poke.Graph;
 import com.shipdream.lib.poke.Provides;
 
 import org.junit.Assert;
@@ -103,4 +104,149 @@ public class TestMvcComponent extends BaseTest {
         //Because the component providing car instances doesn't use a scope cache
         Assert.assertTrue(tourist3.car != tourist4.car);
     }
+
+    static class Screen1 {
+    }
+
+    static class Screen2 {
+    }
+
+    static class Screen3 {
+    }
+
+    static class ClockedComponent extends MvcComponent {
+        long time = 1000;
+
+        ClockedComponent() {
+            super("Clocked");
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+
+    @Test
+    public void should_evict_auto_registered_providers_idle_longer_than_timeout() throws Exception {
+        ClockedComponent component = new ClockedComponent();
+        component.setAutoProviderIdleTimeout(500);
+
+        component.findProvider(Screen1.class, null).retain();
+        component.findProvider(Screen2.class, null);
+        Assert.assertEquals(2, component.getStats().getAutoProviderCount());
+
+        component.time += 499;
+        Assert.assertEquals(0, component.evictIdleProviders());
+
+        component.time += 1;
+        Assert.assertEquals(1, component.evictIdleProviders());
+        Assert.assertEquals(1, component.getStats().getAutoProviderCount());
+        Assert.assertEquals(1, component.getStats().getEvictedCount());
+
+        //Referenced provider is kept and starts idling once released
+        component.findProvider(Screen1.class, null).release();
+        component.evictIdleProviders();
+        component.time += 500;
+        Assert.assertEquals(1, component.evictIdleProviders());
+        Assert.assertEquals(0, component.getStats().getProviderCount());
+        Assert.assertEquals(2, component.getStats().getPeakProviderCount());
+        Assert.assertEquals(4, component.getStatsHistory().size());
+    }
+
+    @Test
+    public void should_evict_least_recently_resolved_idle_providers_over_limit() throws Exception {
+        ClockedComponent component = new ClockedComponent();
+        component.setMaxAutoProviders(2);
+
+        component.findProvider(Screen1.class, null);
+        component.findProvider(Screen2.class, null);
+        //Screen1 is more recently resolved than Screen2 now
+        component.findProvider(Screen1.class, null);
+        component.findProvider(Screen3.class, null);
+
+        MvcComponent.Stats stats = component.getStats();
+        Assert.assertEquals(2, stats.getAutoProviderCount());
+        Assert.assertEquals(3, stats.getAutoRegisteredCount());
+        Assert.assertEquals(1, stats.getEvictedCount());
+
+        //Evicted provider is registered again when needed
+        component.findProvider(Screen2.class, null);
+        Assert.assertEquals(4, component.getStats().getAutoRegisteredCount());
+    }
+
+    @Test
+    public void should_not_evict_explicitly_registered_providers() throws Exception {
+        ClockedComponent component = new ClockedComponent();
+        component.setAutoProviderIdleTimeout(1);
+        component.register(new Object() {
+            @Provides
+            public Screen1 screen1() {
+                return new Screen1();
+            }
+        });
+
+        component.time += 10;
+        component.evictIdleProviders();
+
+        Assert.assertNotNull(component.findProvider(Screen1.class, null));
+        Assert.assertEquals(0, component.getStats().getAutoRegisteredCount());
+    }
+
+    static class Screen1Holder {
+        @Inject
+        Screen1 screen;
+    }
+
+    static class Screen2Holder {
+        @Inject
+        Screen2 screen;
+    }
+
+    @Test
+    public void should_count_injections_from_cached_plans_as_recently_resolved() throws Exception {
+        ClockedComponent component = new ClockedComponent();
+        component.setMaxAutoProviders(2);
+        Graph graph = new Graph();
+        graph.setRootComponent(component);
+
+        Screen1Holder holder1 = new Screen1Holder();
+        graph.inject(holder1, Inject.class);
+        graph.release(holder1, Inject.class);
+        Screen2Holder holder2 = new Screen2Holder();
+        graph.inject(holder2, Inject.class);
+        graph.release(holder2, Inject.class);
+        //Screen1 is found again since the providers have changed after its plan was cached
+        holder1 = new Screen1Holder();
+        graph.inject(holder1, Inject.class);
+        graph.release(holder1, Inject.class);
+
+        //Screen2 is resolved from the cached plan without finding its provider again
+        holder2 = new Screen2Holder();
+        graph.inject(holder2, Inject.class);
+        graph.release(holder2, Inject.class);
+
+        component.findProvider(Screen3.class, null);
+        Assert.assertEquals(1, component.getStats().getEvictedCount());
+
+        //Screen1 is evicted rather than Screen2
+        component.findProvider(Screen2.class, null);
+        Assert.assertEquals(3, component.getStats().getAutoRegisteredCount());
+        component.findProvider(Screen1.class, null);
+        Assert.assertEquals(4, component.getStats().getAutoRegisteredCount());
+    }
+
+    @Test
+    public void should_evict_idle_providers_of_graph_components() throws Exception {
+        ClockedComponent component = new ClockedComponent();
+        component.setAutoProviderIdleTimeout(1);
+        component.findProvider(Screen1.class, null);
+        Mvc.graph().getRootComponent().attach(component);
+
+        //Starts idling on the first check
+        Assert.assertEquals(0, Mvc.graph().evictIdleProviders());
+        component.time += 10;
+        Assert.assertEquals(1, Mvc.graph().evictIdleProviders());
+        Assert.assertEquals(0, component.getStats().getAutoProviderCount());
+    }
 }
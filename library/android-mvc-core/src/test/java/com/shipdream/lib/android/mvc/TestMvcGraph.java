@@ -19,6 +19,8 @@ package com.shipdream.lib.android.mvc;
 import com.shipdream.lib.poke.Component;
 import com.shipdream.lib.poke.Consumer;
 import com.shipdream.lib.poke.Graph;
+import com.shipdream.lib.poke.GraphTemplate;
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.Provider;
 import com.shipdream.lib.poke.Provides;
 import com.shipdream.lib.poke.exception.CircularDependenciesException;
@@ -35,6 +37,8 @@ import org.mockito.stubbing.Answer;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Documented;
 import java.lang.annotation.Retention;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Qualifier;
@@ -45,6 +49,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -164,6 +169,48 @@ public class TestMvcGraph extends BaseTest{
         Assert.assertTrue(caught);
     }
 
+    static class UiRunnerHolder {
+        @Inject
+        UiThreadRunner uiThreadRunner;
+    }
+
+    @Test
+    public void graph_forked_from_template_should_provide_registered_providers() throws ProvideException, ProviderConflictException {
+        graph.getRootComponent().register(new DeviceModule());
+        GraphTemplate template = graph.createTemplate();
+
+        MvcGraph fork = new MvcGraph(template);
+        Device device = new Device();
+        fork.inject(device);
+
+        Assert.assertTrue(device.android instanceof Android);
+        Assert.assertTrue(device.os instanceof iOS);
+
+        //Each graph provides its own ui thread runner and cache
+        UiRunnerHolder holder = new UiRunnerHolder();
+        fork.inject(holder);
+        Assert.assertSame(fork.uiThreadRunner, holder.uiThreadRunner);
+
+        Device originalDevice = new Device();
+        graph.inject(originalDevice);
+        Assert.assertNotSame(device.android, originalDevice.android);
+    }
+
+    @Test
+    public void registering_to_forked_graph_should_not_affect_template() throws ProvideException, ProviderConflictException {
+        GraphTemplate template = graph.createTemplate();
+
+        MvcGraph fork = new MvcGraph(template);
+        fork.getRootComponent().register(new DeviceModule());
+
+        MvcGraph anotherFork = new MvcGraph(template);
+        anotherFork.getRootComponent().register(new DeviceModule());
+
+        Device device = new Device();
+        anotherFork.inject(device);
+        Assert.assertTrue(device.os instanceof iOS);
+    }
+
     @Test
     public void use_method_should_retain_and_release_instance_without_qualifier_correctly() throws ProvideException, ProviderConflictException {
         graph.getRootComponent().register(new DeviceModule());
@@ -360,6 +407,21 @@ public class TestMvcGraph extends BaseTest{
         // Verify
         verify(graphMock).clearMonitors();
 
+        // Arrange
+        reset(graphMock);
+        Object target = new Object();
+        // Act
+        graph.registerMonitor(target, monitor);
+        // Verify
+        verify(graphMock).registerMonitor(eq(target), eq(monitor));
+
+        // Arrange
+        reset(graphMock);
+        // Act
+        graph.unregisterMonitor(target, monitor);
+        // Verify
+        verify(graphMock).unregisterMonitor(eq(target), eq(monitor));
+
         // Arrange
         reset(graphMock);
         Provider.DereferenceListener providerFreedListener = mock(Provider.DereferenceListener.class);
@@ -506,6 +568,34 @@ public class TestMvcGraph extends BaseTest{
         graph.dereference(this, TestMvcGraph.class, null);
     }
 
+    @Test
+    public void closing_handle_on_non_main_thread_should_dereference_on_main_thread() throws Exception {
+        graph.getRootComponent().register(new DeviceModule());
+        Provider.DereferenceListener listener = mock(Provider.DereferenceListener.class);
+        graph.registerDereferencedListener(listener);
+
+        InstanceHandle<Os> handle = graph.referenceHandle(Os.class, null);
+
+        final List<Runnable> posted = new ArrayList<>();
+        when(graph.uiThreadRunner.isOnUiThread()).thenReturn(false);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                posted.add((Runnable) invocation.getArguments()[0]);
+                return null;
+            }
+        }).when(graph.uiThreadRunner).post(any(Runnable.class));
+
+        handle.close();
+        Assert.assertTrue(handle.isClosed());
+        Assert.assertEquals(1, posted.size());
+        verify(listener, never()).onDereferenced(any(Provider.class), any());
+
+        when(graph.uiThreadRunner.isOnUiThread()).thenReturn(true);
+        posted.get(0).run();
+        verify(listener).onDereferenced(any(Provider.class), eq(handle.get()));
+    }
+
     @Test
     public void should_throw_exception_when_mvc_graph_inject_on_non_main_thread() {
         when(graph.uiThreadRunner.isOnUiThread()).thenReturn(false);
@@ -19,6 +19,7 @@ package com.shipdream.lib.android.mvc;
 import com.shipdream.lib.android.mvc.inject.testNameMapping.controller.TimerController;
 import com.shipdream.lib.android.mvc.manager.internal.BaseNavigationManagerTest;
 import com.shipdream.lib.poke.Consumer;
+import com.shipdream.lib.poke.Provider;
 import com.shipdream.lib.poke.Provides;
 import com.shipdream.lib.poke.exception.ProvideException;
 import com.shipdream.lib.poke.exception.ProviderConflictException;
@@ -107,7 +108,7 @@ public class TestNavigationManager extends BaseNavigationManagerTest {
     }
 
     @Test
-    public void should_throw_MvcGraphException_when_mvcGraph_destroy_method_encounters_PokeException() throws ProvideException, ProviderConflictException, ProviderMissingException {
+    public void should_release_prepared_instance_without_lookup_when_navigator_destroyed() throws ProvideException, ProviderConflictException, ProviderMissingException {
         navigationManager.logger = mock(Logger.class);
         Navigator navigator = navigationManager.navigate(this);
 
@@ -120,11 +121,16 @@ public class TestNavigationManager extends BaseNavigationManagerTest {
 
         navigator.with(X.class);
 
+        Provider<X> provider = Mvc.graph().getRootComponent().findProvider(X.class, null);
+        Assert.assertEquals(1, provider.getReferenceCount());
+
+        //The navigator holds the resolved provider so unregistering doesn't stop releasing it
         Mvc.graph().getRootComponent().unregister(X.class, null);
 
         navigator.destroy();
 
-        verify(navigationManager.logger).warn(anyString(), anyString());
+        Assert.assertEquals(0, provider.getReferenceCount());
+        verify(navigationManager.logger, times(0)).warn(anyString(), anyString());
     }
 
     @Test
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestPriorityScheduler {
+    private PriorityScheduler scheduler;
+    private CountDownLatch blocker;
+    private CountDownLatch blocking;
+    private List<String> ran;
+
+    @Before
+    public void setUp() throws Exception {
+        scheduler = new PriorityScheduler(1);
+        blocker = new CountDownLatch(1);
+        blocking = new CountDownLatch(1);
+        ran = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        blocker.countDown();
+        scheduler.shutdownNow();
+    }
+
+    private void blockTheOnlyThread() throws InterruptedException {
+        scheduler.lane(Scheduler.Priority.USER_BLOCKING).execute(new Runnable() {
+            @Override
+            public void run() {
+                blocking.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+    }
+
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+
+    private void drain() throws Exception {
+        blocker.countDown();
+        scheduler.shutdown();
+        assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_run_work_of_higher_priority_first() throws Exception {
+        blockTheOnlyThread();
+
+        scheduler.lane(Scheduler.Priority.MAINTENANCE).execute(record("maintenance"));
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("prefetch1"));
+        scheduler.execute(record("visible"));
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("prefetch2"));
+        scheduler.lane(Scheduler.Priority.USER_BLOCKING).execute(record("user"));
+        drain();
+
+        assertEquals(Arrays.asList("user", "visible", "prefetch1", "prefetch2", "maintenance"), ran);
+    }
+
+    @Test
+    public void should_abort_work_submitted_to_full_lane() throws Exception {
+        scheduler.setLaneCapacity(Scheduler.Priority.PREFETCH, 1);
+        blockTheOnlyThread();
+
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("a"));
+        try {
+            scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("b"));
+            fail("Should reject work to full lane");
+        } catch (RejectedExecutionException e) {
+            //Expected
+        }
+        //Other lanes are not affected
+        scheduler.lane(Scheduler.Priority.MAINTENANCE).execute(record("c"));
+        drain();
+
+        assertEquals(Arrays.asList("a", "c"), ran);
+        Scheduler.LaneMetrics metrics = scheduler.getLaneMetrics(Scheduler.Priority.PREFETCH);
+        assertEquals(2, metrics.getSubmittedCount());
+        assertEquals(1, metrics.getRejectedCount());
+        assertEquals(1, metrics.getCompletedCount());
+        assertEquals(0, metrics.getQueuedCount());
+    }
+
+    @Test
+    public void should_discard_oldest_work_of_full_lane() throws Exception {
+        scheduler.setLaneCapacity(Scheduler.Priority.PREFETCH, 2);
+        scheduler.setRejectionPolicy(Scheduler.Priority.PREFETCH,
+                PriorityScheduler.RejectionPolicy.DISCARD_OLDEST);
+        blockTheOnlyThread();
+
+        Future<?> oldest = scheduler.lane(Scheduler.Priority.PREFETCH).submit(record("a"));
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("b"));
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("c"));
+        assertTrue(oldest.isCancelled());
+        assertEquals(2, scheduler.getLaneMetrics(Scheduler.Priority.PREFETCH).getQueuedCount());
+        drain();
+
+        assertEquals(Arrays.asList("b", "c"), ran);
+        assertEquals(1, scheduler.getLaneMetrics(Scheduler.Priority.PREFETCH).getRejectedCount());
+    }
+
+    @Test
+    public void should_keep_lane_discarding_oldest_bounded_under_concurrent_submissions()
+            throws Exception {
+        final int capacity = 2;
+        scheduler.setLaneCapacity(Scheduler.Priority.PREFETCH, capacity);
+        scheduler.setRejectionPolicy(Scheduler.Priority.PREFETCH,
+                PriorityScheduler.RejectionPolicy.DISCARD_OLDEST);
+        blockTheOnlyThread();
+
+        final int submitterCount = 8;
+        final int submissions = 200;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < submitterCount; i++) {
+            Thread submitter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < submissions; j++) {
+                        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("work"));
+                    }
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        start.countDown();
+        for (Thread submitter : submitters) {
+            submitter.join(5000);
+        }
+
+        Scheduler.LaneMetrics metrics = scheduler.getLaneMetrics(Scheduler.Priority.PREFETCH);
+        assertEquals(submitterCount * submissions, metrics.getSubmittedCount());
+        assertTrue(metrics.getQueuedCount() <= capacity);
+        drain();
+
+        assertTrue(ran.size() <= capacity);
+        assertEquals(submitterCount * submissions - ran.size(),
+                scheduler.getLaneMetrics(Scheduler.Priority.PREFETCH).getRejectedCount());
+    }
+
+    @Test
+    public void should_discard_or_run_on_caller_by_rejection_policies() throws Exception {
+        scheduler.setLaneCapacity(Scheduler.Priority.PREFETCH, 1);
+        scheduler.setRejectionPolicy(Scheduler.Priority.PREFETCH,
+                PriorityScheduler.RejectionPolicy.DISCARD);
+        scheduler.setLaneCapacity(Scheduler.Priority.MAINTENANCE, 1);
+        scheduler.setRejectionPolicy(Scheduler.Priority.MAINTENANCE,
+                PriorityScheduler.RejectionPolicy.CALLER_RUNS);
+        blockTheOnlyThread();
+
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("a"));
+        scheduler.lane(Scheduler.Priority.PREFETCH).execute(record("dropped"));
+        scheduler.lane(Scheduler.Priority.MAINTENANCE).execute(record("b"));
+        scheduler.lane(Scheduler.Priority.MAINTENANCE).execute(record("caller"));
+        //Run on this thread straight away
+        assertEquals(Arrays.asList("caller"), ran);
+        drain();
+
+        assertEquals(Arrays.asList("caller", "a", "b"), ran);
+    }
+
+    @Test
+    public void should_record_queue_wait_and_run_time_by_lanes() throws Exception {
+        blockTheOnlyThread();
+        scheduler.lane(Scheduler.Priority.VISIBLE).execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Thread.sleep(20);
+        drain();
+
+        Scheduler.LaneMetrics metrics = scheduler.getLaneMetrics(Scheduler.Priority.VISIBLE);
+        assertEquals(1, metrics.getCompletedCount());
+        assertTrue(metrics.getMaxQueueWaitNanos() >= 20000000);
+        assertTrue(metrics.getMaxRunNanos() >= 20000000);
+        assertEquals(metrics.getMaxRunNanos(), metrics.getTotalRunNanos());
+        assertEquals(1, scheduler.getLaneMetrics(Scheduler.Priority.USER_BLOCKING).getCompletedCount());
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc;
+
+import com.shipdream.lib.android.mvc.event.ValueChangeEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestUiThreadEventBus {
+    private boolean onUiThread;
+    private List<Runnable> posted;
+    private List<Long> delays;
+    private UiThreadEventBus eventBus;
+
+    static class Subscriber {
+        List<String> events = new ArrayList<>();
+
+        void onEvent(String event) {
+            events.add(event);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        posted = new ArrayList<>();
+        delays = new ArrayList<>();
+        MvcGraph graph = new MvcGraph();
+        graph.uiThreadRunner = new UiThreadRunner() {
+            @Override
+            public boolean isOnUiThread() {
+                return onUiThread;
+            }
+
+            @Override
+            public void post(Runnable runnable) {
+                posted.add(runnable);
+                delays.add(0L);
+            }
+
+            @Override
+            public void postDelayed(Runnable runnable, long delayMs) {
+                posted.add(runnable);
+                delays.add(delayMs);
+            }
+        };
+        eventBus = new UiThreadEventBus(graph);
+    }
+
+    private void runPosted() {
+        List<Runnable> runnables = new ArrayList<>(posted);
+        posted.clear();
+        delays.clear();
+        onUiThread = true;
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+        onUiThread = false;
+    }
+
+    @Test
+    public void should_post_each_event_to_ui_thread_when_not_batched() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post("a");
+        eventBus.post("b");
+
+        assertEquals(2, posted.size());
+        runPosted();
+        assertEquals(Arrays.asList("a", "b"), subscriber.events);
+    }
+
+    @Test
+    public void should_deliver_events_on_ui_thread_straight_away() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+        eventBus.setBatched(true);
+        onUiThread = true;
+
+        eventBus.post("a");
+
+        assertEquals(0, posted.size());
+        assertEquals(Arrays.asList("a"), subscriber.events);
+    }
+
+    @Test
+    public void should_drain_events_from_other_threads_in_one_callback_in_order() {
+        Subscriber subscriber = new Subscriber();
+        eventBus.register(subscriber);
+        eventBus.setBatched(true);
+
+        eventBus.post("a");
+        eventBus.post("b");
+        eventBus.post("c");
+
+        assertEquals(1, posted.size());
+        assertEquals(3, eventBus.getQueuedEventCount());
+        assertTrue(subscriber.events.isEmpty());
+
+        runPosted();
+
+        assertEquals(Arrays.asList("a", "b", "c"), subscriber.events);
+        assertEquals(0, eventBus.getQueuedEventCount());
+        assertEquals(3, eventBus.getMaxQueuedEventCount());
+        assertEquals(1, eventBus.getDrainCount());
+        assertEquals(3, eventBus.getDrainedEventCount());
+        assertTrue(eventBus.getTotalDrainTimeNanos() >= eventBus.getLastDrainTimeNanos());
+
+        //Events after the drain schedule another one
+        eventBus.post("d");
+        assertEquals(1, posted.size());
+        runPosted();
+        assertEquals(Arrays.asList("a", "b", "c", "d"), subscriber.events);
+        assertEquals(2, eventBus.getDrainCount());
+    }
+
+    @Test
+    public void should_drain_after_batch_interval() {
+        eventBus.setBatched(true);
+        eventBus.setBatchIntervalMs(16);
+
+        eventBus.post("a");
+        eventBus.post("b");
+
+        assertEquals(1, posted.size());
+        assertEquals(16L, (long) delays.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_null_events_on_posting_thread_when_batched() {
+        eventBus.setBatched(true);
+        eventBus.post(null);
+    }
+
+    static class ValueSubscriber {
+        List<ValueChangeEvent> events = new ArrayList<>();
+        List<String> strings = new ArrayList<>();
+
+        void onEvent(ValueChangeEvent event) {
+            events.add(event);
+        }
+
+        void onEvent(String event) {
+            strings.add(event);
+        }
+    }
+
+    static class CounterEvent {
+        final String id;
+        final int value;
+
+        CounterEvent(String id, int value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    static class SenderEvent extends ValueChangeEvent<Integer> {
+        final String sender;
+
+        SenderEvent(String sender, Integer lastValue, Integer currentValue) {
+            super(lastValue, currentValue);
+            this.sender = sender;
+        }
+
+        @Override
+        protected ValueChangeEvent<Integer> copyWithLastValue(Integer lastValue) {
+            return new SenderEvent(sender, lastValue, getCurrentValue());
+        }
+    }
+
+    static class UncopyableEvent extends ValueChangeEvent<Integer> {
+        UncopyableEvent(Integer lastValue, Integer currentValue) {
+            super(lastValue, currentValue);
+        }
+    }
+
+    static class CounterSubscriber {
+        List<String> received = new ArrayList<>();
+
+        void onEvent(CounterEvent event) {
+            received.add(event.id + event.value);
+        }
+    }
+
+    @Test
+    public void should_conflate_queued_value_change_events() {
+        ValueSubscriber subscriber = new ValueSubscriber();
+        eventBus.register(subscriber);
+        eventBus.conflate(ValueChangeEvent.class);
+
+        eventBus.post(new ValueChangeEvent<>(0, 1));
+        eventBus.post("a");
+        eventBus.post(new ValueChangeEvent<>(1, 2));
+        eventBus.post(new ValueChangeEvent<>(2, 3));
+
+        //"a" is not conflated nor batched
+        assertEquals(2, posted.size());
+        runPosted();
+
+        assertEquals(1, subscriber.events.size());
+        assertEquals(0, subscriber.events.get(0).getLastValue());
+        assertEquals(3, subscriber.events.get(0).getCurrentValue());
+        assertEquals(Arrays.asList("a"), subscriber.strings);
+        assertEquals(2, eventBus.getConflatedEventCount());
+
+        //Queued again once delivered
+        eventBus.post(new ValueChangeEvent<>(3, 4));
+        runPosted();
+        assertEquals(2, subscriber.events.size());
+        assertEquals(3, subscriber.events.get(1).getLastValue());
+        assertEquals(4, subscriber.events.get(1).getCurrentValue());
+    }
+
+    @Test
+    public void should_conflate_value_change_event_subclasses_by_their_copies() {
+        ValueSubscriber subscriber = new ValueSubscriber();
+        eventBus.register(subscriber);
+        eventBus.conflate(ValueChangeEvent.class);
+
+        eventBus.post(new SenderEvent("x", 0, 1));
+        eventBus.post(new SenderEvent("y", 1, 2));
+        eventBus.post(new UncopyableEvent(2, 3));
+        eventBus.post(new UncopyableEvent(3, 4));
+        runPosted();
+
+        assertEquals(3, subscriber.events.size());
+        SenderEvent merged = (SenderEvent) subscriber.events.get(0);
+        assertEquals("y", merged.sender);
+        assertEquals(Integer.valueOf(0), merged.getLastValue());
+        assertEquals(Integer.valueOf(2), merged.getCurrentValue());
+        //Subclasses not declaring how to copy themselves are not conflated
+        assertEquals(2, subscriber.events.get(1).getLastValue());
+        assertEquals(3, subscriber.events.get(2).getLastValue());
+        assertEquals(1, eventBus.getConflatedEventCount());
+    }
+
+    @Test
+    public void should_hold_value_change_event_subclasses_to_paused_views_by_copies_or_latest() {
+        onUiThread = true;
+        ValueSubscriber subscriber = new ValueSubscriber();
+        eventBus.register(subscriber);
+
+        eventBus.pause(subscriber);
+        eventBus.post(new UncopyableEvent(0, 1));
+        eventBus.post(new SenderEvent("x", 5, 6));
+        for (int i = 1; i < 1000; i++) {
+            eventBus.post(new UncopyableEvent(i, i + 1));
+        }
+        eventBus.post(new SenderEvent("y", 6, 7));
+        eventBus.resume(subscriber);
+
+        //Subclasses not declaring how to copy themselves are held by type and the latest wins
+        assertEquals(2, subscriber.events.size());
+        assertEquals(999, subscriber.events.get(0).getLastValue());
+        assertEquals(1000, subscriber.events.get(0).getCurrentValue());
+        assertEquals(5, subscriber.events.get(1).getLastValue());
+        assertEquals(7, subscriber.events.get(1).getCurrentValue());
+        assertEquals("y", ((SenderEvent) subscriber.events.get(1)).sender);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void should_refuse_to_conflate_subclass_not_declaring_copy() {
+        new UncopyableEvent(1, 2).conflate(new UncopyableEvent(0, 1));
+    }
+
+    @Test
+    public void should_conflate_events_by_keys_in_order_of_earliest_events() {
+        CounterSubscriber subscriber = new CounterSubscriber();
+        eventBus.register(subscriber);
+        eventBus.setBatched(true);
+        eventBus.conflate(CounterEvent.class, new UiThreadEventBus.KeyExtractor<CounterEvent>() {
+            @Override
+            public Object keyOf(CounterEvent event) {
+                return event.id;
+            }
+        }, null);
+
+        eventBus.post(new CounterEvent("x", 1));
+        eventBus.post(new CounterEvent("y", 1));
+        eventBus.post(new CounterEvent("x", 2));
+        eventBus.post(new CounterEvent("y", 2));
+        eventBus.post(new CounterEvent("x", 3));
+
+        assertEquals(1, posted.size());
+        assertEquals(2, eventBus.getQueuedEventCount());
+        runPosted();
+
+        assertEquals(Arrays.asList("x3", "y2"), subscriber.received);
+
+        //Not conflated any more
+        eventBus.unconflate(CounterEvent.class);
+        eventBus.post(new CounterEvent("x", 4));
+        eventBus.post(new CounterEvent("x", 5));
+        runPosted();
+        assertEquals(Arrays.asList("x3", "y2", "x4", "x5"), subscriber.received);
+    }
+
+    @Test
+    public void should_hold_events_to_paused_views_and_replay_latest_of_each_type() {
+        onUiThread = true;
+        ValueSubscriber subscriber = new ValueSubscriber();
+        ValueSubscriber other = new ValueSubscriber();
+        eventBus.register(subscriber);
+        eventBus.register(other);
+
+        eventBus.pause(subscriber);
+        assertTrue(eventBus.isPaused(subscriber));
+        eventBus.post(new ValueChangeEvent<>(0, 1));
+        eventBus.post("a");
+        eventBus.post(new ValueChangeEvent<>(1, 2));
+        eventBus.post("b");
+
+        //Other views are not paused
+        assertEquals(2, other.events.size());
+        assertEquals(Arrays.asList("a", "b"), other.strings);
+        assertEquals(0, subscriber.events.size());
+        assertEquals(0, subscriber.strings.size());
+
+        eventBus.resume(subscriber);
+        assertEquals(1, subscriber.events.size());
+        assertEquals(0, subscriber.events.get(0).getLastValue());
+        assertEquals(2, subscriber.events.get(0).getCurrentValue());
+        assertEquals(Arrays.asList("b"), subscriber.strings);
+
+        //Replayed only once
+        eventBus.resume(subscriber);
+        eventBus.post("c");
+        assertEquals(1, subscriber.events.size());
+        assertEquals(Arrays.asList("b", "c"), subscriber.strings);
+    }
+
+    @Test
+    public void should_hold_events_to_paused_views_by_conflation_keys() {
+        onUiThread = true;
+        CounterSubscriber subscriber = new CounterSubscriber();
+        eventBus.register(subscriber);
+        eventBus.conflate(CounterEvent.class, new UiThreadEventBus.KeyExtractor<CounterEvent>() {
+            @Override
+            public Object keyOf(CounterEvent event) {
+                return event.id;
+            }
+        }, null);
+
+        eventBus.pause(subscriber);
+        eventBus.post(new CounterEvent("x", 1));
+        eventBus.post(new CounterEvent("y", 1));
+        eventBus.post(new CounterEvent("x", 2));
+        eventBus.resume(subscriber);
+
+        assertEquals(Arrays.asList("x2", "y1"), subscriber.received);
+    }
+
+    @Test
+    public void should_drop_held_events_of_views_unregistered_while_paused() {
+        onUiThread = true;
+        CounterSubscriber subscriber = new CounterSubscriber();
+        eventBus.register(subscriber);
+
+        eventBus.pause(subscriber);
+        eventBus.post(new CounterEvent("x", 1));
+        eventBus.unregister(subscriber);
+        eventBus.resume(subscriber);
+
+        assertEquals(0, subscriber.received.size());
+    }
+}
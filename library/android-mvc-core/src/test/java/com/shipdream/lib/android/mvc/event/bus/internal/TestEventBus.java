@@ -16,13 +16,28 @@
 
 package com.shipdream.lib.android.mvc.event.bus.internal;
 
+import com.shipdream.lib.android.mvc.event.bus.EventDispatcher;
+import com.shipdream.lib.android.mvc.event.bus.SubscriberIndex;
+import com.shipdream.lib.android.mvc.event.bus.ThreadMode;
+import com.shipdream.lib.android.mvc.event.bus.annotation.DeliverOn;
+import com.sun.management.ThreadMXBean;
+
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
@@ -600,4 +615,469 @@ public class TestEventBus {
         verify(handler2, times(0)).handleEvent(any(Event3.class));
         verify(handler2, times(0)).handleEvent(any(Event3.class));
     }
+
+    @Test
+    public void should_compute_subscriber_methods_of_class_only_once() {
+        //Arrange
+        class Event1{}
+        class Event2{}
+
+        class Subscriber1 {
+            public void onEvent(Event1 event1) {
+            }
+            public void onEvent() {
+            }
+            public void handle(Event2 event2) {
+            }
+        }
+
+        class Subscriber2 extends Subscriber1 {
+            void onEvent(Event2 event2) {
+            }
+        }
+
+        //Action
+        Map<Class<?>, EventDispatcher> dispatchers = EventBusImpl.findDispatchers(Subscriber2.class);
+
+        //Assert
+        Assert.assertEquals(2, dispatchers.size());
+        Assert.assertEquals(Subscriber1.class,
+                ((MethodDispatcher) dispatchers.get(Event1.class)).getMethod().getDeclaringClass());
+        Assert.assertEquals(Subscriber2.class,
+                ((MethodDispatcher) dispatchers.get(Event2.class)).getMethod().getDeclaringClass());
+        Assert.assertSame(dispatchers, EventBusImpl.findDispatchers(Subscriber2.class));
+
+        //Action
+        EventBusImpl eventBus1 = new EventBusImpl();
+        EventBusImpl eventBus2 = new EventBusImpl();
+        Subscriber2 sub = new Subscriber2();
+        eventBus1.register(sub);
+        eventBus2.register(sub);
+
+        //Assert
+        Assert.assertSame(dispatchers, EventBusImpl.findDispatchers(Subscriber2.class));
+        Assert.assertEquals(2, eventBus1.subscribers.size());
+        Assert.assertEquals(2, eventBus2.subscribers.size());
+    }
+
+    interface Tagged {
+    }
+
+    interface Named extends Tagged {
+    }
+
+    static class BaseEvent {
+    }
+
+    static class NamedEvent extends BaseEvent implements Named {
+    }
+
+    @Test
+    public void should_flatten_event_type_hierarchy_once() {
+        //Action
+        Class<?>[] types = EventBusImpl.findEventTypes(NamedEvent.class);
+
+        //Assert
+        Assert.assertArrayEquals(new Class<?>[]{NamedEvent.class, BaseEvent.class, Object.class,
+                Named.class, Tagged.class}, types);
+        Assert.assertSame(types, EventBusImpl.findEventTypes(NamedEvent.class));
+    }
+
+    @Test
+    public void should_deliver_events_to_subscribers_of_super_types() {
+        //Arrange
+        class EventHandler {
+            void handleEvent(Object event) {
+            }
+        }
+
+        final EventHandler exactHandler = mock(EventHandler.class);
+        final EventHandler baseHandler = mock(EventHandler.class);
+        final EventHandler taggedHandler = mock(EventHandler.class);
+
+        class Subscriber {
+            void onEvent(NamedEvent event) {
+                exactHandler.handleEvent(event);
+            }
+
+            void onEvent(BaseEvent event) {
+                baseHandler.handleEvent(event);
+            }
+        }
+
+        class Subscriber2 {
+            void onEvent(Tagged event) {
+                taggedHandler.handleEvent(event);
+            }
+        }
+
+        eventBus.register(new Subscriber());
+
+        //Action
+        eventBus.post(new NamedEvent());
+        eventBus.post(new BaseEvent());
+
+        //Assert
+        verify(exactHandler, times(1)).handleEvent(any(NamedEvent.class));
+        verify(baseHandler, times(2)).handleEvent(any(BaseEvent.class));
+        verify(taggedHandler, times(0)).handleEvent(any());
+
+        //Action
+        //Subscribers registered after the event type was posted should receive it as well
+        Subscriber2 sub2 = new Subscriber2();
+        eventBus.register(sub2);
+        eventBus.post(new NamedEvent());
+
+        //Assert
+        verify(taggedHandler, times(1)).handleEvent(any(NamedEvent.class));
+
+        //Action
+        eventBus.unregister(sub2);
+        eventBus.post(new NamedEvent());
+
+        //Assert
+        verify(taggedHandler, times(1)).handleEvent(any());
+        verify(exactHandler, times(3)).handleEvent(any(NamedEvent.class));
+    }
+
+    public static class IndexedSubscriber {
+        int count;
+
+        void onEvent(String event) {
+            count++;
+        }
+    }
+
+    //Named as the annotation processor would name the index of IndexedSubscriber
+    public static class IndexedSubscriber$$SubscriberIndex implements SubscriberIndex {
+        static int dispatchCount;
+
+        @Override
+        public Map<Class<?>, EventDispatcher> getDispatchers() {
+            Map<Class<?>, EventDispatcher> dispatchers = new LinkedHashMap<>();
+            dispatchers.put(String.class, new EventDispatcher() {
+                @Override
+                public void dispatch(Object subscriber, Object event) throws Exception {
+                    dispatchCount++;
+                    ((IndexedSubscriber) subscriber).onEvent((String) event);
+                }
+            });
+            return dispatchers;
+        }
+
+        @Override
+        public Map<Class<?>, ThreadMode> getThreadModes() {
+            Map<Class<?>, ThreadMode> threadModes = new LinkedHashMap<>();
+            threadModes.put(String.class, ThreadMode.SERIAL);
+            return threadModes;
+        }
+    }
+
+    @Test
+    public void should_deliver_events_by_generated_index_when_present() {
+        //Arrange
+        IndexedSubscriber sub = new IndexedSubscriber();
+        eventBus.register(sub);
+
+        //Action
+        eventBus.post("event");
+
+        //Assert
+        Assert.assertEquals(1, sub.count);
+        Assert.assertEquals(1, IndexedSubscriber$$SubscriberIndex.dispatchCount);
+        Assert.assertFalse(EventBusImpl.findDispatchers(IndexedSubscriber.class).get(String.class)
+                instanceof MethodDispatcher);
+        Assert.assertEquals(ThreadMode.SERIAL,
+                EventBusImpl.findThreadModes(IndexedSubscriber.class).get(String.class));
+    }
+
+    static class SelfRemovingSubscriber {
+        EventBusImpl eventBus;
+        SelfRemovingSubscriber other;
+        int count;
+
+        void onEvent(String event) {
+            count++;
+            eventBus.unregister(this);
+            if (other != null) {
+                eventBus.unregister(other);
+            }
+        }
+    }
+
+    @Test
+    public void should_allow_unregistering_subscribers_while_posting() {
+        //Arrange
+        SelfRemovingSubscriber sub1 = new SelfRemovingSubscriber();
+        SelfRemovingSubscriber sub2 = new SelfRemovingSubscriber();
+        sub1.eventBus = eventBus;
+        sub2.eventBus = eventBus;
+        sub1.other = sub2;
+        eventBus.register(sub1);
+        eventBus.register(sub2);
+
+        //Action
+        eventBus.post("event");
+        eventBus.post("event");
+
+        //Assert
+        Assert.assertEquals(1, sub1.count);
+        //Unregistered by sub1 before the event reached it
+        Assert.assertEquals(0, sub2.count);
+        Assert.assertEquals(0, eventBus.subscribers.size());
+    }
+
+    static class CountingSubscriber {
+        final AtomicInteger count = new AtomicInteger();
+
+        void onEvent(Integer event) {
+            count.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void should_register_and_post_from_multiple_threads() throws Exception {
+        //Arrange
+        final int threadCount = 4;
+        final int rounds = 500;
+        final CountingSubscriber alwaysRegistered = new CountingSubscriber();
+        eventBus.register(alwaysRegistered);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < rounds; j++) {
+                            CountingSubscriber sub = new CountingSubscriber();
+                            eventBus.register(sub);
+                            eventBus.post(j);
+                            eventBus.unregister(sub);
+                        }
+                    } catch (Throwable e) {
+                        error.set(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        //Action
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Assert
+        Assert.assertNull(error.get());
+        Assert.assertEquals(threadCount * rounds, alwaysRegistered.count.get());
+        Assert.assertEquals(1, eventBus.subscribers.size());
+        Assert.assertEquals(1, eventBus.subscribers.get(Integer.class).size());
+    }
+
+    public static class AllocationEvent {}
+
+    public static class AllocationSubscriber {
+        int count;
+
+        public void onEvent(AllocationEvent event) {
+            count++;
+        }
+
+        public void onEvent(Object event) {
+            count++;
+        }
+    }
+
+    /**
+     * @return The bean measuring bytes allocated by threads. Skips the test on JVMs without it.
+     */
+    private static ThreadMXBean allocationMeasuringThreadBean() {
+        Object bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof ThreadMXBean);
+        ThreadMXBean threadBean = (ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+
+    @Test
+    public void should_not_allocate_when_posting_to_unchanged_subscribers() {
+        ThreadMXBean threadBean = allocationMeasuringThreadBean();
+
+        //Arrange
+        AllocationSubscriber sub1 = new AllocationSubscriber();
+        AllocationSubscriber sub2 = new AllocationSubscriber();
+        eventBus.register(sub1);
+        eventBus.register(sub2);
+        AllocationEvent event = new AllocationEvent();
+        int rounds = 100000;
+        //Warm up the dispatch table and let the JIT compile the post path
+        for (int i = 0; i < rounds; i++) {
+            eventBus.post(event);
+        }
+
+        //Action
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < rounds; i++) {
+            eventBus.post(event);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        //Assert
+        Assert.assertEquals(2 * 2 * 2 * rounds, sub1.count + sub2.count);
+        //Allow the bytes allocated by measuring itself but not a single object per post
+        Assert.assertTrue("Allocated " + allocated + " bytes by " + rounds + " posts",
+                allocated < rounds);
+    }
+
+    public static class WeakEvent {}
+
+    public static class WeakSubscriberHolder {
+        static int received;
+
+        public void onEvent(WeakEvent event) {
+            received++;
+        }
+    }
+
+    private static void collectGarbage(EventBusImpl bus) throws InterruptedException {
+        for (int i = 0; i < 50 && bus.subscribers.containsKey(WeakEvent.class); i++) {
+            System.gc();
+            Thread.sleep(20);
+            bus.post(new WeakEvent());
+        }
+    }
+
+    @Test
+    public void should_purge_weak_subscribers_collected_without_unregistering() throws Exception {
+        //Arrange
+        eventBus.setWeakSubscribers(true);
+        WeakSubscriberHolder.received = 0;
+        WeakSubscriberHolder subscriber = new WeakSubscriberHolder();
+        eventBus.register(subscriber);
+        eventBus.post(new WeakEvent());
+        Assert.assertEquals(1, WeakSubscriberHolder.received);
+
+        //Action
+        subscriber = null;
+        collectGarbage(eventBus);
+
+        //Assert
+        Assert.assertFalse(eventBus.subscribers.containsKey(WeakEvent.class));
+    }
+
+    @Test
+    public void should_not_collect_strong_subscribers_not_unregistered() throws Exception {
+        //Arrange
+        WeakSubscriberHolder.received = 0;
+        eventBus.register(new WeakSubscriberHolder());
+
+        //Action
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            eventBus.post(new WeakEvent());
+        }
+
+        //Assert
+        Assert.assertEquals(3, WeakSubscriberHolder.received);
+        Assert.assertEquals(1, eventBus.subscribers.get(WeakEvent.class).size());
+    }
+
+    @Test
+    public void should_register_and_unregister_weak_subscribers_once() {
+        //Arrange
+        eventBus.setWeakSubscribers(true);
+        WeakSubscriberHolder.received = 0;
+        WeakSubscriberHolder subscriber = new WeakSubscriberHolder();
+
+        //Action
+        eventBus.register(subscriber);
+        eventBus.register(subscriber);
+        eventBus.post(new WeakEvent());
+
+        //Assert
+        Assert.assertEquals(1, WeakSubscriberHolder.received);
+        Assert.assertEquals(1, eventBus.subscribers.get(WeakEvent.class).size());
+
+        //Action
+        eventBus.unregister(subscriber);
+        eventBus.post(new WeakEvent());
+
+        //Assert
+        Assert.assertEquals(1, WeakSubscriberHolder.received);
+        Assert.assertFalse(eventBus.subscribers.containsKey(WeakEvent.class));
+    }
+
+    public static class LaneSubscriber {
+        final List<String> received = new ArrayList<>();
+
+        public void onEvent(String event) {
+            received.add("posting:" + event);
+        }
+
+        @DeliverOn(ThreadMode.BACKGROUND)
+        public void onEvent(Integer event) {
+            received.add("background:" + event);
+        }
+    }
+
+    @Test
+    public void should_find_thread_modes_declared_by_handlers() {
+        Map<Class<?>, ThreadMode> threadModes = EventBusImpl.findThreadModes(LaneSubscriber.class);
+
+        Assert.assertEquals(1, threadModes.size());
+        Assert.assertEquals(ThreadMode.BACKGROUND, threadModes.get(Integer.class));
+    }
+
+    @Test
+    public void should_execute_deliveries_to_handlers_on_other_threads() {
+        //Arrange
+        final List<ThreadMode> executedModes = new ArrayList<>();
+        final List<Runnable> deliveries = new ArrayList<>();
+        eventBus = new EventBusImpl() {
+            @Override
+            protected void execute(ThreadMode threadMode, Object subscriber, Runnable delivery) {
+                executedModes.add(threadMode);
+                deliveries.add(delivery);
+            }
+        };
+        LaneSubscriber sub = new LaneSubscriber();
+        eventBus.register(sub);
+
+        //Action
+        eventBus.post("a");
+        eventBus.post(1);
+        eventBus.post(2);
+
+        //Assert
+        Assert.assertEquals(1, sub.received.size());
+        Assert.assertEquals(2, executedModes.size());
+        Assert.assertEquals(ThreadMode.BACKGROUND, executedModes.get(0));
+
+        //Action
+        deliveries.get(0).run();
+        eventBus.unregister(sub);
+        deliveries.get(1).run();
+
+        //Assert
+        Assert.assertEquals(2, sub.received.size());
+        Assert.assertEquals("background:1", sub.received.get(1));
+    }
+
+    @Test
+    public void should_deliver_on_posting_thread_by_default_event_bus() {
+        LaneSubscriber sub = new LaneSubscriber();
+        eventBus.register(sub);
+
+        eventBus.post(1);
+
+        Assert.assertEquals(1, sub.received.size());
+        Assert.assertEquals("background:1", sub.received.get(0));
+    }
 }
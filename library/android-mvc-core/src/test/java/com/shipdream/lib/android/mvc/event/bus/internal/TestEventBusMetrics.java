@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.android.mvc.event.bus.internal;
+
+import com.shipdream.lib.android.mvc.event.bus.EventBusMetrics;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestEventBusMetrics {
+    static class Event {}
+    static class OtherEvent {}
+
+    static class FastSubscriber {
+        int count;
+
+        public void onEvent(Event event) {
+            count++;
+        }
+    }
+
+    static class SlowSubscriber {
+        public void onEvent(Event event) throws InterruptedException {
+            Thread.sleep(30);
+        }
+    }
+
+    private EventBusImpl eventBus;
+    private EventBusMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        eventBus = new EventBusImpl();
+        metrics = new EventBusMetrics(20);
+    }
+
+    @Test
+    public void should_not_record_without_metrics() {
+        FastSubscriber subscriber = new FastSubscriber();
+        eventBus.register(subscriber);
+
+        eventBus.post(new Event());
+
+        Assert.assertNull(eventBus.getMetrics());
+        Assert.assertEquals(1, subscriber.count);
+        Assert.assertTrue(metrics.snapshot().getEventStats().isEmpty());
+    }
+
+    @Test
+    public void should_record_posts_and_deliveries_per_event_class() {
+        eventBus.setMetrics(metrics);
+        eventBus.register(new FastSubscriber());
+        eventBus.register(new FastSubscriber());
+
+        eventBus.post(new Event());
+        eventBus.post(new Event());
+        eventBus.post(new OtherEvent());
+
+        List<EventBusMetrics.EventStats> stats = metrics.snapshot().getEventStats();
+        Assert.assertEquals(2, stats.size());
+
+        EventBusMetrics.EventStats eventStats = find(stats, Event.class);
+        Assert.assertEquals(2, eventStats.getPostCount());
+        Assert.assertEquals(4, eventStats.getDeliveryCount());
+        Assert.assertEquals(2, eventStats.getLastSubscriberCount());
+        long histogramCount = 0;
+        for (long count : eventStats.getHistogram()) {
+            histogramCount += count;
+        }
+        Assert.assertEquals(2, histogramCount);
+
+        EventBusMetrics.EventStats otherStats = find(stats, OtherEvent.class);
+        Assert.assertEquals(1, otherStats.getPostCount());
+        Assert.assertEquals(0, otherStats.getDeliveryCount());
+
+        Assert.assertTrue(metrics.snapshot().getSlowSubscribers().isEmpty());
+    }
+
+    @Test
+    public void should_flag_subscribers_slower_than_threshold() {
+        EventBusMetrics.SlowSubscriberListener listener = mock(EventBusMetrics.SlowSubscriberListener.class);
+        metrics.addSlowSubscriberListener(listener);
+        eventBus.setMetrics(metrics);
+        eventBus.register(new FastSubscriber());
+        eventBus.register(new SlowSubscriber());
+
+        eventBus.post(new Event());
+        eventBus.post(new Event());
+
+        verify(listener, times(2)).onSlowSubscriber(eq(SlowSubscriber.class), eq(Event.class), anyLong());
+        verify(listener, never()).onSlowSubscriber(eq(FastSubscriber.class), eq(Event.class), anyLong());
+
+        List<EventBusMetrics.SlowSubscriber> slow = metrics.snapshot().getSlowSubscribers();
+        Assert.assertEquals(1, slow.size());
+        Assert.assertEquals(SlowSubscriber.class, slow.get(0).getSubscriberClass());
+        Assert.assertEquals(Event.class, slow.get(0).getEventType());
+        Assert.assertEquals(2, slow.get(0).getSlowCount());
+        Assert.assertTrue(slow.get(0).getMaxNanos() >= 20000000);
+
+        String log = metrics.snapshot().toString();
+        Assert.assertTrue(log.contains(Event.class.getName()));
+        Assert.assertTrue(log.contains(SlowSubscriber.class.getName()));
+    }
+
+    @Test
+    public void should_clear_numbers_on_reset() {
+        eventBus.setMetrics(metrics);
+        eventBus.register(new SlowSubscriber());
+        eventBus.post(new Event());
+
+        metrics.reset();
+
+        Assert.assertTrue(metrics.snapshot().getEventStats().isEmpty());
+        Assert.assertTrue(metrics.snapshot().getSlowSubscribers().isEmpty());
+    }
+
+    private static EventBusMetrics.EventStats find(List<EventBusMetrics.EventStats> stats, Class<?> eventClass) {
+        for (EventBusMetrics.EventStats s : stats) {
+            if (s.getEventClass() == eventClass) {
+                return s;
+            }
+        }
+        throw new AssertionError("No stats of " + eventClass);
+    }
+}
@@ -18,6 +18,7 @@ package com.shipdream.lib.android.mvc;
 
 import com.shipdream.lib.android.mvc.event.bus.EventBus;
 import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
+import com.shipdream.lib.android.mvc.event.bus.internal.EventBusImpl;
 import com.shipdream.lib.poke.Provides;
 import com.shipdream.lib.poke.exception.ProvideException;
 import com.shipdream.lib.poke.exception.ProviderConflictException;
@@ -100,6 +101,39 @@ class EventRegister {
         }
     }
 
+    /**
+     * Pause event bus for views while the view is off screen. Events to the view are held and
+     * only the latest of each kind is replayed by {@link #resumeEventBuses()}.
+     */
+    void pauseEventBuses() {
+        if (eventsRegistered) {
+            if (eventBusV instanceof EventBusImpl) {
+                ((EventBusImpl) eventBusV).pause(androidComponent);
+                logger.trace("||Event2V bus paused for view - '{}'.",
+                        androidComponent.getClass().getSimpleName());
+            } else {
+                logger.trace("!Event2V bus {} can't pause view - '{}'.",
+                        eventBusV.getClass().getSimpleName(), androidComponent.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Resume event bus for views paused by {@link #pauseEventBuses()} and replay the held events.
+     */
+    void resumeEventBuses() {
+        if (eventsRegistered) {
+            if (eventBusV instanceof EventBusImpl) {
+                ((EventBusImpl) eventBusV).resume(androidComponent);
+                logger.trace(">Event2V bus resumed for view - '{}'.",
+                        androidComponent.getClass().getSimpleName());
+            } else {
+                logger.trace("!Event2V bus {} can't resume view - '{}'.",
+                        eventBusV.getClass().getSimpleName(), androidComponent.getClass().getSimpleName());
+            }
+        }
+    }
+
     void postEvent2V(final Object event) {
         eventBusV.post(event);
     }
@@ -24,6 +24,7 @@ import android.support.v7.app.AppCompatDialogFragment;
 import com.shipdream.lib.android.mvc.event.bus.EventBus;
 import com.shipdream.lib.android.mvc.event.bus.annotation.EventBusV;
 import com.shipdream.lib.poke.Graph;
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.exception.PokeException;
 import com.shipdream.lib.poke.util.ReflectUtils;
 
@@ -46,6 +47,7 @@ public abstract class MvcDialog<CONTROLLER extends Controller> extends AppCompat
     protected Logger logger = LoggerFactory.getLogger(getClass());
     protected CONTROLLER controller;
     protected abstract Class<CONTROLLER> getControllerClass();
+    private InstanceHandle<CONTROLLER> controllerHandle;
     private Graph.Monitor graphMonitor;
 
     /**
@@ -76,7 +78,7 @@ public abstract class MvcDialog<CONTROLLER extends Controller> extends AppCompat
         graphMonitor = new Graph.Monitor() {
             @Override
             public void onInject(Object target) {
-                if (controller != null && target == MvcDialog.this) {
+                if (controller != null) {
                     controller.view = MvcDialog.this;
                 }
             }
@@ -85,14 +87,15 @@ public abstract class MvcDialog<CONTROLLER extends Controller> extends AppCompat
             public void onRelease(Object target) {
             }
         };
-        Mvc.graph().registerMonitor(graphMonitor);
+        Mvc.graph().registerMonitor(this, graphMonitor);
 
         if (getParentFragment() == null) {
             setRetainInstance(true);
         }
 
         try {
-            controller = Mvc.graph().reference(getControllerClass(), null);
+            controllerHandle = Mvc.graph().referenceHandle(getControllerClass(), null);
+            controller = controllerHandle.get();
         } catch (PokeException e) {
             logger.error(e.getMessage(), e);
         }
@@ -116,13 +119,12 @@ public abstract class MvcDialog<CONTROLLER extends Controller> extends AppCompat
     @Override
     public void onDestroy() {
         super.onDestroy();
-        Mvc.graph().unregisterMonitor(graphMonitor);
+        Mvc.graph().unregisterMonitor(this, graphMonitor);
         eventBusV.register(this);
         Mvc.graph().release(this);
-        try {
-            Mvc.graph().dereference(controller, getControllerClass(), null);
-        } catch (PokeException e) {
-            logger.error(e.getMessage(), e);
+        if (controllerHandle != null) {
+            controllerHandle.close();
+            controllerHandle = null;
         }
     }
 
@@ -25,11 +25,8 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.shipdream.lib.poke.Graph;
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.exception.PokeException;
-import com.shipdream.lib.poke.exception.ProviderMissingException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -67,6 +64,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
     private Object newInstanceChecker;
     boolean isStateManagedByRootDelegateFragment;
     protected CONTROLLER controller;
+    private InstanceHandle<CONTROLLER> controllerHandle;
     private Graph.Monitor graphMonitor;
 
     /**
@@ -112,7 +110,8 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
         if (!dependenciesInjected) {
             if (getControllerClass() != null) {
                 try {
-                    controller = Mvc.graph().reference(getControllerClass(), null);
+                    controllerHandle = Mvc.graph().referenceHandle(getControllerClass(), null);
+                    controller = controllerHandle.get();
                 } catch (PokeException e) {
                     throw new IllegalStateException("Unable to inject "
                             + getControllerClass().getName() + ".\n" + e.getMessage(), e);
@@ -126,14 +125,9 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
 
     private void releaseDependencies() {
         if (dependenciesInjected) {
-            if (getControllerClass() != null) {
-                try {
-                    Mvc.graph().dereference(controller, getControllerClass(), null);
-                } catch (ProviderMissingException e) {
-                    //should never happen
-                    Logger logger = LoggerFactory.getLogger(getClass());
-                    logger.warn("Failed to dereference controller " + getControllerClass().getName(), e);
-                }
+            if (controllerHandle != null) {
+                controllerHandle.close();
+                controllerHandle = null;
             }
 
             Mvc.graph().release(this);
@@ -155,7 +149,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
         graphMonitor = new Graph.Monitor() {
             @Override
             public void onInject(Object target) {
-                if (controller != null && target == MvcFragment.this) {
+                if (controller != null) {
                     controller.view = MvcFragment.this;
                 }
             }
@@ -164,7 +158,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
             public void onRelease(Object target) {
             }
         };
-        Mvc.graph().registerMonitor(graphMonitor);
+        Mvc.graph().registerMonitor(this, graphMonitor);
 
         eventRegister = new EventRegister(this);
 
@@ -307,6 +301,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
     @Override
     public void onResume() {
         super.onResume();
+        eventRegister.resumeEventBuses();
         checkWhetherReturnFromForeground();
         if (controller != null) {
             controller.onResume();
@@ -336,6 +331,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
      * back stack.
      */
     protected void onPushToBackStack() {
+        eventRegister.pauseEventBuses();
         if (controller != null) {
             controller.onPushToBackStack();
         }
@@ -357,6 +353,7 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
      * </p>
      */
     protected void onPoppedOutToFront() {
+        eventRegister.resumeEventBuses();
         if (controller != null) {
             controller.onPoppedOutToFront();
         }
@@ -425,21 +422,27 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
     @Override
     public void onPause() {
         super.onPause();
+        //Not paused here since a paused fragment may still be visible, e.g. behind a dialog
         fragmentComesBackFromBackground = true;
         if (controller != null) {
             controller.onPause();
         }
     }
 
+    /**
+     * The view stays registered to the event bus for views but paused while its view is destroyed,
+     * e.g. on back stack, so events posted meanwhile are replayed, conflated, once the fragment
+     * resumes with a new view. It's unregistered in {@link #onDestroy()}.
+     */
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        eventRegister.unregisterEventBuses();
+        eventRegister.pauseEventBuses();
     }
 
     /**
      * Called when the fragment is no longer in use. This is called after onStop() and before onDetach().
-     * Event2C bus will be unregistered in the method.
+     * Event2V bus will be unregistered in the method.
      * <p>
      * <p><b>Note that, when a new fragment to create and pushes this fragment to back stack,
      * onDestroy of this fragment will NOT be called. This method will be called until this fragment
@@ -451,7 +454,8 @@ public abstract class MvcFragment<CONTROLLER extends FragmentController> extends
 
         releaseDependencies();
 
-        Mvc.graph().unregisterMonitor(graphMonitor);
+        Mvc.graph().unregisterMonitor(this, graphMonitor);
+        eventRegister.unregisterEventBuses();
         eventRegister = null;
     }
 
@@ -19,13 +19,11 @@ package com.shipdream.lib.android.mvc;
 import android.app.Service;
 
 import com.shipdream.lib.poke.Graph;
+import com.shipdream.lib.poke.InstanceHandle;
 import com.shipdream.lib.poke.exception.CircularDependenciesException;
 import com.shipdream.lib.poke.exception.ProvideException;
 import com.shipdream.lib.poke.exception.ProviderMissingException;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 /**
  * Android service can be thought as a kind of view sitting on top and driven by controller which
  * manage the state of the app.
@@ -33,6 +31,7 @@ import org.slf4j.LoggerFactory;
 public abstract class MvcService<CONTROLLER extends Controller> extends Service implements UiView {
     private EventRegister eventRegister;
     protected CONTROLLER controller;
+    private InstanceHandle<CONTROLLER> controllerHandle;
     private Graph.Monitor graphMonitor;
 
     /**
@@ -51,7 +50,7 @@ public abstract class MvcService<CONTROLLER extends Controller> extends Service
         graphMonitor = new Graph.Monitor() {
             @Override
             public void onInject(Object target) {
-                if (controller != null && target == MvcService.this) {
+                if (controller != null) {
                     controller.view = MvcService.this;
                 }
             }
@@ -61,11 +60,12 @@ public abstract class MvcService<CONTROLLER extends Controller> extends Service
 
             }
         };
-        Mvc.graph().registerMonitor(graphMonitor);
+        Mvc.graph().registerMonitor(this, graphMonitor);
 
         if (getControllerClass() != null) {
             try {
-                controller = Mvc.graph().reference(getControllerClass(), null);
+                controllerHandle = Mvc.graph().referenceHandle(getControllerClass(), null);
+                controller = controllerHandle.get();
             } catch (CircularDependenciesException e) {
                 e.printStackTrace();
             } catch (ProvideException e) {
@@ -90,19 +90,14 @@ public abstract class MvcService<CONTROLLER extends Controller> extends Service
         super.onDestroy();
         eventRegister.unregisterEventBuses();
 
-        if (getControllerClass() != null) {
-            try {
-                Mvc.graph().dereference(controller, getControllerClass(), null);
-            } catch (ProviderMissingException e) {
-                //should never happen
-                Logger logger = LoggerFactory.getLogger(getClass());
-                logger.warn("Failed to dereference controller " + getControllerClass().getName(), e);
-            }
+        if (controllerHandle != null) {
+            controllerHandle.close();
+            controllerHandle = null;
         }
 
         Mvc.graph().release(this);
 
-        Mvc.graph().unregisterMonitor(graphMonitor);
+        Mvc.graph().unregisterMonitor(this, graphMonitor);
     }
 
     /**
@@ -54,13 +54,20 @@ class MvcStateKeeperHolder {
 
         Map<String, Object> cache = component.getCache();
 
-        for (String key : cache.keySet()) {
+        for (final String key : cache.keySet()) {
             Object v = cache.get(key);
             if (v != null && v instanceof Bean) {
-                Bean bean = (Bean) v;
+                final Bean bean = (Bean) v;
 
                 if (bean.modelType() != null) {
-                    stateKeeper.saveState(key, bean.getModel());
+                    //Beans in actor mode mutate their model on their lanes, so save it between
+                    //the tasks on the lane
+                    bean.runBetweenLaneTasks(new Runnable() {
+                        @Override
+                        public void run() {
+                            stateKeeper.saveState(key, bean.getModel());
+                        }
+                    });
                 }
             }
         }
@@ -91,11 +98,17 @@ class MvcStateKeeperHolder {
         for (String key : cache.keySet()) {
             Object v = cache.get(key);
             if (v instanceof Bean) {
-                Bean bean = (Bean) v;
+                final Bean bean = (Bean) v;
                 if (bean.modelType() != null) {
-                    Object model = stateKeeper.restoreState(key, bean.modelType());
-
-                    bean.restoreModel(model);
+                    final Object model = stateKeeper.restoreState(key, bean.modelType());
+
+                    bean.runBetweenLaneTasks(new Runnable() {
+                        @SuppressWarnings("unchecked")
+                        @Override
+                        public void run() {
+                            bean.restoreModel(model);
+                        }
+                    });
                 }
             }
         }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+import com.shipdream.lib.poke.exception.ProvideException;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>
+ * An injectable handle to an instance created in the background. When a field with type
+ * {@link Async} is injected, the graph schedules creating the instance of its type argument on the
+ * executor set by {@link Graph#setExecutor(Executor)} and returns immediately. The instance can be
+ * awaited by {@link #get()} or delivered to a {@link Callback} by {@link #then(Callback)}.
+ * </p>
+ *
+ * <pre>
+ *     class Screen {
+ *         &#64;Inject
+ *         private Async&lt;Database&gt; database;
+ *     }
+ * </pre>
+ *
+ * <p>
+ * The instance is referenced once it's created and dereferenced when the owner of the field is
+ * released. When the owner is a cached instance injected into several targets, the instance is
+ * dereferenced after all of them are released. If the owner is released before the creation
+ * finishes, the instance is dereferenced as soon as it's created and callbacks are not invoked.
+ * </p>
+ */
+public class Async<T> {
+    /**
+     * Callback invoked when the instance is ready. It's run by the executor set by
+     * {@link Graph#setCallbackExecutor(Executor)}, or on the thread finishing the creation if no
+     * callback executor is set.
+     */
+    public static abstract class Callback<T> {
+        /**
+         * Called when the instance is created and fully injected
+         * @param instance The instance
+         */
+        public abstract void onReady(T instance);
+
+        /**
+         * Called when the instance fails to be created
+         * @param exception The exception
+         */
+        public void onFailed(PokeException exception) {
+        }
+    }
+
+    private final Graph graph;
+    private final Class<T> type;
+    private final Annotation qualifier;
+    private final Class<? extends Annotation> injectAnnotation;
+
+    private InstanceHandle<T> handle;
+    private T instance;
+    private PokeException exception;
+    private boolean done;
+    private boolean released;
+    //Number of injections of the owner not released yet
+    private int owners = 1;
+    private List<Callback<T>> callbacks;
+
+    Async(Graph graph, Class<T> type, Annotation qualifier, Class<? extends Annotation> injectAnnotation) {
+        this.graph = graph;
+        this.type = type;
+        this.qualifier = qualifier;
+        this.injectAnnotation = injectAnnotation;
+    }
+
+    /**
+     * @return The type of the instance
+     */
+    public Class<T> type() {
+        return type;
+    }
+
+    /**
+     * @return Whether the creation has finished either successfully or with an exception
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Wait until the instance is created.
+     * @return The instance
+     * @throws InterruptedException Thrown when the waiting thread is interrupted
+     * @throws PokeException Thrown when the instance fails to be created
+     */
+    public synchronized T get() throws InterruptedException, PokeException {
+        while (!done) {
+            wait();
+        }
+        return result();
+    }
+
+    /**
+     * Wait until the instance is created for at most the given time.
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return The instance
+     * @throws InterruptedException Thrown when the waiting thread is interrupted
+     * @throws TimeoutException Thrown when the instance isn't created in time
+     * @throws PokeException Thrown when the instance fails to be created
+     */
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException, PokeException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException(String.format("Creating %s timed out", type.getName()));
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private T result() throws PokeException {
+        if (exception != null) {
+            throw exception;
+        }
+        return instance;
+    }
+
+    /**
+     * Deliver the instance to the callback when it's ready. If it's ready already, the callback is
+     * dispatched straight away.
+     * @param callback The callback
+     */
+    public void then(Callback<T> callback) {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            if (!done) {
+                if (callbacks == null) {
+                    callbacks = new ArrayList<>();
+                }
+                callbacks.add(callback);
+                return;
+            }
+        }
+        dispatch(callback);
+    }
+
+    /**
+     * Create the instance. Called on the graph's executor.
+     */
+    void create() {
+        synchronized (this) {
+            if (released) {
+                done = true;
+                notifyAll();
+                return;
+            }
+        }
+
+        InstanceHandle<T> created = null;
+        PokeException error = null;
+        try {
+            created = graph.referenceHandleUnlocked(type, qualifier, injectAnnotation);
+        } catch (PokeException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new ProvideException(String.format("Failed to create %s asynchronously",
+                    type.getName()), e);
+        }
+
+        List<Callback<T>> pending;
+        boolean releasedBeforeReady;
+        synchronized (this) {
+            handle = created;
+            instance = created == null ? null : created.get();
+            exception = error;
+            done = true;
+            releasedBeforeReady = released;
+            pending = callbacks;
+            callbacks = null;
+            notifyAll();
+        }
+
+        if (releasedBeforeReady) {
+            close(created);
+        } else if (pending != null) {
+            for (Callback<T> callback : pending) {
+                dispatch(callback);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the owner of the field has been released
+     */
+    synchronized boolean isReleased() {
+        return released;
+    }
+
+    /**
+     * Keep the instance for one more injection of the owner of the field. Called when a cached
+     * owner is injected into another target.
+     * @return false if it's been released so a new {@link Async} is needed
+     */
+    synchronized boolean retain() {
+        if (released) {
+            return false;
+        }
+        owners++;
+        return true;
+    }
+
+    /**
+     * Release the instance once all injections of the owner of the field are released. Called
+     * when the owner of the field is released.
+     */
+    void release() {
+        InstanceHandle<T> created;
+        synchronized (this) {
+            if (released || --owners > 0) {
+                return;
+            }
+            released = true;
+            callbacks = null;
+            if (!done) {
+                //The instance will be dereferenced once the creation finishes
+                return;
+            }
+            created = handle;
+        }
+        close(created);
+    }
+
+    private void close(InstanceHandle<T> created) {
+        if (created != null) {
+            created.close();
+        }
+    }
+
+    private void dispatch(final Callback<T> callback) {
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (Async.this) {
+                    if (released) {
+                        return;
+                    }
+                }
+                if (exception != null) {
+                    callback.onFailed(exception);
+                } else {
+                    callback.onReady(instance);
+                }
+            }
+        };
+
+        Executor callbackExecutor = graph.getCallbackExecutor();
+        if (callbackExecutor == null) {
+            runnable.run();
+        } else {
+            callbackExecutor.execute(runnable);
+        }
+    }
+}
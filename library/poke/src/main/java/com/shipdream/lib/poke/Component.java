@@ -61,6 +61,12 @@ import javax.inject.Qualifier;
  * {@link #attach(Component, boolean)} with true as the second parameter. Then the last attached
  * component will a conflicting class type and qualifier will be used until it's {@link #detach(Component)}
  * </p>
+ *
+ * <p>
+ * Child components of features that may never be used can be attached by
+ * {@link #attachLazily(LazyComponent)}. They are created and attached on the first time a provider
+ * they declare is looked up.
+ * </p>
  */
 public class Component {
     /**
@@ -89,6 +95,15 @@ public class Component {
     protected final Map<String, Provider> providers = new HashMap<>();
     private Component parentComponent;
     private List<Component> childrenComponents;
+    private List<LazyComponent> lazyChildren;
+    //Incremented whenever the component locator changes so resolved providers can be reused safely
+    int revision = 0;
+    //Frozen providers shared with a GraphTemplate. They are copied into this component on first
+    //lookup so forking a template doesn't copy any registration up front
+    private Map<String, Provider> templateProviders;
+    //Keys of template providers which have been copied or unregistered from this component
+    private Set<String> consumedTemplateKeys;
+    private int instancePoolCapacity;
 
     /**
      * Construct an unnamed component with a cache. See {@link #Component(String, boolean)}
@@ -146,10 +161,37 @@ public class Component {
         if (scopeCache == null) {
             return null;
         } else {
-            return scopeCache.instances;
+            return scopeCache.asMap();
+        }
+    }
+
+    /**
+     * Recycle released instances of the providers registered to this component when the
+     * component doesn't cache instances. Each provider gets its own {@link InstancePool} keeping
+     * at most the given number of {@link Resettable} instances. It applies to providers already
+     * registered and registered later, unless they have had a pool already.
+     * @param capacity Maximum number of instances kept for each provider. 0 to stop adding pools
+     *                 to providers registered later.
+     */
+    public void setInstancePoolCapacity(int capacity) {
+        this.instancePoolCapacity = capacity;
+        if (scopeCache == null && capacity > 0) {
+            for (Provider provider : providers.values()) {
+                if (provider.getInstancePool() == null) {
+                    provider.setInstancePool(new InstancePool(capacity));
+                }
+            }
         }
     }
 
+    /**
+     * @return Maximum number of instances kept for each provider registered to this component. 0
+     * if instances are not recycled.
+     */
+    public int getInstancePoolCapacity() {
+        return instancePoolCapacity;
+    }
+
     /**
      * @return The parent component
      */
@@ -216,12 +258,13 @@ public class Component {
 
         targetComponent.providers.remove(key);
         if (targetComponent.scopeCache != null) {
-            targetComponent.scopeCache.removeInstance(PokeHelper.makeProviderKey(type, qualifier));
+            targetComponent.scopeCache.freeSlot(key);
         }
 
         Component root = getRootComponent();
         //Remove it from root component's locator
         root.componentLocator.remove(key);
+        root.revision++;
 
         return this;
     }
@@ -329,6 +372,9 @@ public class Component {
             //Child component was a root component
         }
 
+        //Only root components serve template providers lazily so take them all before merging
+        childComponent.materializeTemplateProviders();
+
         Set<String> addedKeys = new HashSet<>();
         Iterator<Map.Entry<String, Component>> iterator = childComponent.componentLocator.entrySet().iterator();
         while(iterator.hasNext()) {
@@ -336,7 +382,11 @@ public class Component {
             String key = entry.getKey();
 
             //check conflict if override is not allowed
-            if (root.componentLocator.containsKey(key)) {
+            if (allowOverride && !root.componentLocator.containsKey(key)) {
+                //The overridden provider needs to be in the tree to be restored after detaching
+                root.materializeTemplateProvider(key);
+            }
+            if (root.componentLocator.containsKey(key) || root.hasTemplateProvider(key)) {
                 if (!allowOverride) {
                     for (String k : addedKeys) {
                         root.componentLocator.remove(k);
@@ -366,6 +416,8 @@ public class Component {
 
         //Update tree nodes
         childComponent.parentComponent = this;
+        childComponent.revision++;
+        root.revision++;
 
         if (childrenComponents == null) {
             childrenComponents = new ArrayList<>();
@@ -373,6 +425,66 @@ public class Component {
         childrenComponents.add(childComponent);
     }
 
+    /**
+     * Attach a child component lazily. The child component will be created by
+     * {@link LazyComponent#create()} and attached to this component when a provider of a type the
+     * lazy component declares can't be found in the component tree for the first time.
+     * @param lazyChild The lazy child component
+     */
+    public void attachLazily(@NotNull LazyComponent lazyChild) {
+        if (lazyChildren == null) {
+            lazyChildren = new ArrayList<>();
+        }
+        lazyChildren.add(lazyChild);
+    }
+
+    /**
+     * Remove a lazy child component which hasn't been created yet.
+     * @param lazyChild The lazy child component
+     * @return true if the lazy child was pending and has been removed
+     */
+    public boolean detachLazily(@NotNull LazyComponent lazyChild) {
+        if (lazyChildren != null && lazyChildren.remove(lazyChild)) {
+            if (lazyChildren.isEmpty()) {
+                lazyChildren = null;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Find a pending lazy child component declaring the given type in this component and its
+     * descendants. If found, create it and attach it to the component it was registered to.
+     * @return true if a lazy child component has been attached
+     */
+    private boolean attachLazyChild(Class type) throws ProviderMissingException {
+        if (lazyChildren != null) {
+            for (LazyComponent lazyChild : lazyChildren) {
+                if (lazyChild.canProvide(type)) {
+                    try {
+                        attach(lazyChild.create(), lazyChild.isOverrideAllowed());
+                    } catch (PokeException e) {
+                        //Keep the lazy child pending so the next lookup can try again
+                        throw new ProviderMissingException(String.format("Failed to attach lazy " +
+                                "component for type %s: %s", type.getName(), e.getMessage()), e);
+                    }
+                    detachLazily(lazyChild);
+                    return true;
+                }
+            }
+        }
+
+        if (childrenComponents != null) {
+            for (int i = 0; i < childrenComponents.size(); i++) {
+                if (childrenComponents.get(i).attachLazyChild(type)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private String getComponentId() {
         if (name != null) {
             return name;
@@ -425,6 +537,8 @@ public class Component {
         //Disband the child component locator from the root component and return the keys to child
         //component itself
         Component root = getRootComponent();
+        childComponent.revision++;
+        root.revision++;
         for (String key : childComponent.providers.keySet()) {
             //Find all keys in itself
             childComponent.componentLocator.put(key, childComponent);
@@ -474,6 +588,85 @@ public class Component {
         }
     }
 
+    /**
+     * Let this component serve the frozen providers of a {@link GraphTemplate}. Each provider is
+     * copied into this component by {@link Provider#copy()} when it's looked up for the first
+     * time.
+     * @param providers The frozen providers keyed by their provider keys
+     */
+    void inheritTemplate(Map<String, Provider> providers) {
+        templateProviders = providers;
+        consumedTemplateKeys = null;
+        revision++;
+    }
+
+    /**
+     * @return Whether the template this component inherits has a provider of the given key which
+     * hasn't been copied into the component yet
+     */
+    private boolean hasTemplateProvider(String key) {
+        return templateProviders != null && templateProviders.containsKey(key)
+                && (consumedTemplateKeys == null || !consumedTemplateKeys.contains(key));
+    }
+
+    /**
+     * Copy the template provider of the given key into this component
+     * @return true if the provider has been copied and registered
+     */
+    private boolean materializeTemplateProvider(String key) {
+        if (!hasTemplateProvider(key)) {
+            return false;
+        }
+
+        if (consumedTemplateKeys == null) {
+            consumedTemplateKeys = new HashSet<>();
+        }
+        consumedTemplateKeys.add(key);
+        try {
+            //Register through the overridable method so subclasses see template providers as well
+            register(templateProviders.get(key).copy());
+        } catch (ProviderConflictException e) {
+            //Should not happen since the key is not registered in the tree
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return true;
+    }
+
+    private void materializeTemplateProviders() {
+        if (templateProviders != null) {
+            for (String key : templateProviders.keySet()) {
+                materializeTemplateProvider(key);
+            }
+            templateProviders = null;
+            consumedTemplateKeys = null;
+        }
+    }
+
+    /**
+     * Collect the providers can be found in the component tree of this root component including
+     * template providers not copied yet
+     * @return The providers keyed by their provider keys
+     */
+    Map<String, Provider> collectProviders() {
+        Map<String, Provider> all = new HashMap<>();
+        if (templateProviders != null) {
+            for (Map.Entry<String, Provider> entry : templateProviders.entrySet()) {
+                if (hasTemplateProvider(entry.getKey())) {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Map.Entry<String, Component> entry : componentLocator.entrySet()) {
+            all.put(entry.getKey(), entry.getValue().providers.get(entry.getKey()));
+        }
+        return all;
+    }
+
+    boolean isEmpty() {
+        return providers.isEmpty() && componentLocator.isEmpty() && templateProviders == null
+                && childrenComponents == null && lazyChildren == null;
+    }
+
     private Component getRootComponent() {
         Component root = this;
         while (root.parentComponent != null) {
@@ -492,11 +685,20 @@ public class Component {
      */
     protected <T> Provider<T> findProvider(Class<T> type, Annotation qualifier) throws ProviderMissingException {
         String key = PokeHelper.makeProviderKey(type, qualifier);
-        Component targetComponent = getRootComponent().componentLocator.get(key);
+        Component root = getRootComponent();
+        Component targetComponent = root.componentLocator.get(key);
 
         Provider provider = null;
         if (targetComponent != null) {
             provider = targetComponent.providers.get(key);
+        } else if (root.materializeTemplateProvider(key)) {
+            provider = root.providers.get(key);
+        }
+        while (provider == null && root.attachLazyChild(type)) {
+            targetComponent = root.componentLocator.get(key);
+            if (targetComponent != null) {
+                provider = targetComponent.providers.get(key);
+            }
         }
         if (provider == null) {
             String msg = String.format("Provider(%s) cannot be found", key);
@@ -515,14 +717,18 @@ public class Component {
      */
     private <T> void addProvider(@NotNull Provider<T> provider)
             throws ProviderConflictException {
-        Class<T> type = provider.type();
-        Annotation qualifier = provider.getQualifier();
-        String key = PokeHelper.makeProviderKey(type, qualifier);
+        String key = provider.key();
 
         addNewKeyToComponent(key, this);
 
         provider.setComponent(this);
         providers.put(key, provider);
+        if (scopeCache != null) {
+            //Assign the slot up front so cache hits never need to hash the key
+            scopeCache.slotOf(provider);
+        } else if (instancePoolCapacity > 0 && provider.getInstancePool() == null) {
+            provider.setInstancePool(new InstancePool<T>(instancePoolCapacity));
+        }
     }
 
     /**
@@ -535,13 +741,13 @@ public class Component {
     private void addNewKeyToComponent(String key, Component component) throws ProviderConflictException {
         Component root = getRootComponent();
 
-        if (componentLocator.keySet().contains(key)) {
+        if (componentLocator.keySet().contains(key) || hasTemplateProvider(key)) {
             String msg = String.format("Type %s has already been registered " +
                     "in this component(%s).", key, getComponentId());
             throw new ProviderConflictException(msg);
         }
 
-        if (root != this && root.componentLocator.keySet().contains(key)) {
+        if (root != this && (root.componentLocator.keySet().contains(key) || root.hasTemplateProvider(key))) {
             String msg = String.format("\nClass type %s cannot be registered to component(%s)\nsince it's  " +
                     "already been registered in its root component(%s).\n\nYou can prepare a child " +
                     "component and register providers to it first. Then attach the child component\nto the " +
@@ -552,6 +758,7 @@ public class Component {
 
         //Only put it to root component's locator
         root.componentLocator.put(key, component);
+        root.revision++;
     }
 
     private void registerProvides(final Object providerHolder, final Method method)
@@ -596,6 +803,12 @@ public class Component {
             this.method = method;
         }
 
+        @Override
+        protected Provider copy() {
+            //The copy shares the provider holder
+            return new MethodProvider(type(), getQualifier(), null, providerHolder, method);
+        }
+
         @Override
         protected Object createInstance() throws ProvideException {
             try {
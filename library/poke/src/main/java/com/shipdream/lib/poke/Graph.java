@@ -24,18 +24,26 @@ import com.shipdream.lib.poke.util.ReflectUtils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
 
 /**
  * A graph manages how to inject dependencies to target objects.
+ *
+ * <p>Injection, release, reference and dereference are synchronized on the graph so instances of
+ * {@link Async} fields can be created on the graph's {@link #setExecutor(Executor) executor}. The
+ * new instances of {@link Async} fields are constructed without holding the lock.</p>
  */
 public class Graph {
     public static class IllegalRootComponentException extends PokeException {
@@ -45,11 +53,25 @@ public class Graph {
     }
 
     private List<Monitor> monitors;
+    //Monitors watching a particular target only, indexed by the identity of the target
+    private final Map<Object, List<Monitor>> targetMonitors = new IdentityHashMap<>();
     private String revisitedNode = null;
     private Set<String> visitedInjectNodes = new LinkedHashSet<>();
     private Map<Object, Map<String, Set<String>>> visitedFields = new HashMap<>();
     private List<Provider.DereferenceListener> dereferenceListeners;
     private List<Provider.DisposeListener> disposeListeners;
+    private final Map<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> injectionPlans = new HashMap<>();
+    //Frozen plans shared with other graphs forked from the same GraphTemplate
+    Map<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> templatePlans;
+    private List<Async<?>> pendingAsyncs;
+    private Executor executor;
+    private Executor callbackExecutor;
+    private boolean disposalBatched;
+    private Executor disposalExecutor;
+    private List<Disposal> pendingDisposals;
+    private int releaseDepth;
+    private boolean flushingDisposals;
+    private boolean disposalFlushScheduled;
 
     private Component rootComponent;
 
@@ -89,6 +111,53 @@ public class Graph {
         }
     }
 
+    /**
+     * Register {@link Monitor} which will be called only when the graph is about to inject or
+     * release the given target. Different from {@link #registerMonitor(Monitor)}, injecting or
+     * releasing other objects won't call the monitor so its cost doesn't grow with the number of
+     * registered monitors.
+     *
+     * <p>The target is held strongly until it's unregistered by
+     * {@link #unregisterMonitor(Object, Monitor)} or {@link #unregisterMonitors(Object)}.</p>
+     *
+     * @param target The object to watch. Targets are matched by identity.
+     * @param monitor The monitor
+     */
+    public synchronized void registerMonitor(Object target, Monitor monitor) {
+        List<Monitor> list = targetMonitors.get(target);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            targetMonitors.put(target, list);
+        }
+        list.add(monitor);
+    }
+
+    /**
+     * Unregister {@link Monitor} registered by {@link #registerMonitor(Object, Monitor)}
+     *
+     * @param target The object watched by the monitor
+     * @param monitor The monitor
+     */
+    public synchronized void unregisterMonitor(Object target, Monitor monitor) {
+        List<Monitor> list = targetMonitors.get(target);
+        if (list != null) {
+            list.remove(monitor);
+            if (list.isEmpty()) {
+                targetMonitors.remove(target);
+            }
+        }
+    }
+
+    /**
+     * Unregister all {@link Monitor}s registered by {@link #registerMonitor(Object, Monitor)} for
+     * the given target
+     *
+     * @param target The object watched by the monitors
+     */
+    public synchronized void unregisterMonitors(Object target) {
+        targetMonitors.remove(target);
+    }
+
     /**
      * Add {@link Component} to the graph.
      *
@@ -105,6 +174,152 @@ public class Graph {
         return rootComponent;
     }
 
+    /**
+     * @return A snapshot of the injection plans this graph has compiled including the ones
+     * inherited from the template it was forked from
+     */
+    synchronized Map<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> snapshotInjectionPlans() {
+        Map<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> snapshot = new HashMap<>();
+        if (templatePlans != null) {
+            for (Map.Entry<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> e : templatePlans.entrySet()) {
+                snapshot.put(e.getKey(), new HashMap<>(e.getValue()));
+            }
+        }
+        for (Map.Entry<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> e : injectionPlans.entrySet()) {
+            Map<Class<?>, InjectionPlan> plans = snapshot.get(e.getKey());
+            if (plans == null) {
+                plans = new HashMap<>();
+                snapshot.put(e.getKey(), plans);
+            }
+            plans.putAll(e.getValue());
+        }
+        for (Map.Entry<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> e : snapshot.entrySet()) {
+            e.setValue(Collections.unmodifiableMap(e.getValue()));
+        }
+        return Collections.unmodifiableMap(snapshot);
+    }
+
+    /**
+     * Set the executor to create instances injected into {@link Async} fields. When it's null,
+     * which is the default, the instances are created on the injecting thread right after the
+     * injection completes.
+     *
+     * @param executor The executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return The executor to create instances injected into {@link Async} fields
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Set the executor to run {@link Async.Callback}s. When it's null the callbacks are run on
+     * the thread finishing creating the instance.
+     *
+     * @param callbackExecutor The executor
+     */
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * @return The executor to run {@link Async.Callback}s
+     */
+    public Executor getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    /**
+     * Set whether {@link Provider.DereferenceListener}s and {@link Provider.DisposeListener}s are
+     * called in a batch. By default they are called synchronously in the middle of releasing an
+     * object for every released instance. When batched, the notifications are queued and
+     * delivered after the outermost {@link #release(Object, Class)} or
+     * {@link #dereference(Object, Class, Annotation, Class)} completes, or by the
+     * {@link #setDisposalExecutor(Executor) disposal executor} if one is set.
+     *
+     * <p>Ordering of batched notifications is the same as the unbatched ones:</p>
+     * <ul>
+     *     <li>Instances are notified in the order they are released, which means nested
+     *     dependencies are notified before the objects holding them</li>
+     *     <li>For each instance, all {@link Provider.DereferenceListener}s are called before
+     *     {@link Provider.DisposeListener}s</li>
+     *     <li>Whether an instance is disposed is decided when it's released, so instances
+     *     referenced again before the batch is delivered are still disposed as they were</li>
+     *     <li>Notifications queued by listeners while a batch is being delivered are delivered
+     *     at the end of the same batch</li>
+     * </ul>
+     *
+     * <p>Turning batching off delivers pending notifications straight away.</p>
+     *
+     * @param batched Whether to batch disposal notifications
+     */
+    public synchronized void setDisposalBatched(boolean batched) {
+        this.disposalBatched = batched;
+        if (!batched) {
+            flushDisposals();
+        }
+    }
+
+    /**
+     * @return Whether disposal notifications are batched
+     */
+    public synchronized boolean isDisposalBatched() {
+        return disposalBatched;
+    }
+
+    /**
+     * Set the executor to deliver batched disposal notifications, e.g. an executor running tasks
+     * when the UI thread is idle. A single flush is submitted for all notifications queued before
+     * it runs. When it's null, which is the default, batches are delivered once the outermost
+     * release completes. It only takes effect when {@link #setDisposalBatched(boolean)} is on.
+     *
+     * @param disposalExecutor The executor
+     */
+    public synchronized void setDisposalExecutor(Executor disposalExecutor) {
+        this.disposalExecutor = disposalExecutor;
+    }
+
+    /**
+     * @return The executor to deliver batched disposal notifications
+     */
+    public synchronized Executor getDisposalExecutor() {
+        return disposalExecutor;
+    }
+
+    /**
+     * @return How many released instances are waiting for their disposal notifications
+     */
+    public synchronized int getPendingDisposalCount() {
+        return pendingDisposals == null ? 0 : pendingDisposals.size();
+    }
+
+    /**
+     * Deliver queued disposal notifications straight away. It does nothing when nothing is queued.
+     */
+    public synchronized void flushDisposals() {
+        disposalFlushScheduled = false;
+        if (flushingDisposals || pendingDisposals == null) {
+            return;
+        }
+
+        flushingDisposals = true;
+        try {
+            //Listeners may release more objects which are appended and delivered in this loop
+            for (int i = 0; i < pendingDisposals.size(); i++) {
+                Disposal disposal = pendingDisposals.get(i);
+                notifyDereferenced(disposal.provider, disposal.instance, disposal.disposing);
+            }
+        } finally {
+            pendingDisposals = null;
+            flushingDisposals = false;
+        }
+    }
+
     /**
      * Register {@link Provider.DisposeListener} which will be called when either
      * <ul>
@@ -193,13 +408,15 @@ public class Graph {
     }
 
     /**
-     * Inject all fields annotated by the given injectAnnotation
+     * Inject all fields annotated by the given injectAnnotation. Injecting a target again before
+     * it's released only fills its fields which haven't been injected, so instances are neither
+     * replaced nor retained twice.
      *
      * @param target           Whose fields will be injected
      * @param injectAnnotation Annotated which a field will be recognize
      * @throws ProvideException
      */
-    public void inject(Object target, Class<? extends Annotation> injectAnnotation)
+    public synchronized void inject(Object target, Class<? extends Annotation> injectAnnotation)
             throws ProvideException, ProviderMissingException, CircularDependenciesException {
         if (monitors != null) {
             int size = monitors.size();
@@ -207,10 +424,26 @@ public class Graph {
                 monitors.get(i).onInject(target);
             }
         }
-        doInject(target, null, null, null, injectAnnotation);
+        List<Monitor> ownMonitors = targetMonitors.get(target);
+        if (ownMonitors != null) {
+            for (int i = 0; i < ownMonitors.size(); i++) {
+                ownMonitors.get(i).onInject(target);
+            }
+        }
+        boolean injected = false;
+        try {
+            doInject(target, null, null, injectAnnotation);
+            injected = true;
+        } finally {
+            if (!injected) {
+                discardPendingAsyncs();
+            }
+        }
         visitedInjectNodes.clear();
         revisitedNode = null;
         visitedFields.clear();
+
+        startPendingAsyncs();
     }
 
     /**
@@ -328,9 +561,12 @@ public class Graph {
     public <T> void use(Class<T> type, Annotation qualifier,
                         Class<? extends Annotation> injectAnnotation, Consumer<T> consumer)
             throws ProvideException, CircularDependenciesException, ProviderMissingException {
-        T instance = reference(type, qualifier, injectAnnotation);
-        consumer.consume(instance);
-        dereference(instance, type, qualifier, injectAnnotation);
+        InstanceHandle<T> handle = referenceHandle(type, qualifier, injectAnnotation);
+        try {
+            consumer.consume(handle.get());
+        } finally {
+            handle.close();
+        }
     }
 
     private <T> Provider<T> findProvider(Class<T> type, Annotation qualifier) throws ProviderMissingException {
@@ -338,6 +574,43 @@ public class Graph {
         return provider;
     }
 
+    private Provider findProvider(InjectionPlan.Point point) throws ProviderMissingException {
+        Provider provider = point.cachedProvider(rootComponent);
+        if (provider == null) {
+            provider = findProvider(point.type, point.qualifier);
+            point.cacheProvider(rootComponent, provider);
+        }
+        return provider;
+    }
+
+    /**
+     * Get the injection plan of the given class. The plan is built on the first injection or
+     * release of an instance of the class and reused afterwards.
+     */
+    private InjectionPlan getInjectionPlan(Class<?> clazz, Class<? extends Annotation> injectAnnotation) {
+        if (templatePlans != null) {
+            Map<Class<?>, InjectionPlan> frozen = templatePlans.get(injectAnnotation);
+            if (frozen != null) {
+                InjectionPlan plan = frozen.get(clazz);
+                if (plan != null) {
+                    return plan;
+                }
+            }
+        }
+
+        Map<Class<?>, InjectionPlan> plans = injectionPlans.get(injectAnnotation);
+        if (plans == null) {
+            plans = new HashMap<>();
+            injectionPlans.put(injectAnnotation, plans);
+        }
+        InjectionPlan plan = plans.get(clazz);
+        if (plan == null) {
+            plan = new InjectionPlan(clazz, injectAnnotation);
+            plans.put(clazz, plan);
+        }
+        return plan;
+    }
+
     /**
      * Reference an injectable object and retain it. Use
      * {@link #dereference(Object, Class, Annotation, Class)} to dereference it when it's not used
@@ -348,11 +621,95 @@ public class Graph {
      * @param injectAnnotation the inject annotation
      * @return
      */
-    public <T> T reference(Class<T> type, Annotation qualifier, Class<? extends Annotation> injectAnnotation)
+    public synchronized <T> T reference(Class<T> type, Annotation qualifier, Class<? extends Annotation> injectAnnotation)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        return reference(findProvider(type, qualifier), injectAnnotation);
+    }
+
+    /**
+     * Same as {@link #reference(Class, Annotation, Class)} but returns a handle holding the
+     * resolved provider. Closing the handle dereferences the instance without looking up the
+     * provider again.
+     *
+     * @param type             the type of the object
+     * @param qualifier        the qualifier
+     * @param injectAnnotation the inject annotation
+     * @return The handle of the referenced instance
+     */
+    public synchronized <T> InstanceHandle<T> referenceHandle(Class<T> type, Annotation qualifier,
+                                                              Class<? extends Annotation> injectAnnotation)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        return referenceHandle(type, qualifier, injectAnnotation, null);
+    }
+
+    /**
+     * Same as {@link #referenceHandle(Class, Annotation, Class)} but closing the handle
+     * dereferences the instance on the given executor. Callers confining the graph to a thread
+     * use it so handles closed on other threads follow the same threading rule as referencing.
+     *
+     * @param type             the type of the object
+     * @param qualifier        the qualifier
+     * @param injectAnnotation the inject annotation
+     * @param closeExecutor    the executor to dereference the instance when the handle is closed.
+     *                         Null to dereference it on the thread closing the handle
+     * @return The handle of the referenced instance
+     */
+    public synchronized <T> InstanceHandle<T> referenceHandle(Class<T> type, Annotation qualifier,
+                                                              Class<? extends Annotation> injectAnnotation,
+                                                              Executor closeExecutor)
             throws ProviderMissingException, ProvideException, CircularDependenciesException {
         Provider<T> provider = findProvider(type, qualifier);
-        T instance = provider.get();
-        doInject(instance, null, type, qualifier, injectAnnotation);
+        T instance = reference(provider, injectAnnotation);
+        return new InstanceHandle<>(this, provider, instance, injectAnnotation, closeExecutor);
+    }
+
+    /**
+     * Same as {@link #referenceHandle(Class, Annotation, Class)} but a new instance is constructed
+     * without holding the graph's lock, so a slow construction doesn't block injections on other
+     * threads. The provider is resolved, and the instance cached, injected and referenced, under
+     * the lock. Used to create instances of {@link Async} fields.
+     */
+    <T> InstanceHandle<T> referenceHandleUnlocked(Class<T> type, Annotation qualifier,
+                                                  Class<? extends Annotation> injectAnnotation)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        Provider<T> provider;
+        synchronized (this) {
+            provider = findProvider(type, qualifier);
+            if (provider.getCachedInstance() != null || provider.getInstancePool() != null) {
+                //Nothing expensive to construct
+                T instance = reference(provider, provider.get(), injectAnnotation);
+                return new InstanceHandle<>(this, provider, instance, injectAnnotation, null);
+            }
+        }
+
+        T created = provider.createInstance();
+
+        synchronized (this) {
+            if (findProvider(type, qualifier) != provider) {
+                //The provider has been replaced while constructing, so drop what's constructed
+                return referenceHandle(type, qualifier, injectAnnotation);
+            }
+            T instance = reference(provider, provider.get(created), injectAnnotation);
+            return new InstanceHandle<>(this, provider, instance, injectAnnotation, null);
+        }
+    }
+
+    private <T> T reference(Provider<T> provider, Class<? extends Annotation> injectAnnotation)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        return reference(provider, provider.get(), injectAnnotation);
+    }
+
+    private <T> T reference(Provider<T> provider, T instance, Class<? extends Annotation> injectAnnotation)
+            throws ProviderMissingException, ProvideException, CircularDependenciesException {
+        boolean injected = false;
+        try {
+            doInject(instance, null, provider, injectAnnotation);
+            injected = true;
+        } finally {
+            if (!injected) {
+                discardPendingAsyncs();
+            }
+        }
         provider.retain();
         provider.notifyReferenced(provider, instance);
 
@@ -360,6 +717,8 @@ public class Graph {
         visitedFields.clear();
         visitedInjectNodes.clear();
 
+        startPendingAsyncs();
+
         return instance;
     }
 
@@ -372,25 +731,33 @@ public class Graph {
      * @param qualifier        the qualifier
      * @param injectAnnotation the inject annotation
      */
-    public <T> void dereference(T instance, Class<T> type, Annotation qualifier,
+    public synchronized <T> void dereference(T instance, Class<T> type, Annotation qualifier,
                                 Class<? extends Annotation> injectAnnotation) throws ProviderMissingException {
-        doRelease(instance, null, type, qualifier, injectAnnotation);
+        dereference(findProvider(type, qualifier), instance, injectAnnotation);
+    }
 
-        Provider<T> provider = findProvider(type, qualifier);
-        provider.release();
-        dereferenceProvider(provider, instance);
+    synchronized <T> void dereference(Provider<T> provider, T instance,
+                                      Class<? extends Annotation> injectAnnotation) throws ProviderMissingException {
+        releaseDepth++;
+        try {
+            doRelease(instance, null, provider, injectAnnotation);
+
+            provider.release();
+            dereferenceProvider(provider, instance);
+        } finally {
+            releaseDepth--;
+            onReleaseCompleted();
+        }
     }
 
     @SuppressWarnings("unchecked")
-    private void doInject(Object target, Field targetField, Class targetType, Annotation targetQualifier,
+    private void doInject(Object target, Field targetField, Provider targetProvider,
                           Class<? extends Annotation> injectAnnotation)
             throws ProvideException, ProviderMissingException, CircularDependenciesException {
         boolean circularDetected = false;
-        Provider targetProvider;
-        if (targetType != null) {
+        if (targetProvider != null) {
             //Nested injection
-            circularDetected = recordVisit(targetType, targetQualifier);
-            targetProvider = findProvider(targetType, targetQualifier);
+            circularDetected = recordVisit(targetProvider);
             Object cachedInstance = targetProvider.getCachedInstance();
             boolean infiniteCircularInjection = true;
             if (circularDetected) {
@@ -405,34 +772,48 @@ public class Graph {
         }
 
         if (!circularDetected && target != null) {
-            Class<?> clazz = target.getClass();
-            while (clazz != null) {
-                Field[] fields = clazz.getDeclaredFields();
-                for (Field field : fields) {
-                    if (field.isAnnotationPresent(injectAnnotation)) {
-                        Class fieldType = field.getType();
-                        Annotation fieldQualifier = ReflectUtils.findFirstQualifierInAnnotations(field);
-                        Provider provider = findProvider(fieldType, fieldQualifier);
-
-                        Object impl = provider.get();
-                        ReflectUtils.setField(target, field, impl);
-
-                        boolean visited = isFieldVisited(target, targetField, field);
-                        if (!visited) {
-                            doInject(impl, field, fieldType, fieldQualifier, injectAnnotation);
-                        }
+            InjectionPlan.Point[] points = getInjectionPlan(target.getClass(), injectAnnotation).points;
+            for (InjectionPlan.Point point : points) {
+                Field field = point.field;
+                boolean topLevel = targetProvider == null;
+                if (point.async) {
+                    //A cached instance shared by other targets keeps its Async and each of them
+                    //owns it until they are released
+                    Async<?> current = (Async<?>) ReflectUtils.getFieldValue(target, field);
+                    boolean kept = current != null
+                            && (topLevel ? !current.isReleased() : current.retain());
+                    if (!kept) {
+                        injectAsync(target, point, injectAnnotation);
+                    }
+                    continue;
+                }
 
-                        provider.retain(target, field);
-                        provider.notifyReferenced(provider, impl);
+                Object current = topLevel ? ReflectUtils.getFieldValue(target, field) : null;
 
-                        recordVisitField(target, targetField, field);
-                    }
+                Provider provider = findProvider(point);
+                if (current != null && provider.getReferenceCount(target, field) > 0
+                        && (provider.getScopeCache() == null || provider.getCachedInstance() == current)) {
+                    //The target is injected again. Keep what's injected and not released yet so
+                    //its references are not counted twice
+                    continue;
                 }
-                clazz = clazz.getSuperclass();
+
+                Object impl = provider.get();
+                ReflectUtils.setField(target, field, impl);
+
+                boolean visited = isFieldVisited(target, targetField, field);
+                if (!visited) {
+                    doInject(impl, field, provider, injectAnnotation);
+                }
+
+                provider.retain(target, field);
+                provider.notifyReferenced(provider, impl);
+
+                recordVisitField(target, targetField, field);
             }
 
-            if (targetType != null) {
-                unrecordVisit(targetType, targetQualifier);
+            if (targetProvider != null) {
+                unrecordVisit(targetProvider);
             }
         }
     }
@@ -445,82 +826,186 @@ public class Graph {
      * @param target           Whose fields will be injected
      * @param injectAnnotation Annotated which a field will be recognize
      */
-    public void release(Object target, Class<? extends Annotation> injectAnnotation) throws ProviderMissingException {
+    public synchronized void release(Object target, Class<? extends Annotation> injectAnnotation) throws ProviderMissingException {
         if (monitors != null) {
             int size = monitors.size();
             for (int i = 0; i < size; i++) {
                 monitors.get(i).onRelease(target);
             }
         }
-        doRelease(target, null, null, null, injectAnnotation);
-        visitedInjectNodes.clear();
-        revisitedNode = null;
-        visitedFields.clear();
+        List<Monitor> ownMonitors = targetMonitors.get(target);
+        if (ownMonitors != null) {
+            for (int i = 0; i < ownMonitors.size(); i++) {
+                ownMonitors.get(i).onRelease(target);
+            }
+        }
+        releaseDepth++;
+        try {
+            doRelease(target, null, null, injectAnnotation);
+        } finally {
+            visitedInjectNodes.clear();
+            revisitedNode = null;
+            visitedFields.clear();
+            releaseDepth--;
+            onReleaseCompleted();
+        }
     }
 
-    private void doRelease(Object target, Field targetField, Class targetType, Annotation targetQualifier,
+    private void doRelease(Object target, Field targetField, Provider targetProvider,
                            final Class<? extends Annotation> injectAnnotation) throws ProviderMissingException {
-        Class<?> clazz = target.getClass();
-
         boolean circularDetected = false;
 
-        if (targetType != null) {
-            circularDetected = recordVisit(targetType, targetQualifier);
+        if (targetProvider != null) {
+            circularDetected = recordVisit(targetProvider);
         }
 
         if (!circularDetected) {
-            while (clazz != null) {
-                Field[] fields = clazz.getDeclaredFields();
-                for (Field field : fields) {
-                    if (field.isAnnotationPresent(injectAnnotation)) {
-                        Object fieldValue = ReflectUtils.getFieldValue(target, field);
-                        if (fieldValue != null) {
-                            final Class<?> fieldType = field.getType();
-                            Annotation fieldQualifier = ReflectUtils.findFirstQualifierInAnnotations(field);
-                            Provider provider = findProvider(fieldType, fieldQualifier);
-
-                            boolean stillReferenced = provider.getReferenceCount(target, field) > 0;
-                            boolean fieldVisited = isFieldVisited(target, targetField, field);
-                            if (!fieldVisited && stillReferenced) {
-                                recordVisitField(target, targetField, field);
-                                doRelease(fieldValue, field, fieldType, fieldQualifier, injectAnnotation);
-
-                                provider.release(target, field);
-
-                                dereferenceProvider(provider, fieldValue);
-                            }
-                        }
+            InjectionPlan.Point[] points = getInjectionPlan(target.getClass(), injectAnnotation).points;
+            for (InjectionPlan.Point point : points) {
+                Field field = point.field;
+                Object fieldValue = ReflectUtils.getFieldValue(target, field);
+                if (fieldValue instanceof Async) {
+                    ((Async<?>) fieldValue).release();
+                } else if (fieldValue != null) {
+                    Provider provider = findProvider(point);
+
+                    boolean stillReferenced = provider.getReferenceCount(target, field) > 0;
+                    boolean fieldVisited = isFieldVisited(target, targetField, field);
+                    if (!fieldVisited && stillReferenced) {
+                        recordVisitField(target, targetField, field);
+                        doRelease(fieldValue, field, provider, injectAnnotation);
+
+                        provider.release(target, field);
+
+                        dereferenceProvider(provider, fieldValue);
                     }
                 }
-                clazz = clazz.getSuperclass();
             }
 
-            if (targetType != null) {
-                unrecordVisit(targetType, targetQualifier);
+            if (targetProvider != null) {
+                unrecordVisit(targetProvider);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void injectAsync(Object target, InjectionPlan.Point point,
+                             Class<? extends Annotation> injectAnnotation) throws ProvideException {
+        if (point.asyncType == null) {
+            throw new ProvideException(String.format("Async field %s of %s must declare its type " +
+                    "argument as a class", point.field.getName(), target.getClass().getName()));
+        }
+
+        Async<?> async = new Async<>(this, point.asyncType, point.qualifier, injectAnnotation);
+        ReflectUtils.setField(target, point.field, async);
+
+        //Creation starts after the current traversal completes since it uses the graph itself
+        if (pendingAsyncs == null) {
+            pendingAsyncs = new ArrayList<>();
+        }
+        pendingAsyncs.add(async);
+    }
+
+    private void startPendingAsyncs() {
+        if (pendingAsyncs != null) {
+            List<Async<?>> asyncs = pendingAsyncs;
+            pendingAsyncs = null;
+            for (final Async<?> async : asyncs) {
+                if (executor == null) {
+                    async.create();
+                } else {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            async.create();
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop the {@link Async}s queued by an injection which has failed, so they are neither
+     * started by the next injection nor reference instances nobody will release
+     */
+    private void discardPendingAsyncs() {
+        if (pendingAsyncs != null) {
+            List<Async<?>> asyncs = pendingAsyncs;
+            pendingAsyncs = null;
+            for (Async<?> async : asyncs) {
+                async.release();
             }
         }
     }
 
     private <T> void dereferenceProvider(Provider<T> provider, T instance) {
+        boolean disposing = provider.getScopeCache() == null || provider.getReferenceCount() == 0;
+        if (disposalBatched) {
+            if (dereferenceListeners != null || disposeListeners != null
+                    || provider.getInstancePool() != null) {
+                if (pendingDisposals == null) {
+                    pendingDisposals = new ArrayList<>();
+                }
+                pendingDisposals.add(new Disposal(provider, instance, disposing));
+            }
+        } else {
+            notifyDereferenced(provider, instance, disposing);
+        }
+    }
+
+    private <T> void notifyDereferenced(Provider<T> provider, T instance, boolean disposing) {
         if (dereferenceListeners != null) {
             int listenerSize = dereferenceListeners.size();
             for (int i = 0; i < listenerSize; i++) {
                 dereferenceListeners.get(i).onDereferenced(provider, instance);
             }
         }
-        if (disposeListeners != null) {
-            boolean disposing = false;
-            if (provider.getScopeCache() == null) {
-                disposing = true;
-            } else if (provider.getReferenceCount() == 0) {
-                disposing = true;
+        if (disposeListeners != null && disposing) {
+            int listenerSize = disposeListeners.size();
+            for (int i = 0; i < listenerSize; i++) {
+                disposeListeners.get(i).onDisposed(provider, instance);
             }
-            if (disposing) {
-                int listenerSize = disposeListeners.size();
-                for (int i = 0; i < listenerSize; i++) {
-                    disposeListeners.get(i).onDisposed(provider, instance);
+        }
+        if (disposing) {
+            //Only recycle it after all listeners are done with it
+            provider.recycle(instance);
+        }
+    }
+
+    /**
+     * Deliver or schedule batched disposal notifications once the outermost release completes
+     */
+    private void onReleaseCompleted() {
+        if (releaseDepth > 0 || pendingDisposals == null || flushingDisposals) {
+            return;
+        }
+
+        if (disposalExecutor == null) {
+            flushDisposals();
+        } else if (!disposalFlushScheduled) {
+            disposalFlushScheduled = true;
+            disposalExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushDisposals();
                 }
-            }
+            });
+        }
+    }
+
+    /**
+     * A released instance waiting for its batched disposal notifications
+     */
+    private static class Disposal {
+        final Provider provider;
+        final Object instance;
+        final boolean disposing;
+
+        Disposal(Provider provider, Object instance, boolean disposing) {
+            this.provider = provider;
+            this.instance = instance;
+            this.disposing = disposing;
         }
     }
 
@@ -566,8 +1051,8 @@ public class Graph {
         return fields != null && fields.contains(field);
     }
 
-    private boolean recordVisit(Class classType, Annotation qualifier) {
-        String key = PokeHelper.makeProviderKey(classType, qualifier);
+    private boolean recordVisit(Provider provider) {
+        String key = provider.key();
         boolean circularVisitDetected = visitedInjectNodes.contains(key);
         if (!circularVisitDetected) {
             visitedInjectNodes.add(key);
@@ -577,9 +1062,8 @@ public class Graph {
         return circularVisitDetected;
     }
 
-    private void unrecordVisit(Class classType, Annotation qualifier) {
-        String key = PokeHelper.makeProviderKey(classType, qualifier);
-        visitedInjectNodes.remove(key);
+    private void unrecordVisit(Provider provider) {
+        visitedInjectNodes.remove(provider.key());
     }
 
     /**
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.ProvideException;
+
+import java.lang.annotation.Annotation;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable snapshot of a {@link Graph} taken after it's set up, made of the providers
+ * registered to its component tree and the injection plans it has compiled. Graphs sharing the
+ * same registrations can be forked from the template instead of repeating the setup.
+ *
+ * <p>Forking is O(1). A forked graph has its own root component with its own {@link ScopeCache}
+ * and shares the frozen providers and plans. A frozen provider is copied into the forked root
+ * component by {@link Provider#copy()} the first time it's looked up, so registering or
+ * unregistering providers on a forked graph never affects the template or other forks. Inject
+ * representative objects before taking the snapshot to have their plans compiled up front.</p>
+ *
+ * <p>Listeners, monitors and executors of the graph are not part of the template. Objects
+ * holding methods annotated by {@link Provides} are shared by forked graphs.</p>
+ */
+public class GraphTemplate {
+    private final String rootComponentName;
+    private final boolean cacheEnabled;
+    private final Map<String, Provider> providers;
+    private final Map<Class<? extends Annotation>, Map<Class<?>, InjectionPlan>> plans;
+
+    /**
+     * Take a snapshot of the given graph. Changes made to the graph afterwards don't affect the
+     * template.
+     * @param graph The graph whose component tree has been set up
+     * @throws Graph.IllegalRootComponentException Thrown when the graph doesn't have a root component
+     * @throws ProvideException Thrown when any registered provider can't be copied. See {@link Provider#copy()}
+     */
+    public GraphTemplate(Graph graph) throws Graph.IllegalRootComponentException, ProvideException {
+        Component root = graph.getRootComponent();
+        if (root == null) {
+            throw new Graph.IllegalRootComponentException("Cannot create a template from a graph without root component");
+        }
+
+        Map<String, Provider> frozen = new HashMap<>();
+        for (Map.Entry<String, Provider> entry : root.collectProviders().entrySet()) {
+            Provider copy = entry.getValue().copy();
+            if (copy == null) {
+                throw new ProvideException(String.format("Provider(%s) of %s can't be copied into a " +
+                        "template. Override Provider.copy() to support it.", entry.getKey(),
+                        entry.getValue().getClass().getName()));
+            }
+            frozen.put(entry.getKey(), copy);
+        }
+
+        this.rootComponentName = root.getName();
+        this.cacheEnabled = root.scopeCache != null;
+        this.providers = Collections.unmodifiableMap(frozen);
+        this.plans = graph.snapshotInjectionPlans();
+    }
+
+    /**
+     * @return How many providers are frozen in the template
+     */
+    public int getProviderCount() {
+        return providers.size();
+    }
+
+    /**
+     * Fork a graph whose root component is a new {@link Component} with the same name and cache
+     * setting as the root component the template was taken from.
+     * @return The forked graph
+     */
+    public Graph newGraph() {
+        try {
+            return newGraph(new Component(rootComponentName, cacheEnabled));
+        } catch (Graph.IllegalRootComponentException e) {
+            //Should not happen since the component is new
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Fork a graph with the given root component which will serve the providers of the template.
+     * @param rootComponent An empty component without parent
+     * @return The forked graph
+     * @throws Graph.IllegalRootComponentException Thrown when the component has a parent or has
+     * had providers or components registered
+     */
+    public Graph newGraph(Component rootComponent) throws Graph.IllegalRootComponentException {
+        if (!rootComponent.isEmpty()) {
+            throw new Graph.IllegalRootComponentException("Only an empty component can be the root " +
+                    "component of a graph forked from a template.");
+        }
+
+        Graph graph = new Graph();
+        graph.setRootComponent(rootComponent);
+        rootComponent.inheritTemplate(providers);
+        graph.templatePlans = plans;
+        return graph;
+    }
+}
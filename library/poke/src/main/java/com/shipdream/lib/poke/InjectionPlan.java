@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.util.ReflectUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The injectable fields of a class and its super classes for a given inject annotation. A plan is
+ * built once per class so injection and release don't need to scan declared fields by reflection
+ * every time. Each point remembers the provider resolved for it along with the revision of the
+ * root component it was resolved against, so while the component tree is unchanged the provider
+ * is reused without computing its key or looking it up again.
+ */
+class InjectionPlan {
+    static class Point {
+        final Field field;
+        final Class type;
+        final Annotation qualifier;
+        //Whether the field is an Async holder. If so, asyncType is its type argument which may
+        //be null when the type argument is not a class
+        final boolean async;
+        final Class asyncType;
+
+        //Replaced as a whole since plans may be shared by graphs forked from a GraphTemplate
+        private Resolution resolution;
+
+        Point(Field field) {
+            this.field = field;
+            this.type = field.getType();
+            this.qualifier = ReflectUtils.findFirstQualifierInAnnotations(field);
+            this.async = type == Async.class;
+
+            Class argument = null;
+            if (async && field.getGenericType() instanceof ParameterizedType) {
+                Type typeArgument = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+                if (typeArgument instanceof Class) {
+                    argument = (Class) typeArgument;
+                } else if (typeArgument instanceof ParameterizedType) {
+                    argument = (Class) ((ParameterizedType) typeArgument).getRawType();
+                }
+            }
+            this.asyncType = argument;
+        }
+
+        /**
+         * @param root The root component of the graph
+         * @return The provider resolved last time if the root component hasn't changed since,
+         * otherwise null
+         */
+        Provider cachedProvider(Component root) {
+            Resolution r = resolution;
+            if (r != null && r.root == root && r.revision == root.revision) {
+                return r.provider;
+            }
+            return null;
+        }
+
+        void cacheProvider(Component root, Provider provider) {
+            resolution = new Resolution(root, root.revision, provider);
+        }
+    }
+
+    private static class Resolution {
+        final Component root;
+        final int revision;
+        final Provider provider;
+
+        Resolution(Component root, int revision, Provider provider) {
+            this.root = root;
+            this.revision = revision;
+            this.provider = provider;
+        }
+    }
+
+    final Point[] points;
+
+    InjectionPlan(Class<?> clazz, Class<? extends Annotation> injectAnnotation) {
+        List<Point> found = new ArrayList<>();
+        while (clazz != null) {
+            Field[] fields = clazz.getDeclaredFields();
+            for (Field field : fields) {
+                if (field.isAnnotationPresent(injectAnnotation)) {
+                    field.setAccessible(true);
+                    found.add(new Point(field));
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        points = found.toArray(new Point[found.size()]);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.ProviderMissingException;
+
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.Executor;
+
+/**
+ * A handle to an instance referenced by {@link Graph#referenceHandle(Class, Annotation, Class)}.
+ * The handle holds the provider resolved when the instance was referenced, so {@link #close()}
+ * dereferences the instance without looking the provider up again. Closing a handle more than
+ * once has no effect.
+ *
+ * <p>The instance is dereferenced on the thread calling {@link #close()}, unless the handle is
+ * referenced by {@link Graph#referenceHandle(Class, Annotation, Class, Executor)} with an executor,
+ * in which case the dereferencing runs on that executor.</p>
+ *
+ * <pre>
+ *     try (InstanceHandle&lt;Database&gt; handle = graph.referenceHandle(Database.class, null, Inject.class)) {
+ *         handle.get().query();
+ *     }
+ * </pre>
+ */
+public class InstanceHandle<T> implements Closeable {
+    private final Graph graph;
+    private final Provider<T> provider;
+    private final T instance;
+    private final Class<? extends Annotation> injectAnnotation;
+    private final Executor closeExecutor;
+    private boolean closed;
+
+    InstanceHandle(Graph graph, Provider<T> provider, T instance,
+                   Class<? extends Annotation> injectAnnotation, Executor closeExecutor) {
+        this.graph = graph;
+        this.provider = provider;
+        this.instance = instance;
+        this.injectAnnotation = injectAnnotation;
+        this.closeExecutor = closeExecutor;
+    }
+
+    /**
+     * @return The referenced instance
+     */
+    public T get() {
+        return instance;
+    }
+
+    /**
+     * @return The type of the referenced instance
+     */
+    public Class<T> type() {
+        return provider.type();
+    }
+
+    /**
+     * @return Whether the handle has been closed
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Dereference the instance. When it's not referenced by anything else after this
+     * dereferencing, its cached instance will be released if possible. The handle is closed
+     * straight away even if the dereferencing is run later by the close executor.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+
+        if (closeExecutor == null) {
+            dereference();
+        } else {
+            closeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dereference();
+                }
+            });
+        }
+    }
+
+    private void dereference() {
+        try {
+            graph.dereference(provider, instance, injectAnnotation);
+        } catch (ProviderMissingException e) {
+            //Only nested injectable fields are looked up and they have been resolved when the
+            //instance was referenced
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+/**
+ * A bounded pool of released instances of an unscoped {@link Provider}. Instead of creating a new
+ * instance for every injection, the provider reuses an instance released earlier when there is
+ * one in the pool. Only instances implementing {@link Resettable} are recycled and they are reset
+ * when they are put back into the pool.
+ *
+ * <p>A recycled instance is handed out as if it's newly created, so creation listeners are called
+ * again. Released instances must not be used by anything after they are released.</p>
+ *
+ * @param <T> The type of the pooled instances
+ */
+public class InstancePool<T> {
+    private final Object[] instances;
+    private int size;
+    private long hitCount;
+    private long missCount;
+    private long recycledCount;
+    private long droppedCount;
+
+    /**
+     * @param capacity Maximum number of instances kept in the pool
+     */
+    public InstancePool(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity of an instance pool must be positive");
+        }
+        this.instances = new Object[capacity];
+    }
+
+    /**
+     * Take an instance out of the pool
+     * @return The recycled instance or null if the pool is empty
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T acquire() {
+        if (size == 0) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        T instance = (T) instances[--size];
+        instances[size] = null;
+        return instance;
+    }
+
+    /**
+     * Reset the instance and put it into the pool if it's {@link Resettable} and the pool isn't
+     * full.
+     * @param instance The released instance
+     * @return Whether the instance is kept in the pool
+     */
+    public synchronized boolean recycle(T instance) {
+        if (!(instance instanceof Resettable)) {
+            return false;
+        }
+        if (size == instances.length) {
+            droppedCount++;
+            return false;
+        }
+
+        ((Resettable) instance).reset();
+        instances[size++] = instance;
+        recycledCount++;
+        return true;
+    }
+
+    /**
+     * Drop all instances kept in the pool
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            instances[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * @return Maximum number of instances kept in the pool
+     */
+    public int getCapacity() {
+        return instances.length;
+    }
+
+    /**
+     * @return Number of instances currently kept in the pool
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return How many times an instance was taken from the pool
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return How many times the pool was empty when an instance was needed
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return How many released instances have been put into the pool
+     */
+    public synchronized long getRecycledCount() {
+        return recycledCount;
+    }
+
+    /**
+     * @return How many released instances were dropped since the pool was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.ProvideException;
+import com.shipdream.lib.poke.exception.ProviderConflictException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>
+ * A child component that is attached to its parent on demand. It declares the types or packages
+ * it's able to provide by {@link #provides(Class)} and {@link #providesPackage(String)}. The
+ * actual component is only created by {@link #create()} and attached when the component tree
+ * fails to find a provider for one of the declared types for the first time. So providers of
+ * features that are never used are never instantiated or registered.
+ * </p>
+ *
+ * <pre>
+ *     rootComponent.attachLazily(new LazyComponent() {
+ *         protected Component create() throws ProvideException, ProviderConflictException {
+ *             return new Component("Checkout").register(new CheckoutProviders());
+ *         }
+ *     }.providesPackage("com.myapp.checkout"));
+ * </pre>
+ */
+public abstract class LazyComponent {
+    private final Set<Class> types = new HashSet<>();
+    private final Set<String> packages = new HashSet<>();
+    private boolean allowOverride = false;
+
+    /**
+     * Declare the type the lazy component is able to provide with any qualifier.
+     * @param type The type
+     * @return this instance
+     */
+    public LazyComponent provides(Class type) {
+        types.add(type);
+        return this;
+    }
+
+    /**
+     * Declare all types in the given package or its sub packages can be provided by the lazy
+     * component.
+     * @param packageName The name of the package
+     * @return this instance
+     */
+    public LazyComponent providesPackage(String packageName) {
+        packages.add(packageName);
+        return this;
+    }
+
+    /**
+     * Whether the created component is allowed to override providers already registered in the
+     * component tree when it's attached. See {@link Component#attach(Component, boolean)}
+     * @param allowOverride true to allow overriding
+     * @return this instance
+     */
+    public LazyComponent allowOverride(boolean allowOverride) {
+        this.allowOverride = allowOverride;
+        return this;
+    }
+
+    boolean isOverrideAllowed() {
+        return allowOverride;
+    }
+
+    /**
+     * Indicates whether the lazy component declares it's able to provide the given type
+     * @param type The type
+     * @return true if the type or its package is declared
+     */
+    public boolean canProvide(Class type) {
+        if (types.contains(type)) {
+            return true;
+        }
+        if (!packages.isEmpty() && type.getPackage() != null) {
+            String pkg = type.getPackage().getName();
+            for (String p : packages) {
+                if (pkg.equals(p) || pkg.startsWith(p + ".")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the component and register its providers. Called at most once when the component
+     * tree needs it for the first time.
+     * @return The created component which must not have a parent
+     * @throws ProvideException Thrown when providers fail to be registered
+     * @throws ProviderConflictException Thrown when duplicate providers are registered
+     */
+    protected abstract Component create() throws ProvideException, ProviderConflictException;
+}
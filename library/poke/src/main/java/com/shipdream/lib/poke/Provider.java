@@ -93,11 +93,19 @@ public abstract class Provider<T> {
 
     private final Class<T> type;
     private final Annotation qualifier;
+    private String key;
     //The component the provider is attached to
     private Component component;
     private ScopeCache scopeCache;
 
-    Map<Object, Map<String, Integer>> owners = new HashMap<>();
+    //The scope cache which assigned the slot below and the slot of this provider in it
+    ScopeCache slotOwner;
+    int slot = -1;
+
+    //Recycles released instances when the provider is unscoped
+    private InstancePool<T> instancePool;
+
+    Map<Object, Map<Field, Integer>> owners = new HashMap<>();
     private int totalRefCount = 0;
 
     /**
@@ -114,9 +122,7 @@ public abstract class Provider<T> {
      * @param qualifier Qualifier
      */
     public Provider(Class<T> type, Annotation qualifier) {
-        this.type = type;
-        this.qualifier = qualifier;
-        this.scopeCache = null;
+        this(type, qualifier, null);
     }
 
     /**
@@ -140,6 +146,17 @@ public abstract class Provider<T> {
         this.scopeCache = scopeCache;
     }
 
+    /**
+     * @return The key of the provider made of its type and qualifier
+     */
+    String key() {
+        if (key == null) {
+            //Computed lazily since the qualifier may be supplied by an overridden getQualifier()
+            key = PokeHelper.makeProviderKey(type, getQualifier());
+        }
+        return key;
+    }
+
     Component getComponent() {
         return component;
     }
@@ -162,9 +179,9 @@ public abstract class Provider<T> {
     }
 
     int getReferenceCount(Object owner, Field field) {
-        Map<String, Integer> fields = owners.get(owner);
+        Map<Field, Integer> fields = owners.get(owner);
         if (fields != null) {
-            Integer count = fields.get(field.toGenericString());
+            Integer count = fields.get(field);
             if(count != null) {
                 return count;
             }
@@ -187,18 +204,18 @@ public abstract class Provider<T> {
      */
     void retain(Object owner, Field field) {
         retain();
-        Map<String, Integer> fields = owners.get(owner);
+        Map<Field, Integer> fields = owners.get(owner);
         if (fields == null) {
             fields = new HashMap<>();
             owners.put(owner, fields);
         }
 
-        Integer count = fields.get(field.toGenericString());
+        Integer count = fields.get(field);
         if (count == null) {
-            fields.put(field.toGenericString(), 1);
+            fields.put(field, 1);
         } else {
             count++;
-            fields.put(field.toGenericString(), count);
+            fields.put(field, count);
         }
     }
 
@@ -216,11 +233,7 @@ public abstract class Provider<T> {
     private void freeCache() {
         ScopeCache cache = getScopeCache();
         if (cache != null) {
-            String key = PokeHelper.makeProviderKey(type, qualifier);
-            Object instance = cache.findInstance(key);
-            if (instance != null) {
-                cache.removeInstance(key);
-            }
+            cache.removeInstance(this);
         }
     }
 
@@ -230,15 +243,15 @@ public abstract class Provider<T> {
      * @param field The field
      */
     void release(Object owner, Field field) {
-        Map<String, Integer> fields = owners.get(owner);
+        Map<Field, Integer> fields = owners.get(owner);
         if(fields != null) {
             release();
 
-            Integer count = fields.get(field.toGenericString());
+            Integer count = fields.get(field);
             if(--count > 0) {
-                fields.put(field.toGenericString(), count);
+                fields.put(field, count);
             } else {
-                fields.remove(field.toGenericString());
+                fields.remove(field);
             }
         }
 
@@ -277,6 +290,33 @@ public abstract class Provider<T> {
         return referencedListeners;
     }
 
+    /**
+     * Set the pool recycling released instances. It only takes effect when the provider doesn't
+     * have a scope cache, in which case an instance released earlier and kept by the pool is
+     * handed out instead of creating a new one. See {@link InstancePool}.
+     * @param instancePool The pool. Null to always create new instances.
+     */
+    public void setInstancePool(InstancePool<T> instancePool) {
+        this.instancePool = instancePool;
+    }
+
+    /**
+     * @return The pool recycling released instances or null if there is none
+     */
+    public InstancePool<T> getInstancePool() {
+        return instancePool;
+    }
+
+    /**
+     * Put the released instance into the instance pool if the provider is unscoped and has a pool
+     * @param instance The released instance
+     */
+    void recycle(T instance) {
+        if (instancePool != null && getScopeCache() == null) {
+            instancePool.recycle(instance);
+        }
+    }
+
     /**
      * Get qualifier of the provider
      * @return The qualifier
@@ -296,8 +336,7 @@ public abstract class Provider<T> {
         ScopeCache cache = getScopeCache();
 
         if (cache != null) {
-            String key = PokeHelper.makeProviderKey(type, qualifier);
-            Object instance = cache.findInstance(key);
+            Object instance = cache.findInstance(this);
             if(instance != null) {
                 return (T) instance;
             }
@@ -361,11 +400,12 @@ public abstract class Provider<T> {
     final T get() throws ProvideException {
         ScopeCache cache = getScopeCache();
         if(cache == null) {
-            T impl = createInstance();
+            T impl = instancePool == null ? null : instancePool.acquire();
             if (impl == null) {
-                String qualifierName = (qualifier == null) ? "null" : qualifier.getClass().getName();
-                throw new ProvideException(String.format("Provider (type: %s, qualifier: " +
-                        "%s) should not provide NULL as instance", type.getName(), qualifierName));
+                impl = createInstance();
+            }
+            if (impl == null) {
+                throw nullInstanceException();
             }
 
             newlyCreatedInstance = impl;
@@ -376,6 +416,35 @@ public abstract class Provider<T> {
         }
     }
 
+    /**
+     * Same as {@link #get()} but takes the instance created by {@link #createInstance()}
+     * beforehand, e.g. outside of the graph's lock. When there is a {@link ScopeCache} associated
+     * and another instance has been cached in the meantime, the cached one is returned and the
+     * given one is dropped.
+     * @param created The instance created by {@link #createInstance()}
+     * @return The given instance or the cached one
+     * @throws ProvideException Thrown when the given instance is null
+     */
+    final T get(T created) throws ProvideException {
+        if (created == null) {
+            throw nullInstanceException();
+        }
+
+        ScopeCache cache = getScopeCache();
+        if (cache == null) {
+            newlyCreatedInstance = created;
+            return created;
+        } else {
+            return cache.put(this, created);
+        }
+    }
+
+    private ProvideException nullInstanceException() {
+        String qualifierName = (qualifier == null) ? "null" : qualifier.getClass().getName();
+        return new ProvideException(String.format("Provider (type: %s, qualifier: " +
+                "%s) should not provide NULL as instance", type.getName(), qualifierName));
+    }
+
     /**
      * Delay notifying instantiation listeners since they need to be full
      * injected if the instance has injectable fields
@@ -417,6 +486,17 @@ public abstract class Provider<T> {
         return type;
     }
 
+    /**
+     * Create a new provider providing instances the same way as this provider but without its
+     * state, i.e. reference counts, listeners and the component it's attached to. It's used to
+     * copy providers frozen in a {@link GraphTemplate} into graphs forked from it. Override it to
+     * make a custom provider usable in templates.
+     * @return The new provider or null if the provider can't be copied, which is the default
+     */
+    protected Provider<T> copy() {
+        return null;
+    }
+
     /**
      * Override to implement how the provider instantiates a new instance
      * @return The newly created instance
@@ -65,6 +65,15 @@ public class ProviderByClassType<T> extends Provider<T> {
                 "of it returns null", type()));
     }
 
+    @Override
+    protected Provider<T> copy() {
+        //Subclasses may provide differently so they need to copy themselves
+        if (getClass() == ProviderByClassType.class || getClass() == ProviderByClassName.class) {
+            return new ProviderByClassType<>(type(), clazz);
+        }
+        return null;
+    }
+
     private void throwProvideException(Exception e) throws ProvideException {
         throw new ProvideException(String.format("Failed to provide class - %s. Make sure %s exist " +
                 "and with a default empty constructor.", clazz.getName(), implClassName), e);
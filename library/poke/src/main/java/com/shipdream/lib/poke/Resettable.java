@@ -0,0 +1,28 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+/**
+ * Contract of instances which can be recycled by an {@link InstancePool}. A released instance is
+ * reset before it's kept in the pool and handed out again by its provider.
+ */
+public interface Resettable {
+    /**
+     * Restore the instance to the state it was in right after it was constructed
+     */
+    void reset();
+}
@@ -19,20 +19,101 @@ package com.shipdream.lib.poke;
 import com.shipdream.lib.poke.exception.ProvideException;
 
 import java.lang.annotation.Annotation;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 /**
  * The instances controls how the provider associated should generate new instances.
+ *
+ * <p>Every provider using the cache is assigned a dense integer slot the first time it's seen,
+ * normally when it's registered to a {@link Component}. Cached instances are stored in an array
+ * indexed by the slot so a cache hit is a single array load instead of hashing the provider key.
+ * The slot is freed when the provider is unregistered and reused by the next new provider.</p>
  */
 public class ScopeCache {
-    protected Map<String, Object> instances = new HashMap<>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Object[] slotInstances = new Object[INITIAL_CAPACITY];
+    //Number of slots ever assigned including the freed ones
+    private int slotCount = 0;
+    private int size = 0;
+
+    /**
+     * Live map view of the cached instances keyed by provider keys.
+     * @deprecated Instances are stored in provider slots now. The map is kept as a view onto them
+     * for subclasses still accessing it. Use {@link #getCachedInstances()} instead.
+     */
+    @Deprecated
+    protected final Map<String, Object> instances = new InstanceMap();
+
+    /**
+     * Get the slot of the given provider in this cache. A new slot will be assigned if the provider
+     * hasn't been seen by this cache. Providers sharing the same key share the same slot.
+     * @param provider The provider
+     * @return The slot index
+     */
+    int slotOf(Provider provider) {
+        String key = provider.key();
+        //The key check catches slots freed and reused by another provider since last time
+        if (provider.slotOwner == this && keys[provider.slot] == key) {
+            return provider.slot;
+        }
+
+        int slot = slotOf(key);
+        provider.slotOwner = this;
+        provider.slot = slot;
+        return slot;
+    }
+
+    private int slotOf(String key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            slot = freeSlots.poll();
+            if (slot == null) {
+                slot = slotCount++;
+                if (slot == keys.length) {
+                    int capacity = keys.length * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    slotInstances = Arrays.copyOf(slotInstances, capacity);
+                }
+            }
+            keys[slot] = key;
+            slots.put(key, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Remove the cached instance of the provider with the given key and free its slot so it can
+     * be reused by other providers. Called when the provider is unregistered.
+     * @param key result of {@link PokeHelper#makeProviderKey(Class, Annotation)}
+     */
+    void freeSlot(String key) {
+        Integer slot = slots.remove(key);
+        if (slot != null) {
+            removeSlot(slot);
+            keys[slot] = null;
+            freeSlots.push(slot);
+        }
+    }
 
     @SuppressWarnings("unchecked")
     <T> T get(Provider<T> provider) throws ProvideException {
-        String key = PokeHelper.makeProviderKey(provider.type(), provider.getQualifier());
-        T instance = (T) instances.get(key);
+        int slot = slotOf(provider);
+        T instance = (T) slotInstances[slot];
         if (instance == null) {
             instance = provider.createInstance();
             if(instance == null) {
@@ -41,7 +122,8 @@ public class ScopeCache {
                                 "%s) should not provide NULL as instance",
                         provider.type().getName(), qualifierName));
             }
-            instances.put(key, instance);
+            slotInstances[slot] = instance;
+            size++;
 
             provider.newlyCreatedInstance = instance;
         }
@@ -49,13 +131,44 @@ public class ScopeCache {
         return instance;
     }
 
+    /**
+     * Cache the instance created by the given provider beforehand unless another instance has been
+     * cached for it in the meantime.
+     * @param provider The provider
+     * @param created The instance created by the provider
+     * @return The cached instance
+     */
+    @SuppressWarnings("unchecked")
+    <T> T put(Provider<T> provider, T created) {
+        int slot = slotOf(provider);
+        T instance = (T) slotInstances[slot];
+        if (instance == null) {
+            instance = created;
+            slotInstances[slot] = instance;
+            size++;
+
+            provider.newlyCreatedInstance = instance;
+        }
+        return instance;
+    }
+
+    /**
+     * Get the cached instance of the given provider
+     * @param provider The provider
+     * @return The cached instance or null if the instance is not cached
+     */
+    Object findInstance(Provider provider) {
+        return slotInstances[slotOf(provider)];
+    }
+
     @SuppressWarnings("unchecked")
     /**
      * Get the cached instance
      * @param cacheKey result of {@link PokeHelper#makeProviderKey(Class, Annotation)}
      */
     Object findInstance(String cacheKey) {
-        return instances.get(cacheKey);
+        Integer slot = slots.get(cacheKey);
+        return slot == null ? null : slotInstances[slot];
     }
 
     @SuppressWarnings("unchecked")
@@ -63,13 +176,31 @@ public class ScopeCache {
         return (T) this.findInstance(PokeHelper.makeProviderKey(type, qualifier));
     }
 
+    /**
+     * Remove the cached instance of the given provider from the scope instances.
+     * @param provider The provider
+     */
+    void removeInstance(Provider provider) {
+        removeSlot(slotOf(provider));
+    }
+
     @SuppressWarnings("unchecked")
     /**
      * Remove the cached instance from the scope instances.
      * @param cacheKey result of {@link PokeHelper#makeProviderKey(Class, Annotation)}
      */
     <T> void removeInstance(String key) {
-        instances.remove(key);
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            removeSlot(slot);
+        }
+    }
+
+    private void removeSlot(int slot) {
+        if (slotInstances[slot] != null) {
+            slotInstances[slot] = null;
+            size--;
+        }
     }
 
     /**
@@ -77,6 +208,123 @@ public class ScopeCache {
      * @return The collection of cached times
      */
     public Collection<Object> getCachedInstances() {
-        return instances.values();
+        List<Object> cached = new ArrayList<>(size);
+        for (int i = 0; i < slotCount; i++) {
+            if (slotInstances[i] != null) {
+                cached.add(slotInstances[i]);
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * @return A live map view of the cached instances keyed by provider keys. Removing entries from
+     * the map removes the cached instances.
+     */
+    @SuppressWarnings("deprecation")
+    Map<String, Object> asMap() {
+        return instances;
+    }
+
+    private class InstanceMap extends AbstractMap<String, Object> {
+        private Set<Entry<String, Object>> entrySet;
+
+        @Override
+        public Object get(Object key) {
+            return key instanceof String ? findInstance((String) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            if (value == null) {
+                throw new NullPointerException("Cached instance must not be NULL");
+            }
+            int slot = slotOf(key);
+            Object previous = slotInstances[slot];
+            if (previous == null) {
+                size++;
+            }
+            slotInstances[slot] = value;
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            Object instance = get(key);
+            if (instance != null) {
+                removeInstance((String) key);
+            }
+            return instance;
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(slotInstances, null);
+            size = 0;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new AbstractSet<Entry<String, Object>>() {
+                    @Override
+                    public Iterator<Entry<String, Object>> iterator() {
+                        return new InstanceIterator();
+                    }
+
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public void clear() {
+                        InstanceMap.this.clear();
+                    }
+                };
+            }
+            return entrySet;
+        }
+    }
+
+    private class InstanceIterator implements Iterator<Map.Entry<String, Object>> {
+        private int next = advance(0);
+        private int last = -1;
+
+        private int advance(int from) {
+            while (from < slotCount && slotInstances[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < slotCount;
+        }
+
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(keys[last], slotInstances[last]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeSlot(last);
+            last = -1;
+        }
     }
 }
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+import com.shipdream.lib.poke.exception.ProvideException;
+import com.shipdream.lib.poke.exception.ProviderMissingException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestAsyncInjection extends BaseTestCases {
+    private Graph graph;
+    private Component component;
+    private QueuedExecutor executor;
+
+    static class Database {
+    }
+
+    interface Cache {
+    }
+
+    static class Screen {
+        @MyInject
+        Async<Database> database;
+    }
+
+    static class RawScreen {
+        @MyInject
+        Async database;
+    }
+
+    static class DatabaseHolder {
+        @MyInject
+        Async<Database> database;
+    }
+
+    static class HolderScreen {
+        @MyInject
+        DatabaseHolder holder;
+    }
+
+    static class CacheScreen {
+        @MyInject
+        Async<Cache> cache;
+    }
+
+    static class QueuedExecutor implements Executor {
+        List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> runnables = queue;
+            queue = new ArrayList<>();
+            for (Runnable r : runnables) {
+                r.run();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        component = new Component();
+        component.register(new ProviderByClassType(Database.class, Database.class));
+        graph = new Graph();
+        graph.setRootComponent(component);
+        executor = new QueuedExecutor();
+    }
+
+    @Test
+    public void should_create_instance_straight_away_without_executor() throws Exception {
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+
+        Assert.assertTrue(screen.database.isDone());
+        Assert.assertNotNull(screen.database.get());
+        Assert.assertEquals(1, component.findProvider(Database.class, null).getReferenceCount());
+
+        graph.release(screen, MyInject.class);
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+    }
+
+    @Test
+    public void should_create_instance_on_executor_and_deliver_callback() throws Exception {
+        graph.setExecutor(executor);
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+
+        Assert.assertFalse(screen.database.isDone());
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+
+        final Database[] delivered = new Database[1];
+        screen.database.then(new Async.Callback<Database>() {
+            @Override
+            public void onReady(Database instance) {
+                delivered[0] = instance;
+            }
+        });
+
+        executor.runAll();
+
+        Assert.assertTrue(screen.database.isDone());
+        Assert.assertNotNull(delivered[0]);
+        Assert.assertTrue(delivered[0] == screen.database.get(0, TimeUnit.MILLISECONDS));
+        Assert.assertEquals(1, component.findProvider(Database.class, null).getReferenceCount());
+    }
+
+    @Test
+    public void should_run_callbacks_on_callback_executor() throws Exception {
+        QueuedExecutor callbackExecutor = new QueuedExecutor();
+        graph.setCallbackExecutor(callbackExecutor);
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+
+        final boolean[] ready = new boolean[1];
+        screen.database.then(new Async.Callback<Database>() {
+            @Override
+            public void onReady(Database instance) {
+                ready[0] = true;
+            }
+        });
+        Assert.assertFalse(ready[0]);
+
+        callbackExecutor.runAll();
+        Assert.assertTrue(ready[0]);
+    }
+
+    @Test
+    public void should_not_create_instance_when_owner_released_before_creation_starts() throws Exception {
+        graph.setExecutor(executor);
+        Provider.DisposeListener disposeListener = mock(Provider.DisposeListener.class);
+        graph.registerDisposeListener(disposeListener);
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+
+        final boolean[] called = new boolean[1];
+        screen.database.then(new Async.Callback<Database>() {
+            @Override
+            public void onReady(Database instance) {
+                called[0] = true;
+            }
+        });
+
+        graph.release(screen, MyInject.class);
+        executor.runAll();
+
+        Assert.assertTrue(screen.database.isDone());
+        Assert.assertNull(screen.database.get());
+        Assert.assertFalse(called[0]);
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+        verify(disposeListener, times(0)).onDisposed(any(Provider.class), any(Database.class));
+    }
+
+    @Test
+    public void should_dereference_instance_created_after_owner_released() throws Exception {
+        final Screen screen = new Screen();
+
+        component.unregister(Database.class, null);
+        component.register(new Provider<Database>(Database.class) {
+            @Override
+            protected Database createInstance() throws ProvideException {
+                try {
+                    //Owner is released while the instance is being created
+                    graph.release(screen, MyInject.class);
+                } catch (ProviderMissingException e) {
+                    throw new ProvideException(e.getMessage(), e);
+                }
+                return new Database();
+            }
+        });
+        graph.setExecutor(executor);
+        Provider.DisposeListener disposeListener = mock(Provider.DisposeListener.class);
+        graph.registerDisposeListener(disposeListener);
+
+        graph.inject(screen, MyInject.class);
+
+        final boolean[] called = new boolean[1];
+        screen.database.then(new Async.Callback<Database>() {
+            @Override
+            public void onReady(Database instance) {
+                called[0] = true;
+            }
+        });
+
+        executor.runAll();
+
+        Assert.assertFalse(called[0]);
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+        verify(disposeListener, times(1)).onDisposed(any(Provider.class), any(Database.class));
+    }
+
+    @Test
+    public void should_timeout_when_instance_is_not_created_in_time() throws Exception {
+        graph.setExecutor(executor);
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+
+        try {
+            screen.database.get(1, TimeUnit.MILLISECONDS);
+            Assert.fail("Should time out");
+        } catch (TimeoutException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void should_report_failure_when_provider_is_missing() throws Exception {
+        CacheScreen screen = new CacheScreen();
+        graph.inject(screen, MyInject.class);
+
+        final PokeException[] failure = new PokeException[1];
+        screen.cache.then(new Async.Callback<Cache>() {
+            @Override
+            public void onReady(Cache instance) {
+            }
+
+            @Override
+            public void onFailed(PokeException exception) {
+                failure[0] = exception;
+            }
+        });
+
+        Assert.assertTrue(failure[0] instanceof ProviderMissingException);
+        try {
+            screen.cache.get();
+            Assert.fail("Should throw the failure");
+        } catch (ProviderMissingException e) {
+            Assert.assertTrue(e == failure[0]);
+        }
+
+        graph.release(screen, MyInject.class);
+    }
+
+    @Test(expected = ProvideException.class)
+    public void should_throw_when_async_field_has_no_type_argument() throws Exception {
+        graph.inject(new RawScreen(), MyInject.class);
+    }
+
+    @Test
+    public void should_not_dispose_instance_still_referenced_by_others() throws Exception {
+        Provider.DisposeListener disposeListener = mock(Provider.DisposeListener.class);
+        graph.registerDisposeListener(disposeListener);
+
+        Screen screen1 = new Screen();
+        Screen screen2 = new Screen();
+        graph.inject(screen1, MyInject.class);
+        graph.inject(screen2, MyInject.class);
+        Assert.assertTrue(screen1.database.get() == screen2.database.get());
+
+        graph.release(screen1, MyInject.class);
+        verify(disposeListener, times(0)).onDisposed(any(Provider.class), any(Database.class));
+
+        graph.release(screen2, MyInject.class);
+        verify(disposeListener, times(1)).onDisposed(any(Provider.class), eq(screen2.database.get()));
+    }
+
+    @Test
+    public void should_keep_async_of_shared_instance_until_all_owners_released() throws Exception {
+        component.register(new ProviderByClassType(DatabaseHolder.class, DatabaseHolder.class));
+        Provider<Database> databaseProvider = component.findProvider(Database.class, null);
+
+        HolderScreen screen1 = new HolderScreen();
+        HolderScreen screen2 = new HolderScreen();
+        graph.inject(screen1, MyInject.class);
+        Async<Database> database = screen1.holder.database;
+        graph.inject(screen2, MyInject.class);
+
+        Assert.assertTrue(screen1.holder == screen2.holder);
+        Assert.assertTrue(database == screen2.holder.database);
+        Assert.assertEquals(1, databaseProvider.getReferenceCount());
+
+        graph.release(screen1, MyInject.class);
+        Assert.assertFalse(database.isReleased());
+        Assert.assertEquals(1, databaseProvider.getReferenceCount());
+
+        graph.release(screen2, MyInject.class);
+        Assert.assertTrue(database.isReleased());
+        Assert.assertEquals(0, databaseProvider.getReferenceCount());
+    }
+
+    @Test
+    public void should_construct_instance_without_holding_graph_lock() throws Exception {
+        final boolean[] lockHeld = new boolean[1];
+        component.unregister(Database.class, null);
+        component.register(new Provider<Database>(Database.class) {
+            @Override
+            protected Database createInstance() throws ProvideException {
+                lockHeld[0] = Thread.holdsLock(graph);
+                return new Database();
+            }
+        });
+        graph.setExecutor(executor);
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+        executor.runAll();
+
+        Assert.assertFalse(lockHeld[0]);
+        Assert.assertNotNull(screen.database.get());
+        Assert.assertEquals(1, component.findProvider(Database.class, null).getReferenceCount());
+
+        graph.release(screen, MyInject.class);
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+    }
+
+    interface Broken {
+    }
+
+    static class BrokenScreen {
+        @MyInject
+        Async<Database> database;
+
+        @MyInject
+        Broken broken;
+    }
+
+    @Test
+    public void should_not_start_async_of_failed_injection_on_next_injection() throws Exception {
+        component.register(new Provider<Broken>(Broken.class) {
+            @Override
+            protected Broken createInstance() throws ProvideException {
+                throw new ProvideException("Broken");
+            }
+        });
+        graph.setExecutor(executor);
+
+        BrokenScreen brokenScreen = new BrokenScreen();
+        try {
+            graph.inject(brokenScreen, MyInject.class);
+            Assert.fail("Should fail to inject the broken field");
+        } catch (ProvideException e) {
+            //Expected
+        }
+        //The async field was queued before its sibling failed
+        Assert.assertNotNull(brokenScreen.database);
+        Assert.assertTrue(brokenScreen.database.isReleased());
+
+        //An unrelated injection doesn't start it
+        graph.inject(new Object(), MyInject.class);
+        Assert.assertTrue(executor.queue.isEmpty());
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+
+        //The next injection with an async field starts its own only
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+        executor.runAll();
+        Assert.assertNotNull(screen.database.get());
+        Assert.assertEquals(1, component.findProvider(Database.class, null).getReferenceCount());
+        graph.release(screen, MyInject.class);
+        Assert.assertEquals(0, component.findProvider(Database.class, null).getReferenceCount());
+    }
+}
@@ -186,16 +186,23 @@ public class TestCircularDependencies extends BaseTestCases {
 
         verify(creationListener, times(1)).onCreated(eq(powerProvider), eq(plant.power));
 
+        //Injecting a target not released yet doesn't create new instances
+        graph.inject(plant, MyInject.class);
+        verify(creationListener, times(1)).onCreated(eq(powerProvider), any(Power.class));
+
         powerProvider.unregisterCreationListener(creationListener);
         Assert.assertEquals(null, powerProvider.getCreationListeners());
+        graph.release(plant, MyInject.class);
         graph.inject(plant, MyInject.class);
         verify(creationListener, times(1)).onCreated(eq(powerProvider), any(Power.class));
 
         powerProvider.registerCreationListener(creationListener);
+        graph.release(plant, MyInject.class);
         graph.inject(plant, MyInject.class);
         verify(creationListener, times(2)).onCreated(eq(powerProvider), any(Power.class));
 
         powerProvider.clearCreationListeners();
+        graph.release(plant, MyInject.class);
         graph.inject(plant, MyInject.class);
         verify(creationListener, times(2)).onCreated(eq(powerProvider), any(Power.class));
     }
@@ -333,11 +340,19 @@ public class TestCircularDependencies extends BaseTestCases {
 
         Assert.assertFalse(component.scopeCache.getCachedInstances().isEmpty());
 
+        int powerReferenceCount = powerProvider.getReferenceCount();
+        int driverReferenceCount = driverProvider.getReferenceCount();
+        int robotReferenceCount = robotProvider.getReferenceCount();
+
+        //Injecting the same target again before releasing it doesn't count references twice
         graph.inject(factory, MyInject.class);
         Assert.assertFalse(component.scopeCache.getCachedInstances().isEmpty());
+        Assert.assertEquals(powerReferenceCount, powerProvider.getReferenceCount());
+        Assert.assertEquals(driverReferenceCount, driverProvider.getReferenceCount());
+        Assert.assertEquals(robotReferenceCount, robotProvider.getReferenceCount());
 
         graph.release(factory, MyInject.class);
-        Assert.assertFalse(component.scopeCache.getCachedInstances().isEmpty());
+        Assert.assertTrue(component.scopeCache.getCachedInstances().isEmpty());
 
         graph.release(factory, MyInject.class);
         Assert.assertTrue(component.scopeCache.getCachedInstances().isEmpty());
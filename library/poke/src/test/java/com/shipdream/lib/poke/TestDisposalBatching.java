@@ -0,0 +1,217 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class TestDisposalBatching extends BaseTestCases {
+    private Graph graph;
+    private Component component;
+    private List<String> notifications;
+
+    static class Engine {
+    }
+
+    static class Car {
+        @MyInject
+        Engine engine;
+    }
+
+    static class Garage {
+        @MyInject
+        Car car;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        component = new Component(false);
+        component.register(new ProviderByClassType(Engine.class, Engine.class));
+        component.register(new ProviderByClassType(Car.class, Car.class));
+        graph = new Graph();
+        graph.setRootComponent(component);
+
+        notifications = new ArrayList<>();
+        graph.registerDereferencedListener(new Provider.DereferenceListener() {
+            @Override
+            public <T> void onDereferenced(Provider<T> provider, T instance) {
+                notifications.add("dereferenced " + provider.type().getSimpleName());
+            }
+        });
+        graph.registerDisposeListener(new Provider.DisposeListener() {
+            @Override
+            public <T> void onDisposed(Provider<T> provider, T instance) {
+                notifications.add("disposed " + provider.type().getSimpleName());
+            }
+        });
+    }
+
+    @Test
+    public void should_notify_disposals_during_release_by_default() throws PokeException {
+        final Garage garage = new Garage();
+        graph.inject(garage, MyInject.class);
+
+        final List<String> seenInTraversal = new ArrayList<>();
+        graph.registerDisposeListener(new Provider.DisposeListener() {
+            @Override
+            public <T> void onDisposed(Provider<T> provider, T instance) {
+                //Car hasn't been dereferenced yet when engine is disposed
+                if (instance instanceof Engine) {
+                    seenInTraversal.addAll(notifications);
+                }
+            }
+        });
+
+        graph.release(garage, MyInject.class);
+
+        Assert.assertEquals(2, seenInTraversal.size());
+        Assert.assertEquals(0, graph.getPendingDisposalCount());
+    }
+
+    @Test
+    public void should_notify_batched_disposals_after_release_completes_in_order() throws PokeException {
+        graph.setDisposalBatched(true);
+        Garage garage = new Garage();
+        graph.inject(garage, MyInject.class);
+
+        final List<Integer> sizesWhenEngineDisposed = new ArrayList<>();
+        graph.registerDisposeListener(new Provider.DisposeListener() {
+            @Override
+            public <T> void onDisposed(Provider<T> provider, T instance) {
+                if (instance instanceof Engine) {
+                    sizesWhenEngineDisposed.add(notifications.size());
+                }
+            }
+        });
+
+        graph.release(garage, MyInject.class);
+
+        Assert.assertEquals(0, graph.getPendingDisposalCount());
+        Assert.assertEquals(4, notifications.size());
+        Assert.assertEquals("dereferenced Engine", notifications.get(0));
+        Assert.assertEquals("disposed Engine", notifications.get(1));
+        Assert.assertEquals("dereferenced Car", notifications.get(2));
+        Assert.assertEquals("disposed Car", notifications.get(3));
+        //Car's notifications come after all of engine's
+        Assert.assertEquals(2, (int) sizesWhenEngineDisposed.get(0));
+    }
+
+    @Test
+    public void should_notify_batched_disposals_by_disposal_executor_in_single_flush() throws PokeException {
+        final List<Runnable> tasks = new ArrayList<>();
+        graph.setDisposalBatched(true);
+        graph.setDisposalExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+
+        Garage garage1 = new Garage();
+        Garage garage2 = new Garage();
+        graph.inject(garage1, MyInject.class);
+        graph.inject(garage2, MyInject.class);
+
+        graph.release(garage1, MyInject.class);
+        graph.release(garage2, MyInject.class);
+
+        Assert.assertEquals(0, notifications.size());
+        Assert.assertEquals(4, graph.getPendingDisposalCount());
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        Assert.assertEquals(8, notifications.size());
+        Assert.assertEquals(0, graph.getPendingDisposalCount());
+    }
+
+    @Test
+    public void flush_should_deliver_pending_disposals_straight_away() throws PokeException {
+        graph.setDisposalBatched(true);
+        graph.setDisposalExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                //Never runs
+            }
+        });
+
+        Garage garage = new Garage();
+        graph.inject(garage, MyInject.class);
+        graph.release(garage, MyInject.class);
+        Assert.assertEquals(0, notifications.size());
+
+        graph.flushDisposals();
+        Assert.assertEquals(4, notifications.size());
+
+        //Nothing is delivered twice
+        graph.flushDisposals();
+        Assert.assertEquals(4, notifications.size());
+    }
+
+    @Test
+    public void turning_batching_off_should_deliver_pending_disposals() throws PokeException {
+        graph.setDisposalBatched(true);
+        graph.setDisposalExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        });
+
+        InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class);
+        handle.close();
+        Assert.assertEquals(0, notifications.size());
+
+        graph.setDisposalBatched(false);
+        Assert.assertEquals(4, notifications.size());
+    }
+
+    @Test
+    public void disposals_queued_by_listeners_should_be_delivered_in_the_same_batch() throws PokeException {
+        graph.setDisposalBatched(true);
+        final Garage garage1 = new Garage();
+        final Garage garage2 = new Garage();
+        graph.inject(garage1, MyInject.class);
+        graph.inject(garage2, MyInject.class);
+
+        graph.registerDisposeListener(new Provider.DisposeListener() {
+            @Override
+            public <T> void onDisposed(Provider<T> provider, T instance) {
+                if (instance == garage1.car) {
+                    try {
+                        graph.release(garage2, MyInject.class);
+                    } catch (PokeException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        });
+
+        graph.release(garage1, MyInject.class);
+
+        Assert.assertEquals(8, notifications.size());
+        Assert.assertEquals("disposed Car", notifications.get(3));
+        Assert.assertEquals("dereferenced Engine", notifications.get(4));
+        Assert.assertEquals(0, graph.getPendingDisposalCount());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+import com.shipdream.lib.poke.exception.ProvideException;
+import com.shipdream.lib.poke.exception.ProviderConflictException;
+import com.shipdream.lib.poke.exception.ProviderMissingException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGraphTemplate extends BaseTestCases {
+    private Graph graph;
+    private GraphTemplate template;
+
+    interface Engine {
+    }
+
+    static class Petrol implements Engine {
+    }
+
+    static class Electric implements Engine {
+    }
+
+    static class Wheel {
+    }
+
+    static class Car {
+        @MyInject
+        Engine engine;
+
+        @MyInject
+        Wheel wheel;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Component root = new Component("Root");
+        root.register(new ProviderByClassType(Engine.class, Petrol.class));
+        root.register(new Object() {
+            @Provides
+            public Wheel wheel() {
+                return new Wheel();
+            }
+        });
+        graph = new Graph();
+        graph.setRootComponent(root);
+
+        graph.inject(new Car(), MyInject.class);
+        template = new GraphTemplate(graph);
+    }
+
+    @Test
+    public void forked_graph_should_provide_registered_providers() throws PokeException {
+        Assert.assertEquals(2, template.getProviderCount());
+
+        Graph fork = template.newGraph();
+        Car car = new Car();
+        fork.inject(car, MyInject.class);
+
+        Assert.assertTrue(car.engine instanceof Petrol);
+        Assert.assertNotNull(car.wheel);
+        Assert.assertEquals("Root", fork.getRootComponent().getName());
+    }
+
+    @Test
+    public void forked_graphs_should_share_compiled_plans() {
+        Graph fork1 = template.newGraph();
+        Graph fork2 = template.newGraph();
+
+        Assert.assertNotNull(fork1.templatePlans.get(MyInject.class).get(Car.class));
+        Assert.assertSame(fork1.templatePlans, fork2.templatePlans);
+    }
+
+    @Test
+    public void forked_graphs_should_have_independent_caches() throws PokeException {
+        Graph fork1 = template.newGraph();
+        Graph fork2 = template.newGraph();
+
+        Car car1 = new Car();
+        Car car1Again = new Car();
+        Car car2 = new Car();
+        fork1.inject(car1, MyInject.class);
+        fork1.inject(car1Again, MyInject.class);
+        fork2.inject(car2, MyInject.class);
+
+        Assert.assertSame(car1.engine, car1Again.engine);
+        Assert.assertNotSame(car1.engine, car2.engine);
+        Assert.assertNotSame(fork1.getRootComponent().findProvider(Engine.class, null),
+                fork2.getRootComponent().findProvider(Engine.class, null));
+        Assert.assertEquals(2, fork2.getRootComponent().getCache().size());
+    }
+
+    @Test
+    public void changing_forked_graph_should_not_affect_template_or_other_forks() throws PokeException {
+        Graph fork1 = template.newGraph();
+        fork1.getRootComponent().unregister(Engine.class, null);
+        fork1.getRootComponent().register(new ProviderByClassType(Engine.class, Electric.class));
+
+        Car car1 = new Car();
+        fork1.inject(car1, MyInject.class);
+        Assert.assertTrue(car1.engine instanceof Electric);
+
+        Car car2 = new Car();
+        template.newGraph().inject(car2, MyInject.class);
+        Assert.assertTrue(car2.engine instanceof Petrol);
+
+        Car original = new Car();
+        graph.inject(original, MyInject.class);
+        Assert.assertTrue(original.engine instanceof Petrol);
+    }
+
+    @Test(expected = ProviderMissingException.class)
+    public void unregistered_template_provider_should_not_come_back() throws PokeException {
+        Graph fork = template.newGraph();
+        fork.getRootComponent().unregister(Wheel.class, null);
+
+        fork.getRootComponent().findProvider(Wheel.class, null);
+    }
+
+    @Test(expected = ProviderConflictException.class)
+    public void should_detect_conflict_with_template_provider() throws PokeException {
+        Graph fork = template.newGraph();
+        fork.getRootComponent().register(new ProviderByClassType(Engine.class, Electric.class));
+    }
+
+    @Test
+    public void should_override_template_provider_by_child_component() throws PokeException {
+        Graph fork = template.newGraph();
+        Component child = new Component();
+        child.register(new ProviderByClassType(Engine.class, Electric.class));
+        fork.getRootComponent().attach(child, true);
+
+        Car car = new Car();
+        fork.inject(car, MyInject.class);
+        Assert.assertTrue(car.engine instanceof Electric);
+
+        fork.release(car, MyInject.class);
+        fork.getRootComponent().detach(child);
+
+        car = new Car();
+        fork.inject(car, MyInject.class);
+        Assert.assertTrue(car.engine instanceof Petrol);
+    }
+
+    @Test
+    public void template_of_forked_graph_should_include_providers_not_copied_yet() throws PokeException {
+        Graph fork = template.newGraph();
+        fork.getRootComponent().findProvider(Engine.class, null);
+
+        GraphTemplate forkTemplate = new GraphTemplate(fork);
+        Assert.assertEquals(2, forkTemplate.getProviderCount());
+    }
+
+    @Test(expected = ProvideException.class)
+    public void should_not_create_template_with_provider_which_cannot_be_copied() throws PokeException {
+        graph.getRootComponent().register(new Provider<String>(String.class) {
+            @Override
+            protected String createInstance() throws ProvideException {
+                return "";
+            }
+        });
+
+        new GraphTemplate(graph);
+    }
+
+    @Test(expected = Graph.IllegalRootComponentException.class)
+    public void should_not_fork_graph_with_non_empty_component() throws PokeException {
+        Component component = new Component();
+        component.register(new ProviderByClassType(Wheel.class, Wheel.class));
+
+        template.newGraph(component);
+    }
+}
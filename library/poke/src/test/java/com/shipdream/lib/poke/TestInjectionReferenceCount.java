@@ -481,6 +481,99 @@ public class TestInjectionReferenceCount extends BaseTestCases {
         verify(proxy, times(0)).onRelease(kitchen);
     }
 
+    @Test
+    public void should_invoke_call_backs_of_target_graph_monitors_only_for_their_targets()
+            throws ProvideException, ProviderConflictException, CircularDependenciesException, ProviderMissingException {
+        Kitchen kitchen = new Kitchen();
+        Kitchen otherKitchen = new Kitchen();
+
+        Graph.Monitor monitor = mock(Graph.Monitor.class);
+        graph.registerMonitor(kitchen, monitor);
+
+        //Act
+        graph.inject(otherKitchen, MyInject.class);
+        graph.inject(kitchen, MyInject.class);
+
+        //Assert
+        verify(monitor, times(1)).onInject(kitchen);
+        verify(monitor, times(0)).onInject(otherKitchen);
+
+        //Act
+        graph.release(otherKitchen, MyInject.class);
+        graph.release(kitchen, MyInject.class);
+
+        //Assert
+        verify(monitor, times(1)).onRelease(kitchen);
+        verify(monitor, times(0)).onRelease(otherKitchen);
+    }
+
+    @Test
+    public void should_not_invoke_call_backs_of_unregistered_target_graph_monitors()
+            throws ProvideException, ProviderConflictException, CircularDependenciesException, ProviderMissingException {
+        Kitchen kitchen = new Kitchen();
+
+        Graph.Monitor monitor1 = mock(Graph.Monitor.class);
+        Graph.Monitor monitor2 = mock(Graph.Monitor.class);
+        graph.registerMonitor(kitchen, monitor1);
+        graph.registerMonitor(kitchen, monitor2);
+
+        graph.unregisterMonitor(kitchen, monitor1);
+
+        //Act
+        graph.inject(kitchen, MyInject.class);
+
+        //Assert
+        verify(monitor1, times(0)).onInject(kitchen);
+        verify(monitor2, times(1)).onInject(kitchen);
+
+        graph.unregisterMonitors(kitchen);
+
+        //Act
+        graph.release(kitchen, MyInject.class);
+
+        //Assert
+        verify(monitor2, times(0)).onRelease(kitchen);
+    }
+
+    static class Knife {
+    }
+
+    static class Drawer {
+        @MyInject
+        Knife knife;
+
+        @MyInject
+        Knife spareKnife;
+    }
+
+    @Test
+    public void injecting_again_should_only_fill_fields_not_injected() throws Exception {
+        Component unscoped = new Component(false);
+        unscoped.register(new ProviderByClassType(Knife.class, Knife.class));
+        Graph g = new Graph();
+        g.setRootComponent(unscoped);
+        Provider<Knife> knifeProvider = unscoped.findProvider(Knife.class, null);
+
+        Drawer drawer = new Drawer();
+        g.inject(drawer, MyInject.class);
+        Knife knife = drawer.knife;
+        Assert.assertEquals(2, knifeProvider.getReferenceCount());
+
+        g.inject(drawer, MyInject.class);
+        Assert.assertSame(knife, drawer.knife);
+        Assert.assertEquals(2, knifeProvider.getReferenceCount());
+
+        drawer.spareKnife = null;
+        knifeProvider.release(drawer, Drawer.class.getDeclaredField("spareKnife"));
+        g.inject(drawer, MyInject.class);
+        Assert.assertSame(knife, drawer.knife);
+        Assert.assertNotNull(drawer.spareKnife);
+        Assert.assertEquals(2, knifeProvider.getReferenceCount());
+
+        g.release(drawer, MyInject.class);
+        Assert.assertEquals(0, knifeProvider.getReferenceCount());
+    }
+
     static class Orange implements Fruit {
         @MyInject
         private Container container;
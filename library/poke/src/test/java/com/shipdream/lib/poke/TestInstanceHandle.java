@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TestInstanceHandle extends BaseTestCases {
+    private Graph graph;
+    private Component component;
+
+    static class Engine {
+    }
+
+    static class Car {
+        @MyInject
+        Engine engine;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        component = new Component();
+        component.register(new ProviderByClassType(Engine.class, Engine.class));
+        component.register(new ProviderByClassType(Car.class, Car.class));
+        graph = new Graph();
+        graph.setRootComponent(component);
+    }
+
+    @Test
+    public void closing_handle_should_dereference_instance_and_its_fields() throws PokeException {
+        Provider<Car> carProvider = component.findProvider(Car.class, null);
+        Provider<Engine> engineProvider = component.findProvider(Engine.class, null);
+
+        InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class);
+        Assert.assertNotNull(handle.get());
+        Assert.assertNotNull(handle.get().engine);
+        Assert.assertEquals(Car.class, handle.type());
+        Assert.assertEquals(1, carProvider.getReferenceCount());
+        Assert.assertEquals(1, engineProvider.getReferenceCount());
+
+        handle.close();
+
+        Assert.assertTrue(handle.isClosed());
+        Assert.assertEquals(0, carProvider.getReferenceCount());
+        Assert.assertEquals(0, engineProvider.getReferenceCount());
+        Assert.assertNull(carProvider.getCachedInstance());
+    }
+
+    @Test
+    public void closing_handle_twice_should_dereference_only_once() throws PokeException {
+        Provider.DereferenceListener dereferenceListener = mock(Provider.DereferenceListener.class);
+        graph.registerDereferencedListener(dereferenceListener);
+
+        InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class);
+        Car car = handle.get();
+        handle.close();
+        handle.close();
+
+        verify(dereferenceListener, times(1)).onDereferenced(any(Provider.class), eq(car));
+    }
+
+    @Test
+    public void closing_handle_should_not_look_up_provider_again() throws PokeException {
+        Provider<Car> carProvider = component.findProvider(Car.class, null);
+        InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class);
+
+        component.unregister(Car.class, null);
+        handle.close();
+
+        Assert.assertEquals(0, carProvider.getReferenceCount());
+    }
+
+    @Test
+    public void handle_should_work_with_try_with_resources() throws PokeException {
+        Provider.DisposeListener disposeListener = mock(Provider.DisposeListener.class);
+        graph.registerDisposeListener(disposeListener);
+
+        Car car;
+        try (InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class)) {
+            car = handle.get();
+        }
+
+        verify(disposeListener).onDisposed(any(Provider.class), eq(car));
+    }
+
+    @Test
+    public void closing_handle_should_dereference_on_close_executor() throws PokeException {
+        final List<Runnable> queue = new ArrayList<>();
+        Executor closeExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queue.add(command);
+            }
+        };
+        Provider<Car> carProvider = component.findProvider(Car.class, null);
+
+        InstanceHandle<Car> handle = graph.referenceHandle(Car.class, null, MyInject.class, closeExecutor);
+        handle.close();
+
+        Assert.assertTrue(handle.isClosed());
+        Assert.assertEquals(1, carProvider.getReferenceCount());
+
+        queue.get(0).run();
+        Assert.assertEquals(0, carProvider.getReferenceCount());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+public class TestInstancePool extends BaseTestCases {
+    private Graph graph;
+    private Component component;
+
+    static class Formatter implements Resettable {
+        String pattern = "default";
+        int resetCount;
+
+        @Override
+        public void reset() {
+            pattern = "default";
+            resetCount++;
+        }
+    }
+
+    static class Adapter {
+    }
+
+    static class Screen {
+        @MyInject
+        Formatter formatter;
+
+        @MyInject
+        Adapter adapter;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        component = new Component(false);
+        component.register(new ProviderByClassType(Formatter.class, Formatter.class));
+        component.register(new ProviderByClassType(Adapter.class, Adapter.class));
+        graph = new Graph();
+        graph.setRootComponent(component);
+    }
+
+    @Test
+    public void should_create_new_instances_without_pool() throws PokeException {
+        Screen screen1 = new Screen();
+        graph.inject(screen1, MyInject.class);
+        graph.release(screen1, MyInject.class);
+
+        Screen screen2 = new Screen();
+        graph.inject(screen2, MyInject.class);
+
+        Assert.assertNotSame(screen1.formatter, screen2.formatter);
+        Assert.assertNull(component.findProvider(Formatter.class, null).getInstancePool());
+    }
+
+    @Test
+    public void should_recycle_released_resettable_instances() throws PokeException {
+        component.setInstancePoolCapacity(2);
+
+        Screen screen1 = new Screen();
+        graph.inject(screen1, MyInject.class);
+        screen1.formatter.pattern = "dd/MM";
+        graph.release(screen1, MyInject.class);
+
+        Assert.assertEquals("default", screen1.formatter.pattern);
+        Assert.assertEquals(1, screen1.formatter.resetCount);
+
+        Screen screen2 = new Screen();
+        graph.inject(screen2, MyInject.class);
+
+        Assert.assertSame(screen1.formatter, screen2.formatter);
+        //Not resettable
+        Assert.assertNotSame(screen1.adapter, screen2.adapter);
+
+        InstancePool<Formatter> pool = component.findProvider(Formatter.class, null).getInstancePool();
+        Assert.assertEquals(1, pool.getHitCount());
+        Assert.assertEquals(1, pool.getMissCount());
+        Assert.assertEquals(1, pool.getRecycledCount());
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void should_drop_released_instances_when_pool_is_full() throws PokeException {
+        component.setInstancePoolCapacity(1);
+
+        Screen screen1 = new Screen();
+        Screen screen2 = new Screen();
+        graph.inject(screen1, MyInject.class);
+        graph.inject(screen2, MyInject.class);
+        graph.release(screen1, MyInject.class);
+        graph.release(screen2, MyInject.class);
+
+        InstancePool<Formatter> pool = component.findProvider(Formatter.class, null).getInstancePool();
+        Assert.assertEquals(1, pool.size());
+        Assert.assertEquals(1, pool.getRecycledCount());
+        Assert.assertEquals(1, pool.getDroppedCount());
+        Assert.assertEquals(1, pool.getCapacity());
+    }
+
+    @Test
+    public void should_call_creation_listeners_for_recycled_instances() throws PokeException {
+        component.setInstancePoolCapacity(1);
+        final int[] created = new int[1];
+        Provider<Formatter> provider = component.findProvider(Formatter.class, null);
+        provider.registerCreationListener(new Provider.CreationListener<Formatter>() {
+            @Override
+            public void onCreated(Provider<Formatter> provider, Formatter instance) {
+                created[0]++;
+            }
+        });
+
+        InstanceHandle<Formatter> handle = graph.referenceHandle(Formatter.class, null, MyInject.class);
+        Formatter formatter = handle.get();
+        handle.close();
+
+        handle = graph.referenceHandle(Formatter.class, null, MyInject.class);
+        Assert.assertSame(formatter, handle.get());
+        Assert.assertEquals(2, created[0]);
+    }
+
+    @Test
+    public void should_recycle_after_batched_disposal_is_delivered() throws PokeException {
+        component.setInstancePoolCapacity(1);
+        graph.setDisposalBatched(true);
+        graph.setDisposalExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+            }
+        });
+
+        Screen screen = new Screen();
+        graph.inject(screen, MyInject.class);
+        graph.release(screen, MyInject.class);
+
+        InstancePool<Formatter> pool = component.findProvider(Formatter.class, null).getInstancePool();
+        Assert.assertEquals(0, pool.size());
+
+        graph.flushDisposals();
+        Assert.assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void should_not_pool_instances_of_scoped_providers() throws PokeException {
+        Component cached = new Component(true);
+        cached.register(new ProviderByClassType(Formatter.class, Formatter.class));
+        cached.setInstancePoolCapacity(1);
+
+        Assert.assertNull(cached.findProvider(Formatter.class, null).getInstancePool());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+import com.shipdream.lib.poke.exception.ProvideException;
+import com.shipdream.lib.poke.exception.ProviderConflictException;
+import com.shipdream.lib.poke.exception.ProviderMissingException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestLazyComponent extends BaseTestCases {
+    private Graph graph;
+    private Component rootComponent;
+    private int createdCount;
+
+    interface Wheel {
+    }
+
+    static class Wheel17Inch implements Wheel {
+    }
+
+    interface Engine {
+    }
+
+    static class EngineV6 implements Engine {
+    }
+
+    class Car {
+        @MyInject
+        Wheel wheel;
+    }
+
+    class Truck {
+        @MyInject
+        Engine engine;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        rootComponent = new Component("AppSingleton");
+        graph = new Graph();
+        graph.setRootComponent(rootComponent);
+        createdCount = 0;
+    }
+
+    private LazyComponent lazyWheelComponent() {
+        return new LazyComponent() {
+            @Override
+            protected Component create() throws ProvideException, ProviderConflictException {
+                createdCount++;
+                return new Component("Wheels").register(
+                        new ProviderByClassType(Wheel.class, Wheel17Inch.class));
+            }
+        };
+    }
+
+    @Test
+    public void should_not_create_lazy_component_until_declared_type_is_needed() throws PokeException {
+        rootComponent.register(new ProviderByClassType(Engine.class, EngineV6.class));
+        rootComponent.attachLazily(lazyWheelComponent().provides(Wheel.class));
+
+        graph.inject(new Truck(), MyInject.class);
+        Assert.assertEquals(0, createdCount);
+        Assert.assertNull(rootComponent.getChildrenComponents());
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+        Assert.assertEquals(1, createdCount);
+        Assert.assertEquals(Wheel17Inch.class, car.wheel.getClass());
+        Assert.assertEquals("Wheels", rootComponent.getChildrenComponents().get(0).getName());
+
+        graph.inject(new Car(), MyInject.class);
+        Assert.assertEquals(1, createdCount);
+    }
+
+    @Test
+    public void should_attach_lazy_component_declared_by_package() throws PokeException {
+        rootComponent.attachLazily(lazyWheelComponent().providesPackage("com.shipdream.lib"));
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+        Assert.assertEquals(1, createdCount);
+        Assert.assertNotNull(car.wheel);
+    }
+
+    @Test
+    public void should_attach_lazy_component_declared_by_nested_child() throws PokeException {
+        Component child = new Component("Child");
+        rootComponent.attach(child);
+        child.attachLazily(lazyWheelComponent().provides(Wheel.class));
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+        Assert.assertNotNull(car.wheel);
+        Assert.assertTrue(child.getChildrenComponents().get(0).getParent() == child);
+    }
+
+    @Test(expected = ProviderMissingException.class)
+    public void should_not_attach_lazy_component_for_undeclared_type() throws PokeException {
+        rootComponent.attachLazily(lazyWheelComponent().provides(Engine.class));
+
+        try {
+            graph.inject(new Car(), MyInject.class);
+        } finally {
+            Assert.assertEquals(0, createdCount);
+        }
+    }
+
+    @Test
+    public void should_not_create_detached_lazy_component() throws PokeException {
+        LazyComponent lazy = lazyWheelComponent().provides(Wheel.class);
+        rootComponent.attachLazily(lazy);
+        Assert.assertTrue(rootComponent.detachLazily(lazy));
+        Assert.assertFalse(rootComponent.detachLazily(lazy));
+
+        try {
+            graph.inject(new Car(), MyInject.class);
+            Assert.fail("Should not find wheel provider");
+        } catch (ProviderMissingException e) {
+            Assert.assertEquals(0, createdCount);
+        }
+    }
+
+    @Test
+    public void should_keep_lazy_component_pending_when_creating_it_fails() throws PokeException {
+        LazyComponent lazy = new LazyComponent() {
+            @Override
+            protected Component create() throws ProvideException, ProviderConflictException {
+                createdCount++;
+                if (createdCount == 1) {
+                    throw new ProvideException("Wheels not ready");
+                }
+                return new Component("Wheels").register(
+                        new ProviderByClassType(Wheel.class, Wheel17Inch.class));
+            }
+        }.provides(Wheel.class);
+        rootComponent.attachLazily(lazy);
+
+        try {
+            graph.inject(new Car(), MyInject.class);
+            Assert.fail("Should fail to create the lazy component");
+        } catch (ProviderMissingException e) {
+            Assert.assertEquals(1, createdCount);
+        }
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+        Assert.assertEquals(2, createdCount);
+        Assert.assertEquals(Wheel17Inch.class, car.wheel.getClass());
+        Assert.assertFalse(rootComponent.detachLazily(lazy));
+    }
+}
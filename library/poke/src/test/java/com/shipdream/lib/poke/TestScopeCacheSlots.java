@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Kejun Xia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.shipdream.lib.poke;
+
+import com.shipdream.lib.poke.exception.PokeException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.annotation.Annotation;
+import java.util.Map;
+
+import javax.inject.Named;
+
+public class TestScopeCacheSlots extends BaseTestCases {
+    private Graph graph;
+    private Component rootComponent;
+
+    interface Wheel {
+    }
+
+    static class Wheel15Inch implements Wheel {
+    }
+
+    static class Wheel17Inch implements Wheel {
+    }
+
+    interface Engine {
+    }
+
+    static class EngineV6 implements Engine {
+    }
+
+    class Car {
+        @MyInject
+        Wheel wheel;
+
+        @MyInject
+        Engine engine;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        rootComponent = new Component("AppSingleton");
+        graph = new Graph();
+        graph.setRootComponent(rootComponent);
+    }
+
+    @Test
+    public void should_assign_dense_slots_to_registered_providers() throws PokeException {
+        Provider wheelProvider = new ProviderByClassType(Wheel.class, Wheel15Inch.class);
+        Provider engineProvider = new ProviderByClassType(Engine.class, EngineV6.class);
+        rootComponent.register(wheelProvider);
+        rootComponent.register(engineProvider);
+
+        Assert.assertTrue(wheelProvider.slotOwner == rootComponent.scopeCache);
+        Assert.assertTrue(engineProvider.slotOwner == rootComponent.scopeCache);
+        Assert.assertEquals(0, wheelProvider.slot);
+        Assert.assertEquals(1, engineProvider.slot);
+    }
+
+    @Test
+    public void should_reuse_slot_when_provider_with_same_key_registered_again() throws PokeException {
+        Provider wheelProvider = new ProviderByClassType(Wheel.class, Wheel15Inch.class);
+        rootComponent.register(wheelProvider);
+        rootComponent.unregister(wheelProvider);
+
+        Provider anotherWheelProvider = new ProviderByClassType(Wheel.class, Wheel17Inch.class);
+        rootComponent.register(anotherWheelProvider);
+
+        Assert.assertEquals(wheelProvider.slot, anotherWheelProvider.slot);
+
+        Car car = new Car();
+        rootComponent.register(new ProviderByClassType(Engine.class, EngineV6.class));
+        graph.inject(car, MyInject.class);
+        Assert.assertEquals(Wheel17Inch.class, car.wheel.getClass());
+    }
+
+    @Test
+    public void should_free_slot_of_unregistered_provider_for_other_providers() throws PokeException {
+        Provider wheelProvider = new ProviderByClassType(Wheel.class, Wheel15Inch.class);
+        rootComponent.register(wheelProvider);
+        Object wheel = wheelProvider.get();
+        rootComponent.unregister(wheelProvider);
+
+        Provider engineProvider = new ProviderByClassType(Engine.class, EngineV6.class);
+        rootComponent.register(engineProvider);
+        Object engine = engineProvider.get();
+
+        Assert.assertEquals(0, engineProvider.slot);
+        Assert.assertEquals(1, rootComponent.scopeCache.getCachedInstances().size());
+        Assert.assertNull(rootComponent.getCache().get(PokeHelper.makeProviderKey(Wheel.class, null)));
+        Assert.assertTrue(rootComponent.getCache().get(PokeHelper.makeProviderKey(Engine.class, null)) == engine);
+
+        //The stale provider must not pick up the instance now living in its old slot
+        Assert.assertNull(rootComponent.scopeCache.findInstance(wheelProvider));
+        Assert.assertFalse(wheel == engine);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecated_instances_map_should_stay_backed_by_slots() throws PokeException {
+        Provider wheelProvider = new ProviderByClassType(Wheel.class, Wheel15Inch.class);
+        rootComponent.register(wheelProvider);
+        String key = PokeHelper.makeProviderKey(Wheel.class, null);
+
+        Wheel wheel = new Wheel17Inch();
+        rootComponent.scopeCache.instances.put(key, wheel);
+        Assert.assertTrue(wheelProvider.get() == wheel);
+
+        rootComponent.scopeCache.instances.remove(key);
+        Assert.assertTrue(rootComponent.scopeCache.getCachedInstances().isEmpty());
+    }
+
+    @Test
+    public void should_grow_slots_beyond_initial_capacity() throws PokeException {
+        ScopeCache cache = new ScopeCache();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            Provider<Integer> provider = new Provider<Integer>(Integer.class, new Named() {
+                @Override
+                public String value() {
+                    return String.valueOf(value);
+                }
+
+                @Override
+                public Class<? extends Annotation> annotationType() {
+                    return Named.class;
+                }
+            }, cache) {
+                @Override
+                protected Integer createInstance() {
+                    return value;
+                }
+            };
+            Assert.assertEquals(i, cache.slotOf(provider));
+            Assert.assertEquals(Integer.valueOf(i), provider.get());
+        }
+        Assert.assertEquals(100, cache.getCachedInstances().size());
+    }
+
+    @Test
+    public void cache_map_should_reflect_and_clear_cached_instances() throws PokeException {
+        rootComponent.register(new ProviderByClassType(Wheel.class, Wheel15Inch.class));
+        rootComponent.register(new ProviderByClassType(Engine.class, EngineV6.class));
+
+        Map<String, Object> cache = rootComponent.getCache();
+        Assert.assertTrue(cache.isEmpty());
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.get(PokeHelper.makeProviderKey(Wheel.class, null)) == car.wheel);
+        Assert.assertTrue(cache.containsValue(car.engine));
+
+        cache.clear();
+        Assert.assertTrue(cache.isEmpty());
+        Assert.assertTrue(rootComponent.scopeCache.getCachedInstances().isEmpty());
+    }
+
+    @Test
+    public void should_resolve_provider_again_after_component_tree_changes() throws PokeException {
+        rootComponent.register(new ProviderByClassType(Wheel.class, Wheel15Inch.class));
+        rootComponent.register(new ProviderByClassType(Engine.class, EngineV6.class));
+
+        Car car = new Car();
+        graph.inject(car, MyInject.class);
+        Assert.assertEquals(Wheel15Inch.class, car.wheel.getClass());
+        graph.release(car, MyInject.class);
+
+        Component overriding = new Component("Overriding");
+        overriding.register(new ProviderByClassType(Wheel.class, Wheel17Inch.class));
+        rootComponent.attach(overriding, true);
+
+        Car car2 = new Car();
+        graph.inject(car2, MyInject.class);
+        Assert.assertEquals(Wheel17Inch.class, car2.wheel.getClass());
+        graph.release(car2, MyInject.class);
+
+        rootComponent.detach(overriding);
+
+        Car car3 = new Car();
+        graph.inject(car3, MyInject.class);
+        Assert.assertEquals(Wheel15Inch.class, car3.wheel.getClass());
+    }
+}